@@ -232,7 +232,8 @@ public final class BoardController {
 				
 				int[] point = pointAlmostAt(e.getY(), e.getX());
 				
-				// TODO: Accept only if in correct orientation for target
+				if(!gameInstance.isLongMoveCapturable(sourceInput[0], sourceInput[1]))
+					return;
 				
 				e.acceptTransferModes(TransferMode.ANY);
 			}
@@ -0,0 +1,198 @@
+package org.silcos.roundabouts;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Keeps, for each side and each circuit, the bit-mask of opponent pebbles
+ * that side can capture by travelling along the circuit, and the bit-mask
+ * of empty circuit points it can reach that way (after going through at
+ * least one loop). Threat checks, move ordering, hints and evaluation can
+ * then query these maps instead of walking the circuits.
+ *
+ * <p>
+ * Moves must be made and unmade on the position through the maps. Only the
+ * circuits on which the source or target of a move lie are walked again
+ * when it is made; the maps of the previous ply are saved, so that
+ * unmaking a move just restores them. If the position is changed in any
+ * other way, <tt>refresh</tt> must be called.
+ *
+ * @author Shukant Pal
+ */
+public final class AttackMaps {
+
+	/**
+	 * Maps are stored at <tt>(ring * 2 + side) * 2</tt> (attacked pebbles)
+	 * and the next index (reachable points).
+	 */
+	private static final int MAP_COUNT = 8;
+
+	private final Position position;
+
+	private long[] maps;
+	private long[] savedMaps;
+	private int depth;
+
+	/**
+	 * Constructs the attack maps of the given position.
+	 *
+	 * @param position - the position to track
+	 */
+	public AttackMaps(Position position) {
+		this.position = position;
+		this.maps = new long[MAP_COUNT];
+		this.savedMaps = new long[MAP_COUNT * 64];
+
+		refresh();
+	}
+
+	/**
+	 * Returns the position being tracked.
+	 */
+	public Position position() {
+		return (position);
+	}
+
+	/**
+	 * Recomputes the maps of both circuits from scratch.
+	 */
+	public void refresh() {
+		scanRing(Circuits.INNER);
+		scanRing(Circuits.OUTER);
+	}
+
+	/**
+	 * Recomputes the maps of the given circuit, by walking from each pebble
+	 * on it in both directions until it is blocked.
+	 */
+	private void scanRing(int ring) {
+		long occupied = position.occupied();
+		int base = ring * 4;
+
+		Arrays.fill(maps, base, base + 4, 0);
+
+		for(int entry = 0; entry < Circuits.RING_LENGTH; entry++) {
+			int source = Circuits.cellAt(ring, entry);
+			int side = position.sideAt(source);
+
+			if(side == -1)
+				continue;
+
+			long opponentPebbles = position.pebbles(side ^ 1);
+			int slot = base + side * 2;
+
+			for(int step = -1; step <= 1; step += 2) {
+				boolean looped = false;
+				int current = entry;
+
+				for(int travelled = 0; travelled < Circuits.RING_LENGTH; travelled++) {
+					looped |= Circuits.loopAfter(ring, (step > 0) ? current : current - 1);
+					current += step;
+
+					long cell = Position.bit(Circuits.cellAt(ring, current));
+
+					if(cell == Position.bit(source)) {
+						continue;
+					} else if((occupied & cell) != 0) {
+						if(looped)
+							maps[slot] |= cell & opponentPebbles;
+						break;
+					} else if(looped) {
+						maps[slot + 1] |= cell;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes the given move on the position and updates the maps of the
+	 * circuits it touched.
+	 *
+	 * @param move - a legal move for the side to move
+	 * @return whether an opponent pebble was captured
+	 */
+	public boolean makeMove(int move) {
+		long touched = Position.bit(Move.source(move)) | Position.bit(Move.target(move));
+
+		if((depth + 1) * MAP_COUNT > savedMaps.length)
+			savedMaps = Arrays.copyOf(savedMaps, savedMaps.length * 2);
+
+		System.arraycopy(maps, 0, savedMaps, (depth)++ * MAP_COUNT, MAP_COUNT);
+
+		boolean capture = position.makeMove(move);
+
+		for(int ring = Circuits.INNER; ring <= Circuits.OUTER; ring++) {
+			if((Circuits.ringMask(ring) & touched) != 0)
+				scanRing(ring);
+		}
+
+		return (capture);
+	}
+
+	/**
+	 * Unmakes the given move, which must be the last one made through these
+	 * maps, and restores the maps.
+	 *
+	 * @param move - the move to take back
+	 */
+	public void unmakeMove(int move) {
+		position.unmakeMove(move);
+		System.arraycopy(savedMaps, --(depth) * MAP_COUNT, maps, 0, MAP_COUNT);
+	}
+
+	/**
+	 * Returns the bit-mask of the opponent pebbles the given side can capture
+	 * through the given circuit.
+	 *
+	 * @param side - <tt>Position.STARTER</tt> or <tt>Position.OTHER</tt>
+	 * @param ring - <tt>Circuits.INNER</tt> or <tt>Circuits.OUTER</tt>
+	 */
+	public long attacked(int side, int ring) {
+		return (maps[(ring * 2 + side) * 2]);
+	}
+
+	/**
+	 * Returns the bit-mask of the opponent pebbles the given side can capture
+	 * through either circuit.
+	 *
+	 * @param side - <tt>Position.STARTER</tt> or <tt>Position.OTHER</tt>
+	 */
+	public long attacked(int side) {
+		return (maps[side * 2] | maps[4 + side * 2]);
+	}
+
+	/**
+	 * Returns the bit-mask of the empty points of the given circuit that the
+	 * given side can reach through a loop.
+	 *
+	 * @param side - <tt>Position.STARTER</tt> or <tt>Position.OTHER</tt>
+	 * @param ring - <tt>Circuits.INNER</tt> or <tt>Circuits.OUTER</tt>
+	 */
+	public long reachable(int side, int ring) {
+		return (maps[(ring * 2 + side) * 2 + 1]);
+	}
+
+	/**
+	 * Returns the bit-mask of the empty circuit points that the given side can
+	 * reach through a loop.
+	 *
+	 * @param side - <tt>Position.STARTER</tt> or <tt>Position.OTHER</tt>
+	 */
+	public long reachable(int side) {
+		return (maps[side * 2 + 1] | maps[4 + side * 2 + 1]);
+	}
+
+	/**
+	 * Returns whether the pebble at the given point can be captured by the
+	 * opponent of its owner.
+	 *
+	 * @param cell - index of the point
+	 */
+	public boolean isThreatened(int cell) {
+		int side = position.sideAt(cell);
+
+		return (side != -1 && (attacked(side ^ 1) & Position.bit(cell)) != 0);
+	}
+
+}
@@ -216,6 +216,7 @@ public class Board {
 	public boolean placePebble(Pebble pebble, int row, int column) {
 		if(inBounds(row, column) && grid[row][column].isEmpty()) {
 			grid[row][column].setHolder(pebble);
+			++(pebble.owner.pebblesOnBoard);
 			fireEvent(BoardChangeEvent.newPebblePlacedEvent(row, column, pebble));
 			
 			return (true);
@@ -224,6 +225,42 @@ public class Board {
 		}
 	}
 	
+	/**
+	 * Places the pebbles of the given players on this board at the points
+	 * they hold in the given position, e.g. one read using <tt>
+	 * PositionNotation</tt>. The pebbles are taken from the players' pebble
+	 * sets in order, and the board should be empty before calling this.
+	 *
+	 * @param position - the position to set up
+	 * @param starterPlayer - the player owning the <tt>STARTER</tt> pebbles
+	 * @param otherPlayer - the player owning the <tt>OTHER</tt> pebbles
+	 * @return whether all the pebbles were placed successfully
+	 */
+	public boolean placePebbles(Position position, Player starterPlayer,
+			Player otherPlayer) {
+		boolean placedAll = true;
+		int starterCount = 0, otherCount = 0;
+
+		for(int cell = 0; cell < arealSize; cell++) {
+			int row = Move.rowOf(cell), column = Move.columnOf(cell);
+
+			switch(position.sideAt(cell)) {
+			case Position.STARTER:
+				placedAll &= placePebble(starterPlayer.pebble(starterCount++),
+						row, column);
+				break;
+			case Position.OTHER:
+				placedAll &= placePebble(otherPlayer.pebble(otherCount++),
+						row, column);
+				break;
+			default:
+				break;
+			}
+		}
+
+		return (placedAll);
+	}
+
 	/**
 	 * <p>
 	 * Enforces the move given by a player/user on this board, placing the
@@ -286,20 +323,49 @@ public class Board {
 			}
 		}
 		
+		transferPebble(sourceRow, sourceColumn, targetRow, targetColumn);
+		
+		return (true);
+	}
+	
+	/**
+	 * Moves the pebble at the source to the target, capturing the pebble at
+	 * the target (if any), without checking that the points are adjacent or
+	 * linked. This is used to play whole moves validated elsewhere, e.g. a
+	 * capture through the circuits chosen by an engine.
+	 * 
+	 * @param sourceRow - the row of the original point holder
+	 * @param sourceColumn - the column of the original point holder
+	 * @param targetRow - the row of the destination point holder
+	 * @param targetColumn - the column of the destination point holder
+	 */
+	void transferPebble(int sourceRow, int sourceColumn,
+			int targetRow, int targetColumn) {
 		Pebble target = grid[sourceRow][sourceColumn].getHolder();
 		Pebble victim = grid[targetRow][targetColumn].getHolder();
 		
 		grid[targetRow][targetColumn].setHolder(target);
 		grid[sourceRow][sourceColumn].setHolder(null);
 		
-		if(victim == null)
+		if(victim == null) {
 			fireEvent(BoardChangeEvent.newPebbleMovedEvent(target,
 					sourceRow, sourceColumn, targetRow, targetColumn));
-		else
+		} else {
+			--(victim.owner.pebblesOnBoard);
 			fireEvent(BoardChangeEvent.newPebbleKilledEvent(target, victim,
 					sourceRow, sourceColumn, targetRow, targetColumn));
-		
-		return (true);
+		}
+	}
+	
+	/**
+	 * Notifies the listeners of this board that the game played on it has
+	 * ended.
+	 * 
+	 * @param result - the result of the game
+	 * @param reason - why the game ended
+	 */
+	void fireGameOver(GameResult result, GameOverReason reason) {
+		fireEvent(BoardChangeEvent.newGameOverEvent(result, reason));
 	}
 	
 	/**
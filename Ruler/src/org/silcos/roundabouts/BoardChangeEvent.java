@@ -5,7 +5,7 @@ import java.util.HashMap;
 /**
  * Represents an change-event in a <tt>Board</tt> object that could be
  * of varying type - <tt>PLACE_PEBBLE</tt>, <tt>MOVE_PEBBLE</tt>,
- * and <tt>CAPTURE_PEBBLE</tt>. Additional information is stored as
+ * <tt>CAPTURE_PEBBLE</tt> and <tt>GAME_OVER</tt>. Additional information is stored as
  * a set of <tt>String-Object</tt> pairs, which can be accessed using
  * the <tt>userData</tt> getter and setter methods.
  * 
@@ -47,6 +47,16 @@ import java.util.HashMap;
  * 		<td><tt>Pebble</tt> being removed from the board (captured)</td>
  * 		<td><tt>CAPTURE_PEBBLE</tt></td> 
  * 	</tr>
+ * 	<tr>
+ * 		<td>"result"</td>
+ * 		<td><tt>GameResult</tt> of the game</td>
+ * 		<td><tt>GAME_OVER</tt></td>
+ * 	</tr>
+ * 	<tr>
+ * 		<td>"reason"</td>
+ * 		<td><tt>GameOverReason</tt> why the game ended</td>
+ * 		<td><tt>GAME_OVER</tt></td>
+ * 	</tr>
  * </table>
  * 
  * @author Shukant Pal
@@ -158,4 +168,20 @@ public class BoardChangeEvent {
 		return (e);
 	}
 	
+	/**
+	 * Instantiates a new <tt>BoardChangeEvent</tt> for the end of the game
+	 * played on the board.
+	 * 
+	 * @param result - the result of the game
+	 * @param reason - why the game ended
+	 * @return the <tt>BoardChangeEvent</tt> for the end of the game
+	 */
+	static BoardChangeEvent newGameOverEvent(GameResult result,
+			GameOverReason reason) {
+		BoardChangeEvent e = new BoardChangeEvent(BoardChangeType.GAME_OVER);
+		e.setUserData("result", result);
+		e.setUserData("reason", reason);
+		return (e);
+	}
+	
 }
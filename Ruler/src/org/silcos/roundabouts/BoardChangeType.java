@@ -3,5 +3,6 @@ package org.silcos.roundabouts;
 public enum BoardChangeType {
 	PLACE_PEBBLE,
 	MOVE_PEBBLE,
-	CAPTURE_PEBBLE
+	CAPTURE_PEBBLE,
+	GAME_OVER
 }
@@ -0,0 +1,245 @@
+package org.silcos.roundabouts;
+
+/**
+ * <p>
+ * Holds the outcome of simulating a "long" move: whether the travelling
+ * pebble captures an opponent pebble, which one, and the points and
+ * connectors it goes through on the way. Simulations never modify the
+ * board or notify listeners.
+ *
+ * <p>
+ * A path is filled by <tt>Position.simulateCapture</tt> or <tt>
+ * Game.simulateCapture</tt>, and can be reused for any number of them, so
+ * that callers validating moves repeatedly (e.g. while a pebble is being
+ * dragged, or in a search) don't allocate anything.
+ *
+ * <p>
+ * The points are listed in the order of travel, excluding the source. If
+ * a pebble is captured, the last point is the victim's; otherwise, the
+ * travel stops before the first blocking pebble, which is given by <tt>
+ * blocker</tt>.
+ *
+ * @author Shukant Pal
+ */
+public final class CapturePath {
+
+	public static final int MAX_LENGTH = Circuits.RING_LENGTH;
+
+	private final int[] cells;
+	private final Connector[] connectors;
+
+	private int length;
+	private int victim;
+	private int blocker;
+	private boolean onCircuit;
+
+	/**
+	 * Constructs an empty path, which holds no capture.
+	 */
+	public CapturePath() {
+		this.cells = new int[MAX_LENGTH];
+		this.connectors = new Connector[MAX_LENGTH];
+
+		reset();
+	}
+
+	private void reset() {
+		length = 0;
+		victim = -1;
+		blocker = -1;
+		onCircuit = false;
+	}
+
+	/**
+	 * Returns the direction opposite to the given one.
+	 */
+	private static ConnectorOrientation opposite(ConnectorOrientation direction) {
+		switch(direction) {
+		case UP:
+			return (ConnectorOrientation.DOWN);
+		case DOWN:
+			return (ConnectorOrientation.UP);
+		case LEFT:
+			return (ConnectorOrientation.RIGHT);
+		case RIGHT:
+			return (ConnectorOrientation.LEFT);
+		default:
+			return (ConnectorOrientation.UNDEFINED);
+		}
+	}
+
+	/**
+	 * Returns whether leaving the given entry of a circuit with the given
+	 * step heads in the given direction on the board.
+	 */
+	private static boolean heads(int ring, int entry, int step,
+			ConnectorOrientation direction) {
+		int cell = Circuits.cellAt(ring, entry);
+
+		if(Circuits.loopAfter(ring, (step > 0) ? entry : entry - 1)) {
+			return (direction == opposite(Board.inwardPerpendicular(
+					Move.rowOf(cell), Move.columnOf(cell))));
+		}
+
+		int next = Circuits.cellAt(ring, entry + step);
+
+		return (Move.rowOf(next) - Move.rowOf(cell) == Circuits.rowStep(direction) &&
+				Move.columnOf(next) - Move.columnOf(cell) == Circuits.columnStep(direction));
+	}
+
+	/**
+	 * Fills this path by letting the pebble at <tt>source</tt> travel in the
+	 * given direction along the circuit line it lies on. The connectors are
+	 * looked up on the given board, or taken from <tt>Circuits</tt> if it is
+	 * null.
+	 *
+	 * @param own - points held by the owner of the travelling pebble
+	 * @param opponents - points held by its opponent
+	 * @param source - index of the point holding the travelling pebble
+	 * @param direction - the direction to start travelling in
+	 * @param board - the board whose connectors to list, or null
+	 * @return whether a pebble is captured
+	 */
+	boolean trace(long own, long opponents, int source,
+			ConnectorOrientation direction, Board board) {
+		reset();
+
+		for(int ring = Circuits.INNER; ring <= Circuits.OUTER; ring++) {
+			for(int entry : Circuits.occurrencesOf(ring, source)) {
+				for(int step = -1; step <= 1; step += 2) {
+					if(heads(ring, entry, step, direction))
+						return (travel(own, opponents, source, ring, entry, step, board));
+				}
+			}
+		}
+
+		return (false);
+	}
+
+	private boolean travel(long own, long opponents, int source, int ring,
+			int entry, int step, Board board) {
+		long blockers = (own | opponents) & ~Position.bit(source);
+		boolean looped = false;
+
+		onCircuit = true;
+
+		for(int travelled = 0; travelled < Circuits.RING_LENGTH; travelled++) {
+			int from = Circuits.cellAt(ring, entry);
+			Connector connector = null;
+
+			if(Circuits.loopAfter(ring, (step > 0) ? entry : entry - 1)) {
+				connector = (board != null)
+						? board.externalConnectorAt(Move.rowOf(from), Move.columnOf(from))
+						: Circuits.connectorAfter(ring, (step > 0) ? entry : entry - 1);
+				looped = true;
+			}
+
+			entry += step;
+
+			int cell = Circuits.cellAt(ring, entry);
+
+			if((blockers & Position.bit(cell)) != 0) {
+				if(looped && (opponents & Position.bit(cell)) != 0) {
+					victim = cell;
+					cells[length] = cell;
+					connectors[(length)++] = connector;
+				} else {
+					blocker = cell;
+				}
+
+				return (victim != -1);
+			}
+
+			cells[length] = cell;
+			connectors[(length)++] = connector;
+		}
+
+		return (false);
+	}
+
+	/**
+	 * Returns whether the simulated move captures a pebble.
+	 */
+	public boolean isCapture() {
+		return (victim != -1);
+	}
+
+	/**
+	 * Returns whether the simulated direction followed a circuit line at
+	 * all; if not, the path is empty.
+	 */
+	public boolean isOnCircuit() {
+		return (onCircuit);
+	}
+
+	/**
+	 * Returns the index of the point holding the captured pebble, or -1 if
+	 * there is no capture.
+	 */
+	public int victim() {
+		return (victim);
+	}
+
+	/**
+	 * Returns the index of the point holding the pebble that stopped the
+	 * travel without being captured, or -1 if there is none.
+	 */
+	public int blocker() {
+		return (blocker);
+	}
+
+	/**
+	 * Returns the number of points in this path.
+	 */
+	public int length() {
+		return (length);
+	}
+
+	/**
+	 * Returns the index of the given point of this path.
+	 *
+	 * @param step - position in the path, from 0 to <tt>length() - 1</tt>
+	 */
+	public int cellAt(int step) {
+		return (cells[step]);
+	}
+
+	/**
+	 * Returns the row of the given point of this path.
+	 *
+	 * @param step - position in the path, from 0 to <tt>length() - 1</tt>
+	 */
+	public int rowAt(int step) {
+		return (Move.rowOf(cells[step]));
+	}
+
+	/**
+	 * Returns the column of the given point of this path.
+	 *
+	 * @param step - position in the path, from 0 to <tt>length() - 1</tt>
+	 */
+	public int columnAt(int step) {
+		return (Move.columnOf(cells[step]));
+	}
+
+	/**
+	 * Returns the connector gone through just before reaching the given
+	 * point of this path, or null if it was reached along a line.
+	 *
+	 * @param step - position in the path, from 0 to <tt>length() - 1</tt>
+	 */
+	public Connector connectorBefore(int step) {
+		return (connectors[step]);
+	}
+
+	/**
+	 * Returns the move capturing the victim, or <tt>Move.NONE</tt> if there
+	 * is no capture.
+	 *
+	 * @param source - index of the point holding the travelling pebble
+	 */
+	public int toMove(int source) {
+		return ((victim != -1) ? Move.of(source, victim) : Move.NONE);
+	}
+
+}
@@ -0,0 +1,203 @@
+package org.silcos.roundabouts;
+
+/**
+ * <p>
+ * Flattens the inner and outer circuits of the board into cyclic sequences
+ * of point indices, so that headless code can walk them with plain array
+ * arithmetic instead of following <tt>Connector</tt> objects.
+ *
+ * <p>
+ * Each circuit is made of two rows and two columns joined by the four
+ * connectors of that circuit, and hence, has <tt>RING_LENGTH</tt> entries.
+ * Points where the lines of a circuit cross appear twice in its sequence.
+ * The sequences are built by walking a <tt>Board</tt> through its
+ * connectors (see <tt>Board.innerCircuit</tt> and <tt>Board.outerCircuit
+ * </tt>), so they always agree with the loops the board links.
+ *
+ * @author Shukant Pal
+ */
+public final class Circuits {
+
+	/**
+	 * Index of the circuit formed by the connectors one unit away from the
+	 * corners.
+	 */
+	public static final int INNER = 0;
+
+	/**
+	 * Index of the circuit formed by the connectors two units away from the
+	 * corners.
+	 */
+	public static final int OUTER = 1;
+
+	public static final int RING_LENGTH = 4 * Board.linearSize;
+
+	/**
+	 * Point indices along each circuit, in the order of travel.
+	 */
+	private static final int[][] rings = new int[2][RING_LENGTH];
+
+	/**
+	 * Whether moving from entry <tt>i</tt> to entry <tt>i + 1</tt> (cyclic)
+	 * of a circuit goes through a connector.
+	 */
+	private static final boolean[][] loopAfter = new boolean[2][RING_LENGTH];
+
+	/**
+	 * Connectors gone through when stepping from entry <tt>i</tt> to entry
+	 * <tt>i + 1</tt> (cyclic) of a circuit, or null within a line.
+	 */
+	private static final Connector[][] connectorAfter = new Connector[2][RING_LENGTH];
+
+	/**
+	 * Indices in each circuit at which a given point occurs (none, one or
+	 * two, for crossings).
+	 */
+	private static final int[][][] occurrences = new int[2][Board.arealSize][];
+
+	/**
+	 * Bit-masks (bit <tt>i</tt> for point index <tt>i</tt>) of the points
+	 * lying on each circuit.
+	 */
+	private static final long[] ringMasks = new long[2];
+
+	static {
+		Board board = Board.filledInstance();
+
+		walk(board, board.innerCircuit(0), INNER);
+		walk(board, board.outerCircuit(0), OUTER);
+	}
+
+	private Circuits() {
+	}
+
+	/**
+	 * Fills the tables for the given circuit by starting at the second
+	 * end of the given connector and walking inwards, through the
+	 * connectors at the edges, till the walk returns to the start.
+	 */
+	private static void walk(Board board, Connector entry, int ring) {
+		int row = entry.row1(), column = entry.column1();
+		ConnectorOrientation direction = Board.inwardPerpendicular(row, column);
+		int[] counts = new int[Board.arealSize];
+
+		for(int index = 0; index < RING_LENGTH; index++) {
+			int cell = Move.cellOf(row, column);
+
+			rings[ring][index] = cell;
+			ringMasks[ring] |= 1L << cell;
+			++(counts[cell]);
+
+			int nextRow = row + rowStep(direction);
+			int nextColumn = column + columnStep(direction);
+
+			if(nextRow < 0 || nextRow >= Board.linearSize ||
+					nextColumn < 0 || nextColumn >= Board.linearSize) {
+				Connector connector = board.externalConnectorAt(row, column);
+				int[] otherEnd = connector.otherEnd(row, column);
+
+				row = otherEnd[0];
+				column = otherEnd[1];
+				direction = Board.inwardPerpendicular(row, column);
+				loopAfter[ring][index] = true;
+				connectorAfter[ring][index] = connector;
+			} else {
+				row = nextRow;
+				column = nextColumn;
+			}
+		}
+
+		for(int cell = 0; cell < Board.arealSize; cell++) {
+			occurrences[ring][cell] = new int[counts[cell]];
+			counts[cell] = 0;
+		}
+
+		for(int index = 0; index < RING_LENGTH; index++) {
+			int cell = rings[ring][index];
+			occurrences[ring][cell][(counts[cell])++] = index;
+		}
+	}
+
+	/**
+	 * Returns the change in row for one step in the given direction.
+	 */
+	public static int rowStep(ConnectorOrientation direction) {
+		switch(direction) {
+		case UP:
+			return (-1);
+		case DOWN:
+			return (1);
+		default:
+			return (0);
+		}
+	}
+
+	/**
+	 * Returns the change in column for one step in the given direction.
+	 */
+	public static int columnStep(ConnectorOrientation direction) {
+		switch(direction) {
+		case LEFT:
+			return (-1);
+		case RIGHT:
+			return (1);
+		default:
+			return (0);
+		}
+	}
+
+	/**
+	 * Returns the index of the point at the given entry of a circuit.
+	 *
+	 * @param ring - <tt>INNER</tt> or <tt>OUTER</tt>
+	 * @param index - entry in the circuit, taken cyclically
+	 */
+	public static int cellAt(int ring, int index) {
+		return (rings[ring][Math.floorMod(index, RING_LENGTH)]);
+	}
+
+	/**
+	 * Returns whether stepping from the given entry of a circuit to the
+	 * next one goes through a connector.
+	 *
+	 * @param ring - <tt>INNER</tt> or <tt>OUTER</tt>
+	 * @param index - entry in the circuit, taken cyclically
+	 */
+	public static boolean loopAfter(int ring, int index) {
+		return (loopAfter[ring][Math.floorMod(index, RING_LENGTH)]);
+	}
+
+	/**
+	 * Returns the connector gone through when stepping from the given entry
+	 * of a circuit to the next one, or null if there is none. Connectors are
+	 * those of a board private to this class; use <tt>Board.externalConnectorAt
+	 * </tt> to get those of a given board.
+	 *
+	 * @param ring - <tt>INNER</tt> or <tt>OUTER</tt>
+	 * @param index - entry in the circuit, taken cyclically
+	 */
+	public static Connector connectorAfter(int ring, int index) {
+		return (connectorAfter[ring][Math.floorMod(index, RING_LENGTH)]);
+	}
+
+	/**
+	 * Returns the entries of the given circuit at which the point occurs.
+	 * The returned array is shared and must not be modified.
+	 *
+	 * @param ring - <tt>INNER</tt> or <tt>OUTER</tt>
+	 * @param cell - index of the point
+	 */
+	public static int[] occurrencesOf(int ring, int cell) {
+		return (occurrences[ring][cell]);
+	}
+
+	/**
+	 * Returns the bit-mask of the points lying on the given circuit.
+	 *
+	 * @param ring - <tt>INNER</tt> or <tt>OUTER</tt>
+	 */
+	public static long ringMask(int ring) {
+		return (ringMasks[ring]);
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.silcos.roundabouts;
+
+/**
+ * <p>
+ * Decides when a game that neither player can win ends as a draw: when the
+ * same position occurs for the <tt>repetitions</tt>-th time, or when
+ * <tt>quietPlies</tt> plies are played without a capture. Either rule is
+ * turned off by a limit of 0. Without them, pebbles can chase each other
+ * around the circuits forever.
+ *
+ * <p>
+ * The rule is applied to a <tt>PositionHistory</tt>, which both <tt>Game
+ * </tt> and the engine search keep.
+ *
+ * @author Shukant Pal
+ */
+public final class DrawRule {
+
+	/**
+	 * The rule used unless another is set: threefold repetition, or a hundred
+	 * plies without a capture.
+	 */
+	public static final DrawRule STANDARD = new DrawRule(3, 100);
+
+	/**
+	 * No draws at all; games end only when a side has no pebbles left.
+	 */
+	public static final DrawRule NONE = new DrawRule(0, 0);
+
+	private final int repetitions;
+	private final int quietPlies;
+
+	/**
+	 * Constructs a draw rule.
+	 *
+	 * @param repetitions - the number of occurrences of a position that draw
+	 * 				the game, or 0 for no repetition rule
+	 * @param quietPlies - the number of plies without a capture that draw the
+	 * 				game, or 0 for no such rule
+	 */
+	public DrawRule(int repetitions, int quietPlies) {
+		if(repetitions < 0 || repetitions == 1 || quietPlies < 0)
+			throw new IllegalArgumentException("Bad draw limits: " + repetitions + ", "
+					+ quietPlies);
+
+		this.repetitions = repetitions;
+		this.quietPlies = quietPlies;
+	}
+
+	/**
+	 * Returns the number of occurrences of a position that draw the game, or
+	 * 0 if there is no repetition rule.
+	 */
+	public int repetitions() {
+		return (repetitions);
+	}
+
+	/**
+	 * Returns the number of plies without a capture that draw the game, or 0
+	 * if there is no such rule.
+	 */
+	public int quietPlies() {
+		return (quietPlies);
+	}
+
+	/**
+	 * Returns whether the current position of the given history is drawn by
+	 * this rule.
+	 *
+	 * @param history - the positions of the game up to now
+	 */
+	public boolean isDraw(PositionHistory history) {
+		return ((repetitions > 0 && history.repetitions() + 1 >= repetitions) ||
+				(quietPlies > 0 && history.quietPlies() >= quietPlies));
+	}
+
+}
@@ -1,5 +1,7 @@
 package org.silcos.roundabouts;
 
+import java.util.function.BiFunction;
+
 /**
  * Controls the state and progression of the Permainan game, and allows
  * the <tt>Board</tt>, <tt>Player</tt> and UI objects to coordinate and
@@ -92,6 +94,35 @@ public class Game {
 	 * move.
 	 */
 	private ConnectorOrientation longMoveDirection;
+
+	/**
+	 * Scratch path for <tt>isLongMoveCapturable</tt>.
+	 */
+	private final CapturePath longMovePath = new CapturePath();
+
+	/**
+	 * Keys of the positions reached in this game, for the draw rule.
+	 */
+	private final PositionHistory history = new PositionHistory();
+
+	/**
+	 * Number of pebbles on the board when the last position was recorded
+	 * in <tt>history</tt>, to tell captures apart.
+	 */
+	private int historyPebbles;
+
+	private volatile DrawRule drawRule = DrawRule.STANDARD;
+
+	/**
+	 * Result of this game, and why it ended (null while it is unfinished).
+	 */
+	private volatile GameResult result = GameResult.UNFINISHED;
+	private volatile GameOverReason overReason;
+
+	/**
+	 * Scratch buffer to check whether the player to move has any moves.
+	 */
+	private final int[] moveBuffer = new int[Position.MAX_MOVES];
 	
 	private class LongMoveInvoker extends Thread {
 
@@ -106,8 +137,12 @@ public class Game {
 			}
 			
 			if(!moveRepeating) {
-				activePlayer = opponentOf(getActivePlayer());
-				moveLocked = false;
+				// Unlock only once the turn is passed, so that the mover can't
+				// move again in between.
+				synchronized(Game.this) {
+					passTurn(opponentOf(getActivePlayer()));
+					moveLocked = false;
+				}
 			}
 		}
 
@@ -117,6 +152,67 @@ public class Game {
 		return (moveLocked);
 	}
 	
+	/**
+	 * Records the position reached by the move just completed, and passes
+	 * the turn to the given player, unless the move ended the game.
+	 * 
+	 * @param nextActivePlayer - the opponent of the player who moved
+	 */
+	private synchronized void passTurn(Player nextActivePlayer) {
+		activePlayer = nextActivePlayer;
+
+		Position position = currentPosition();
+		int pebbles = starterPlayer.pebbleCount() + otherPlayer.pebbleCount();
+
+		history.push(position.key(), pebbles != historyPebbles);
+		historyPebbles = pebbles;
+
+		if(!checkGameOver(position))
+			activePlayer.turnStarted();
+	}
+	
+	/**
+	 * Ends the game if the given position, just reached, is won or drawn,
+	 * and returns whether it did.
+	 */
+	private boolean checkGameOver(Position position) {
+		if(activePlayer.pebbleCount() == 0)
+			endGame((activePlayer == starterPlayer) ? GameResult.OTHER_WIN
+					: GameResult.STARTER_WIN, GameOverReason.NO_PEBBLES);
+		else if(drawRule.repetitions() > 0 &&
+				history.repetitions() + 1 >= drawRule.repetitions())
+			endGame(GameResult.DRAW, GameOverReason.REPETITION);
+		else if(drawRule.quietPlies() > 0 &&
+				history.quietPlies() >= drawRule.quietPlies())
+			endGame(GameResult.DRAW, GameOverReason.NO_CAPTURES);
+		else if(position.generateMoves(moveBuffer) == 0)
+			endGame(GameResult.DRAW, GameOverReason.NO_MOVES);
+
+		return (result != GameResult.UNFINISHED);
+	}
+	
+	/**
+	 * Ends the game, and notifies the players and the board listeners.
+	 */
+	private void endGame(GameResult gameResult, GameOverReason reason) {
+		this.result = gameResult;
+		this.overReason = reason;
+		
+		starterPlayer.gameOver(gameResult);
+		otherPlayer.gameOver(gameResult);
+		gameBoard.fireGameOver(gameResult, reason);
+	}
+	
+	/**
+	 * Starts the history of this game from the position on the board.
+	 */
+	private synchronized void startHistory() {
+		history.start(currentPosition().key());
+		historyPebbles = starterPlayer.pebbleCount() + otherPlayer.pebbleCount();
+		result = GameResult.UNFINISHED;
+		overReason = null;
+	}
+	
 	/**
 	 * Starts a "long" move that should initiate after the loop end.
 	 * 
@@ -381,8 +477,111 @@ public class Game {
 				++(pebbleCount);
 			}
 		}
+
+		startHistory();
 	}
 	
+	/**
+	 * Initializes the game board with the given position instead of the
+	 * initial one, e.g. one read using <tt>PositionNotation</tt>, and hands
+	 * the turn to the player whose side is to move in it. The players should
+	 * be registered and the board empty before calling this method.
+	 *
+	 * @param position - the position to set up
+	 */
+	public void placePebbles(Position position) {
+		gameBoard.placePebbles(position, starterPlayer, otherPlayer);
+
+		activePlayer = (position.sideToMove() == Position.STARTER)
+				? starterPlayer : otherPlayer;
+		startHistory();
+	}
+
+	/**
+	 * Starts the play once the pebbles are placed, by notifying the active
+	 * player that it has the turn (which lets engine players start).
+	 */
+	public void startPlay() {
+		if(!isOver())
+			activePlayer.turnStarted();
+	}
+
+	/**
+	 * Returns the result of this game; <tt>UNFINISHED</tt> until it ends.
+	 */
+	public GameResult result() {
+		return (result);
+	}
+
+	/**
+	 * Returns why this game ended, or null if it is unfinished.
+	 */
+	public GameOverReason overReason() {
+		return (overReason);
+	}
+
+	/**
+	 * Returns whether this game has ended. Moves are no longer accepted once
+	 * it has; listeners are told by a <tt>GAME_OVER</tt> event.
+	 */
+	public boolean isOver() {
+		return (result != GameResult.UNFINISHED);
+	}
+
+	/**
+	 * Returns a copy of the history of the positions reached in this game,
+	 * e.g. for engines to avoid or seek repetitions.
+	 */
+	public synchronized PositionHistory history() {
+		return (new PositionHistory(history));
+	}
+
+	/**
+	 * Returns the rule by which this game ends as a draw.
+	 */
+	public DrawRule drawRule() {
+		return (drawRule);
+	}
+
+	/**
+	 * Sets the rule by which this game ends as a draw.
+	 * 
+	 * @param drawRule - the rule; <tt>DrawRule.NONE</tt> for no draws
+	 */
+	public void setDrawRule(DrawRule drawRule) {
+		this.drawRule = drawRule;
+	}
+
+	/**
+	 * Returns whether the current position is drawn by the draw rule, i.e.
+	 * it repeated too often, or too many plies passed without a capture.
+	 */
+	public synchronized boolean isDrawn() {
+		return (history.size() > 0 && drawRule.isDraw(history));
+	}
+
+	/**
+	 * Returns a snapshot of the pebbles on the game board and the side of
+	 * the active player, as a <tt>Position</tt>.
+	 */
+	public Position currentPosition() {
+		Position position = new Position();
+
+		for(int cell = 0; cell < Board.arealSize; cell++) {
+			Pebble pebble = gameBoard.pebbleAt(Move.rowOf(cell),
+					Move.columnOf(cell));
+
+			if(pebble != null)
+				position.place((pebble.owner() == starterPlayer)
+						? Position.STARTER : Position.OTHER, cell);
+		}
+
+		position.setSideToMove((activePlayer == otherPlayer)
+				? Position.OTHER : Position.STARTER);
+
+		return (position);
+	}
+
 	/**
 	 * <p>
 	 * Acknowledges the input given by the user to move the pebble from
@@ -406,7 +605,7 @@ public class Game {
 	 */
 	public synchronized void notifyInput(int sourceRow, int sourceColumn,
 			int targetRow, int targetColumn) {
-		if(isMoveLocked())
+		if(isMoveLocked() || isOver())
 			return;
 		
 		Player nextActivePlayer = opponentOf(
@@ -417,10 +616,33 @@ public class Game {
 		
 		if(gameBoard.movePebble(sourceRow, sourceColumn,
 				targetRow, targetColumn)) {
-			activePlayer = nextActivePlayer;
+			passTurn(nextActivePlayer);
 		}
 	}
 	
+	/**
+	 * Plays the given move (as encoded by <tt>Move</tt>) for the active
+	 * player in one go, including captures through the circuits, and passes
+	 * the turn. This is how players that choose their own moves, like
+	 * engines, play them. Listeners are notified as for <tt>notifyInput</tt>.
+	 * 
+	 * @param move - the encoded move
+	 * @return whether the move was legal (and so, played)
+	 */
+	public synchronized boolean playMove(int move) {
+		if(isMoveLocked() || isOver() || move == Move.NONE ||
+				!currentPosition().isLegal(move))
+			return (false);
+		
+		int source = Move.source(move), target = Move.target(move);
+		
+		gameBoard.transferPebble(Move.rowOf(source), Move.columnOf(source),
+				Move.rowOf(target), Move.columnOf(target));
+		passTurn(opponentOf(activePlayer));
+		
+		return (true);
+	}
+	
 	/**
 	 * <p>
 	 * Acknowledges the input given by the user to move the pebble at
@@ -443,7 +665,7 @@ public class Game {
 	 * @param sourceColumn
 	 */
 	public synchronized void notifyLoopInput(int sourceRow, int sourceColumn) {
-		if(isMoveLocked() && !moveRepeating)
+		if((isMoveLocked() && !moveRepeating) || isOver())
 			return;
 		
 		if(!moveRepeating) {
@@ -497,31 +719,73 @@ public class Game {
 	}
 	
 	/**
-	 * Returns whether the long move starting from (startRow, startColumn)
-	 * will capture an opponent pebble or not. It practically simulates the
-	 * "long" moves without actually modifying the board.
+	 * Simulates the pebble at (row, column) travelling in the given direction
+	 * along its circuit line, and fills the given path with the outcome -
+	 * the pebble it would capture, and the points and connectors (of this
+	 * game's board) it would go through. The board is not modified and no
+	 * listener is notified.
+	 *
+	 * @param row - the row of the travelling pebble
+	 * @param column - the column of the travelling pebble
+	 * @param direction - the direction to start travelling in
+	 * @param path - the path to fill
+	 * @return whether an opponent pebble would be captured
+	 */
+	public boolean simulateCapture(int row, int column,
+			ConnectorOrientation direction, CapturePath path) {
+		Pebble traveller = pebbleAt(row, column);
+
+		if(traveller == null)
+			throw new IllegalArgumentException("No pebble at (" + row + ", " + column + ")");
+
+		long own = 0, opponents = 0;
+
+		for(int cell = 0; cell < Board.arealSize; cell++) {
+			Pebble pebble = pebbleAt(Move.rowOf(cell), Move.columnOf(cell));
+
+			if(pebble == null)
+				continue;
+
+			if(pebble.owner() == traveller.owner())
+				own |= Position.bit(cell);
+			else
+				opponents |= Position.bit(cell);
+		}
+
+		return (path.trace(own, opponents, Move.cellOf(row, column), direction, gameBoard));
+	}
+
+	/**
+	 * Returns whether the long move starting from (startRow, startColumn),
+	 * through the connector at that point, will capture an opponent pebble
+	 * or not. It simulates the "long" move without modifying the board.
 	 * 
-	 * @param startRow
-	 * @param startColumn
-	 * @return
+	 * @param startRow - the row of the pebble at a connector end
+	 * @param startColumn - the column of the pebble at a connector end
 	 */
-	public boolean isLongMoveCapturable(int startRow, int startColumn) {
-		Player activePebbleOwner = pebbleAt(startRow, startColumn).owner();
-		
-		int curRow = startRow, curColumn = startColumn;
-	//	ConnectorOrientation curDir =
-	//			Board.inwardPerpendicular(curRow, curColumn);
-//		boolean curOpponentTripping = false;
-		
-		while(true) {
-			// TODO: Finish this
-			
-			if(pebbleAt(curRow, curColumn).owner() == activePebbleOwner) {
-				break;
-			}
+	public synchronized boolean isLongMoveCapturable(int startRow, int startColumn) {
+		if(pebbleAt(startRow, startColumn) == null ||
+				externalConnectorAt(startRow, startColumn) == null)
+			return (false);
+
+		ConnectorOrientation outward;
+
+		switch(Board.inwardPerpendicular(startRow, startColumn)) {
+		case UP:
+			outward = ConnectorOrientation.DOWN;
+			break;
+		case DOWN:
+			outward = ConnectorOrientation.UP;
+			break;
+		case LEFT:
+			outward = ConnectorOrientation.RIGHT;
+			break;
+		default:
+			outward = ConnectorOrientation.LEFT;
+			break;
 		}
-		
-		return (false);
+
+		return (simulateCapture(startRow, startColumn, outward, longMovePath));
 	}
 	
 	/**
@@ -529,9 +793,22 @@ public class Game {
 	 * <tt>HumanPlayer</tt> objects.
 	 */
 	public static Game doubleUserGame() {
+		return (newGame(HumanPlayer::new, HumanPlayer::new));
+	}
+	
+	/**
+	 * Factory for <tt>Game</tt> objects whose players are created by the
+	 * given factories, e.g. <tt>HumanPlayer::new</tt> or the constructor of
+	 * an engine player. The factories are given the game and its board.
+	 * 
+	 * @param starterFactory - creates the player that starts the game
+	 * @param otherFactory - creates the other player
+	 */
+	public static Game newGame(BiFunction<Board, Game, ? extends Player> starterFactory,
+			BiFunction<Board, Game, ? extends Player> otherFactory) {
 		Game game = new Game();
-		game.setStarterPlayer(new HumanPlayer(game.gameBoard, game));
-		game.setOtherPlayer(new HumanPlayer(game.gameBoard, game));
+		game.setStarterPlayer(starterFactory.apply(game.gameBoard, game));
+		game.setOtherPlayer(otherFactory.apply(game.gameBoard, game));
 		
 		return (game);
 	}
@@ -0,0 +1,35 @@
+package org.silcos.roundabouts;
+
+/**
+ * Why a Permainan game ended, along with its <tt>GameResult</tt>.
+ *
+ * @author Shukant Pal
+ */
+public enum GameOverReason {
+
+	/**
+	 * The loser has no pebbles left.
+	 */
+	NO_PEBBLES,
+
+	/**
+	 * The player to move has no legal move, which is a draw.
+	 */
+	NO_MOVES,
+
+	/**
+	 * The same position occurred too often (see <tt>DrawRule</tt>).
+	 */
+	REPETITION,
+
+	/**
+	 * Too many plies were played without a capture (see <tt>DrawRule</tt>).
+	 */
+	NO_CAPTURES,
+
+	/**
+	 * The loser made an illegal move, which only a <tt>GameBatch</tt> accepts.
+	 */
+	ILLEGAL_MOVE
+
+}
@@ -0,0 +1,14 @@
+package org.silcos.roundabouts;
+
+/**
+ * Outcome of a Permainan game, as seen from the starter player's side.
+ * The ordinal of each constant is stable and used in on-disk formats.
+ *
+ * @author Shukant Pal
+ */
+public enum GameResult {
+	UNFINISHED,
+	STARTER_WIN,
+	OTHER_WIN,
+	DRAW
+}
@@ -0,0 +1,145 @@
+package org.silcos.roundabouts;
+
+/**
+ * <p>
+ * Encodes moves as plain <tt>int</tt> values so that they can be stored in
+ * primitive arrays, written to disk and compared without allocating. A move
+ * holds the index of the source point and the index of the target point,
+ * where the index of the point at (row, column) is <tt>row * 6 + column</tt>.
+ *
+ * <p>
+ * The encoding uses the lower 12 bits (6 for each point) and hence, it also
+ * fits in a <tt>short</tt>. <tt>NONE</tt> is never a valid move, as the
+ * source and target of a move are always different points.
+ *
+ * @author Shukant Pal
+ */
+public final class Move {
+
+	/**
+	 * Placeholder for "no move", e.g. when no best move is known.
+	 */
+	public static final int NONE = 0;
+
+	private Move() {
+	}
+
+	/**
+	 * Returns the index of the point at (row, column).
+	 *
+	 * @param row - the row of the point
+	 * @param column - the column of the point
+	 */
+	public static int cellOf(int row, int column) {
+		return (row * Board.linearSize + column);
+	}
+
+	/**
+	 * Returns the row of the point with the given index.
+	 *
+	 * @param cell - index of the point
+	 */
+	public static int rowOf(int cell) {
+		return (cell / Board.linearSize);
+	}
+
+	/**
+	 * Returns the column of the point with the given index.
+	 *
+	 * @param cell - index of the point
+	 */
+	public static int columnOf(int cell) {
+		return (cell % Board.linearSize);
+	}
+
+	/**
+	 * Returns the move from the <tt>source</tt> point to the <tt>target</tt>
+	 * point (given by their indices).
+	 *
+	 * @param source - index of the point holding the pebble to move
+	 * @param target - index of the destination point
+	 */
+	public static int of(int source, int target) {
+		return ((source << 6) | target);
+	}
+
+	/**
+	 * Returns the move from (sourceRow, sourceColumn) to (targetRow,
+	 * targetColumn).
+	 */
+	public static int of(int sourceRow, int sourceColumn,
+			int targetRow, int targetColumn) {
+		return (of(cellOf(sourceRow, sourceColumn),
+				cellOf(targetRow, targetColumn)));
+	}
+
+	/**
+	 * Returns the index of the source point of the given move.
+	 *
+	 * @param move - the encoded move
+	 */
+	public static int source(int move) {
+		return ((move >>> 6) & 0x3F);
+	}
+
+	/**
+	 * Returns the index of the target point of the given move.
+	 *
+	 * @param move - the encoded move
+	 */
+	public static int target(int move) {
+		return (move & 0x3F);
+	}
+
+	/**
+	 * Returns the move in the "row,column-row,column" form, e.g. "1,0-2,1"
+	 * for moving the pebble at (1, 0) to (2, 1).
+	 *
+	 * @param move - the encoded move
+	 */
+	public static String toString(int move) {
+		if(move == NONE)
+			return ("none");
+
+		int source = source(move), target = target(move);
+
+		return (rowOf(source) + "," + columnOf(source) + "-" +
+				rowOf(target) + "," + columnOf(target));
+	}
+
+	/**
+	 * Parses a move written by <tt>toString</tt>, e.g. "1,0-2,1".
+	 *
+	 * @param text - the move in the "row,column-row,column" form
+	 * @return the encoded move
+	 * @throws IllegalArgumentException - if the text is malformed, or a point
+	 * 			is off the board
+	 */
+	public static int parse(CharSequence text) {
+		int[] coordinates = new int[4];
+		int index = 0;
+
+		for(int coordinate = 0; coordinate < 4; coordinate++) {
+			if(coordinate > 0) {
+				char separator = (coordinate == 2) ? '-' : ',';
+
+				if(index >= text.length() || text.charAt(index) != separator)
+					throw new IllegalArgumentException("Malformed move: " + text);
+
+				++(index);
+			}
+
+			if(index >= text.length() || text.charAt(index) < '0' ||
+					text.charAt(index) >= '0' + Board.linearSize)
+				throw new IllegalArgumentException("Malformed move: " + text);
+
+			coordinates[coordinate] = text.charAt((index)++) - '0';
+		}
+
+		if(index != text.length())
+			throw new IllegalArgumentException("Malformed move: " + text);
+
+		return (of(coordinates[0], coordinates[1], coordinates[2], coordinates[3]));
+	}
+
+}
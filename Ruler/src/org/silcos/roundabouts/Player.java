@@ -7,6 +7,12 @@ public class Player {
 	
 	Pebble[] pebbleSet;
 	
+	/**
+	 * Number of pebbles of this player on the board, kept up to date by
+	 * the board as pebbles are placed and captured.
+	 */
+	int pebblesOnBoard;
+	
 	public Player(Board playBoard, Game gameInstance) {
 		this.playBoard = playBoard;
 		this.gameInstance = gameInstance;
@@ -29,4 +35,28 @@ public class Player {
 		return (Board.linearSize * 2);
 	}
 	
+	/**
+	 * Returns the number of pebbles this player has on the board, i.e. not
+	 * captured yet.
+	 */
+	public int pebbleCount() {
+		return (pebblesOnBoard);
+	}
+	
+	/**
+	 * Called by the game when the turn passes to this player. Players that
+	 * choose their moves themselves (e.g. engines) start thinking here, and
+	 * should return quickly; human players are given their moves by the UI.
+	 */
+	protected void turnStarted() {
+	}
+	
+	/**
+	 * Called by the game when it ends, e.g. so that engines stop thinking.
+	 * 
+	 * @param result - the result of the game
+	 */
+	protected void gameOver(GameResult result) {
+	}
+	
 }
@@ -0,0 +1,641 @@
+package org.silcos.roundabouts;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Holds a Permainan position in a compact, headless form - one bit-mask
+ * of occupied points for each side and the side to move. Bit <tt>i</tt>
+ * of a mask refers to the point with index <tt>i</tt> (see <tt>Move.cellOf
+ * </tt>). Unlike <tt>Board</tt>, a position has no <tt>Point</tt> or <tt>
+ * Pebble</tt> objects and fires no events, so that archives, analysis and
+ * engines can replay and search games without allocating.
+ *
+ * <p>
+ * Moves are applied the same way <tt>Board.movePebble</tt> applies them:
+ * the pebble at the source is put on the target point, and the opponent
+ * pebble held there (if any) is removed. Every position also maintains a
+ * 64-bit Zobrist <tt>key</tt> incrementally, which is stable across runs
+ * and hence can be stored on disk.
+ *
+ * <p>
+ * Legal moves are generated by the rules of the game: a pebble may step to
+ * any empty adjacent point (diagonals included), and may capture an
+ * opponent pebble by travelling along a circuit (see <tt>Circuits</tt>)
+ * through at least one connector, over empty points only, up to the first
+ * pebble in its way.
+ *
+ * <p>
+ * Positions are not thread-safe.
+ *
+ * @author Shukant Pal
+ */
+public final class Position {
+
+	/**
+	 * Side of the player that starts the game (see <tt>Game.getStarterPlayer
+	 * </tt>).
+	 */
+	public static final int STARTER = 0;
+
+	/**
+	 * Side of the player that doesn't start the game.
+	 */
+	public static final int OTHER = 1;
+
+	/**
+	 * Upper bound on the number of legal moves in any position.
+	 */
+	public static final int MAX_MOVES = 256;
+
+	private static final long[][] pebbleKeys =
+			new long[2][Board.arealSize];
+	private static final long sideKey;
+
+	/**
+	 * Bit-masks of the (up to eight) points adjacent to each point.
+	 */
+	private static final long[] neighbours = new long[Board.arealSize];
+
+	static {
+		long seed = 0x2545F4914F6CDD1DL;
+
+		for(int side = STARTER; side <= OTHER; side++) {
+			for(int cell = 0; cell < Board.arealSize; cell++) {
+				seed += 0x9E3779B97F4A7C15L;
+				pebbleKeys[side][cell] = mix(seed);
+			}
+		}
+
+		seed += 0x9E3779B97F4A7C15L;
+		sideKey = mix(seed);
+
+		for(int cell = 0; cell < Board.arealSize; cell++) {
+			int row = Move.rowOf(cell), column = Move.columnOf(cell);
+
+			for(int rowStep = -1; rowStep <= 1; rowStep++) {
+				for(int columnStep = -1; columnStep <= 1; columnStep++) {
+					int nextRow = row + rowStep, nextColumn = column + columnStep;
+
+					if((rowStep != 0 || columnStep != 0) &&
+							nextRow >= 0 && nextRow < Board.linearSize &&
+							nextColumn >= 0 && nextColumn < Board.linearSize) {
+						neighbours[cell] |= bit(Move.cellOf(nextRow, nextColumn));
+					}
+				}
+			}
+		}
+	}
+
+	private final long[] pebbles;
+	private int sideToMove;
+	private long key;
+
+	/**
+	 * Whether the moves made on this position (and not unmade yet) captured
+	 * a pebble, indexed by the number of moves made before them.
+	 */
+	private boolean[] captureStack;
+	private int depth;
+
+	/**
+	 * Constructs an empty position with the starter player to move.
+	 */
+	public Position() {
+		this.pebbles = new long[2];
+		this.sideToMove = STARTER;
+		this.key = 0;
+		this.captureStack = new boolean[64];
+		this.depth = 0;
+	}
+
+	/**
+	 * The "splitmix64" finalizer, used to derive the Zobrist keys.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return (z ^ (z >>> 31));
+	}
+
+	/**
+	 * Returns the bit for the point with the given index.
+	 */
+	public static long bit(int cell) {
+		return (1L << cell);
+	}
+
+	/**
+	 * Returns the Zobrist key of the position with the given pebble masks
+	 * and side to move, without constructing it.
+	 *
+	 * @param starterPebbles - points held by the starter player
+	 * @param otherPebbles - points held by the other player
+	 * @param sideToMove - <tt>STARTER</tt> or <tt>OTHER</tt>
+	 */
+	public static long keyOf(long starterPebbles, long otherPebbles,
+			int sideToMove) {
+		long key = (sideToMove == OTHER) ? sideKey : 0;
+
+		for(long mask = starterPebbles; mask != 0; mask &= mask - 1) {
+			key ^= pebbleKeys[STARTER][Long.numberOfTrailingZeros(mask)];
+		}
+
+		for(long mask = otherPebbles; mask != 0; mask &= mask - 1) {
+			key ^= pebbleKeys[OTHER][Long.numberOfTrailingZeros(mask)];
+		}
+
+		return (key);
+	}
+
+	/**
+	 * Returns the position set up the way <tt>Game.placeAllPebbles</tt>
+	 * sets up a new game: the starter player holds the first two rows, the
+	 * other player holds the last two rows and the starter player moves.
+	 */
+	public static Position initial() {
+		Position position = new Position();
+		int setSize = Player.pebbleSetSize();
+
+		for(int cell = 0; cell < setSize; cell++) {
+			position.place(STARTER, cell);
+			position.place(OTHER, Board.arealSize - setSize + cell);
+		}
+
+		return (position);
+	}
+
+	/**
+	 * Returns a copy of this position, without the history of the moves
+	 * made on it.
+	 */
+	public Position copy() {
+		Position copy = new Position();
+
+		copy.pebbles[STARTER] = pebbles[STARTER];
+		copy.pebbles[OTHER] = pebbles[OTHER];
+		copy.sideToMove = sideToMove;
+		copy.key = key;
+
+		return (copy);
+	}
+
+	/**
+	 * Returns the bit-mask of the points held by the given side.
+	 *
+	 * @param side - <tt>STARTER</tt> or <tt>OTHER</tt>
+	 */
+	public long pebbles(int side) {
+		return (pebbles[side]);
+	}
+
+	/**
+	 * Returns the bit-mask of all the points holding a pebble.
+	 */
+	public long occupied() {
+		return (pebbles[STARTER] | pebbles[OTHER]);
+	}
+
+	/**
+	 * Returns the number of pebbles the given side has on the board.
+	 *
+	 * @param side - <tt>STARTER</tt> or <tt>OTHER</tt>
+	 */
+	public int pebbleCount(int side) {
+		return (Long.bitCount(pebbles[side]));
+	}
+
+	/**
+	 * Returns the side holding the point with the given index, or -1 if
+	 * the point is empty.
+	 *
+	 * @param cell - index of the point
+	 */
+	public int sideAt(int cell) {
+		long bit = bit(cell);
+
+		if((pebbles[STARTER] & bit) != 0) {
+			return (STARTER);
+		} else if((pebbles[OTHER] & bit) != 0) {
+			return (OTHER);
+		} else {
+			return (-1);
+		}
+	}
+
+	/**
+	 * Returns the side which has to play the next move.
+	 */
+	public int sideToMove() {
+		return (sideToMove);
+	}
+
+	/**
+	 * Returns the Zobrist key of this position.
+	 */
+	public long key() {
+		return (key);
+	}
+
+	/**
+	 * Returns the number of moves made on this position that haven't been
+	 * unmade yet.
+	 */
+	public int depth() {
+		return (depth);
+	}
+
+	/**
+	 * Removes all the pebbles and the history of moves from this position,
+	 * and gives the turn to the starter player.
+	 */
+	public void clear() {
+		pebbles[STARTER] = 0;
+		pebbles[OTHER] = 0;
+		sideToMove = STARTER;
+		key = 0;
+		depth = 0;
+	}
+
+	/**
+	 * Replaces the contents (and the history of moves) of this position with
+	 * the given pebble masks and side to move, e.g. to restore a snapshot.
+	 *
+	 * @param starterPebbles - points held by the starter player
+	 * @param otherPebbles - points held by the other player
+	 * @param sideToMove - <tt>STARTER</tt> or <tt>OTHER</tt>
+	 */
+	public void set(long starterPebbles, long otherPebbles, int sideToMove) {
+		if((starterPebbles & otherPebbles) != 0)
+			throw new IllegalArgumentException("Points held by both sides");
+
+		this.pebbles[STARTER] = starterPebbles;
+		this.pebbles[OTHER] = otherPebbles;
+		this.sideToMove = sideToMove;
+		this.key = keyOf(starterPebbles, otherPebbles, sideToMove);
+		this.depth = 0;
+	}
+
+	/**
+	 * Puts a pebble of the given side on the given empty point. This is
+	 * meant for setting up positions, and not for playing moves.
+	 *
+	 * @param side - <tt>STARTER</tt> or <tt>OTHER</tt>
+	 * @param cell - index of the empty point
+	 */
+	public void place(int side, int cell) {
+		if((occupied() & bit(cell)) != 0)
+			throw new IllegalStateException("Point " + cell + " is already held");
+
+		pebbles[side] |= bit(cell);
+		key ^= pebbleKeys[side][cell];
+	}
+
+	/**
+	 * Removes the pebble from the given point, if any. This is meant for
+	 * setting up positions, and not for playing moves.
+	 *
+	 * @param cell - index of the point
+	 */
+	public void remove(int cell) {
+		int side = sideAt(cell);
+
+		if(side != -1) {
+			pebbles[side] &= ~bit(cell);
+			key ^= pebbleKeys[side][cell];
+		}
+	}
+
+	/**
+	 * Sets the side which has to play the next move. This is meant for
+	 * setting up positions, and not for playing moves.
+	 *
+	 * @param side - <tt>STARTER</tt> or <tt>OTHER</tt>
+	 */
+	public void setSideToMove(int side) {
+		if(side != sideToMove) {
+			sideToMove = side;
+			key ^= sideKey;
+		}
+	}
+
+	/**
+	 * Returns the bit-mask of the points adjacent to the given point.
+	 *
+	 * @param cell - index of the point
+	 */
+	public static long neighboursOf(int cell) {
+		return (neighbours[cell]);
+	}
+
+	/**
+	 * Returns the index of the point holding the pebble captured by the
+	 * pebble at <tt>source</tt>, if it travels from the given entry of a
+	 * circuit in the given direction; or -1 if it captures nothing.
+	 *
+	 * @param source - index of the point holding the travelling pebble
+	 * @param ring - <tt>Circuits.INNER</tt> or <tt>Circuits.OUTER</tt>
+	 * @param entry - an entry of the circuit at which <tt>source</tt> lies
+	 * @param step - 1 to travel forward along the circuit, -1 backward
+	 */
+	public int captureTarget(int source, int ring, int entry, int step) {
+		int side = sideAt(source);
+
+		return (captureTarget(pebbles[side], pebbles[side ^ 1], source, ring, entry, step));
+	}
+
+	/**
+	 * Returns the capture target of the pebble at <tt>source</tt> like <tt>
+	 * captureTarget(int, int, int, int)</tt>, given the masks of the pebbles
+	 * of its side and of the opponent instead of a position.
+	 *
+	 * @param own - points held by the side of the travelling pebble
+	 * @param opponents - points held by the opponent
+	 * @param source - index of the point holding the travelling pebble
+	 * @param ring - <tt>Circuits.INNER</tt> or <tt>Circuits.OUTER</tt>
+	 * @param entry - an entry of the circuit at which <tt>source</tt> lies
+	 * @param step - 1 to travel forward along the circuit, -1 backward
+	 */
+	public static int captureTarget(long own, long opponents, int source, int ring,
+			int entry, int step) {
+		long blockers = (own | opponents) & ~bit(source);
+		boolean looped = false;
+
+		for(int travelled = 0; travelled < Circuits.RING_LENGTH; travelled++) {
+			looped |= Circuits.loopAfter(ring, (step > 0) ? entry : entry - 1);
+			entry += step;
+
+			int cell = Circuits.cellAt(ring, entry);
+
+			if((blockers & bit(cell)) != 0) {
+				return ((looped && (opponents & bit(cell)) != 0) ? cell : -1);
+			}
+		}
+
+		return (-1);
+	}
+
+	/**
+	 * Returns whether the pebble at <tt>source</tt> can capture the pebble
+	 * at <tt>target</tt> through the circuits, given the masks of the pebbles
+	 * of its side and of the opponent.
+	 */
+	private static boolean canCapture(long own, long opponents, int source, int target) {
+		for(int ring = Circuits.INNER; ring <= Circuits.OUTER; ring++) {
+			for(int entry : Circuits.occurrencesOf(ring, source)) {
+				if(captureTarget(own, opponents, source, ring, entry, 1) == target ||
+						captureTarget(own, opponents, source, ring, entry, -1) == target)
+					return (true);
+			}
+		}
+
+		return (false);
+	}
+
+	/**
+	 * Simulates the pebble at <tt>source</tt> travelling in the given
+	 * direction along its circuit line, and fills the given path with the
+	 * outcome, without modifying this position.
+	 *
+	 * @param source - index of the point holding the travelling pebble
+	 * @param direction - the direction to start travelling in
+	 * @param path - the path to fill
+	 * @return whether an opponent pebble would be captured
+	 */
+	public boolean simulateCapture(int source, ConnectorOrientation direction,
+			CapturePath path) {
+		int side = sideAt(source);
+
+		if(side == -1)
+			throw new IllegalArgumentException("No pebble at " + source);
+
+		return (path.trace(pebbles[side], pebbles[side ^ 1], source, direction, null));
+	}
+
+	/**
+	 * Appends the captures that can be made by the pebble at the given point
+	 * to the given array, skipping the ones already listed in it.
+	 */
+	private int addCaptures(int source, int[] moves, int count) {
+		int first = count;
+
+		for(int ring = Circuits.INNER; ring <= Circuits.OUTER; ring++) {
+			for(int entry : Circuits.occurrencesOf(ring, source)) {
+				for(int step = -1; step <= 1; step += 2) {
+					int target = captureTarget(source, ring, entry, step);
+
+					if(target == -1)
+						continue;
+
+					int move = Move.of(source, target);
+					boolean listed = false;
+
+					for(int moveIdx = first; moveIdx < count && !listed; moveIdx++) {
+						listed = (moves[moveIdx] == move);
+					}
+
+					if(!listed)
+						moves[count++] = move;
+				}
+			}
+		}
+
+		return (count);
+	}
+
+	/**
+	 * Fills the given array with the capturing moves of the side to move.
+	 *
+	 * @param moves - array of at least <tt>MAX_MOVES</tt> entries
+	 * @return the number of moves generated
+	 */
+	public int generateCaptures(int[] moves) {
+		int count = 0;
+
+		for(long mask = pebbles[sideToMove]; mask != 0; mask &= mask - 1) {
+			count = addCaptures(Long.numberOfTrailingZeros(mask), moves, count);
+		}
+
+		return (count);
+	}
+
+	/**
+	 * Fills the given array with all the legal moves of the side to move,
+	 * captures first.
+	 *
+	 * @param moves - array of at least <tt>MAX_MOVES</tt> entries
+	 * @return the number of moves generated
+	 */
+	public int generateMoves(int[] moves) {
+		int count = generateCaptures(moves);
+		long empty = ~occupied();
+
+		for(long mask = pebbles[sideToMove]; mask != 0; mask &= mask - 1) {
+			int source = Long.numberOfTrailingZeros(mask);
+
+			for(long targets = neighbours[source] & empty; targets != 0;
+					targets &= targets - 1) {
+				moves[count++] = Move.of(source, Long.numberOfTrailingZeros(targets));
+			}
+		}
+
+		return (count);
+	}
+
+	/**
+	 * Returns whether the given move is legal for the side to move.
+	 *
+	 * @param move - the encoded move
+	 */
+	public boolean isLegal(int move) {
+		return (isLegal(pebbles[sideToMove], pebbles[sideToMove ^ 1], move));
+	}
+
+	/**
+	 * Returns whether the given move is legal for the side holding the
+	 * points of <tt>own</tt>, without constructing a position.
+	 *
+	 * @param own - points held by the side to move
+	 * @param opponents - points held by the opponent
+	 * @param move - the encoded move
+	 */
+	public static boolean isLegal(long own, long opponents, int move) {
+		int source = Move.source(move), target = Move.target(move);
+
+		if(source >= Board.arealSize || target >= Board.arealSize ||
+				(own & bit(source)) == 0) {
+			return (false);
+		} else if(((own | opponents) & bit(target)) == 0) {
+			return ((neighbours[source] & bit(target)) != 0);
+		}
+
+		return ((opponents & bit(target)) != 0 &&
+				canCapture(own, opponents, source, target));
+	}
+
+	/**
+	 * Returns whether the side holding the points of <tt>own</tt> has any
+	 * legal move, without constructing a position.
+	 *
+	 * @param own - points held by the side to move
+	 * @param opponents - points held by the opponent
+	 */
+	public static boolean hasMoves(long own, long opponents) {
+		long empty = ~(own | opponents);
+
+		for(long mask = own; mask != 0; mask &= mask - 1) {
+			if((neighbours[Long.numberOfTrailingZeros(mask)] & empty) != 0)
+				return (true);
+		}
+
+		for(long mask = own; mask != 0; mask &= mask - 1) {
+			int source = Long.numberOfTrailingZeros(mask);
+
+			for(int ring = Circuits.INNER; ring <= Circuits.OUTER; ring++) {
+				for(int entry : Circuits.occurrencesOf(ring, source)) {
+					if(captureTarget(own, opponents, source, ring, entry, 1) != -1 ||
+							captureTarget(own, opponents, source, ring, entry, -1) != -1)
+						return (true);
+				}
+			}
+		}
+
+		return (false);
+	}
+
+	/**
+	 * Plays the given move for the side to move, capturing the opponent
+	 * pebble at the target (if any), and passes the turn. The move is not
+	 * validated; the source must hold a pebble of the side to move and the
+	 * target must not hold one.
+	 *
+	 * @param move - the encoded move
+	 * @return whether an opponent pebble was captured
+	 */
+	public boolean makeMove(int move) {
+		int source = Move.source(move), target = Move.target(move);
+		int side = sideToMove, opponent = side ^ 1;
+		boolean captured = (pebbles[opponent] & bit(target)) != 0;
+
+		if(captured) {
+			pebbles[opponent] ^= bit(target);
+			key ^= pebbleKeys[opponent][target];
+		}
+
+		pebbles[side] ^= bit(source) | bit(target);
+		key ^= pebbleKeys[side][source] ^ pebbleKeys[side][target] ^ sideKey;
+		sideToMove = opponent;
+
+		if(depth == captureStack.length)
+			captureStack = Arrays.copyOf(captureStack, depth * 2);
+
+		captureStack[(depth)++] = captured;
+
+		return (captured);
+	}
+
+	/**
+	 * Takes back the given move, which must be the last move made on this
+	 * position and not unmade yet.
+	 *
+	 * @param move - the encoded move
+	 */
+	public void unmakeMove(int move) {
+		int source = Move.source(move), target = Move.target(move);
+		int side = sideToMove ^ 1, opponent = sideToMove;
+
+		pebbles[side] ^= bit(source) | bit(target);
+		key ^= pebbleKeys[side][source] ^ pebbleKeys[side][target] ^ sideKey;
+		sideToMove = side;
+
+		if(captureStack[--(depth)]) {
+			pebbles[opponent] |= bit(target);
+			key ^= pebbleKeys[opponent][target];
+		}
+	}
+
+	/**
+	 * Passes the turn without moving, which is not a legal move but lets a
+	 * search test whether the side to move is in danger (null-move pruning).
+	 * It must be taken back with <tt>unmakeNullMove</tt> before any move
+	 * made earlier is unmade.
+	 */
+	public void makeNullMove() {
+		sideToMove ^= 1;
+		key ^= sideKey;
+	}
+
+	/**
+	 * Takes back a null move.
+	 */
+	public void unmakeNullMove() {
+		sideToMove ^= 1;
+		key ^= sideKey;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(!(other instanceof Position))
+			return (false);
+
+		Position position = (Position) other;
+
+		return (pebbles[STARTER] == position.pebbles[STARTER] &&
+				pebbles[OTHER] == position.pebbles[OTHER] &&
+				sideToMove == position.sideToMove);
+	}
+
+	@Override
+	public int hashCode() {
+		return (Long.hashCode(key));
+	}
+
+	/**
+	 * Returns this position in the notation of <tt>PositionNotation</tt>.
+	 */
+	@Override
+	public String toString() {
+		return (PositionNotation.toString(this));
+	}
+
+}
@@ -0,0 +1,166 @@
+package org.silcos.roundabouts;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Stack of the Zobrist keys of the positions of a game (or a line of a
+ * search), from its start to the current position, used to detect repeated
+ * positions and to count the plies played since the last capture.
+ *
+ * <p>
+ * A position can only repeat one reached an even number of plies earlier
+ * (with the same side to move), and never across a capture, which can't be
+ * undone; so a repetition check looks back two plies at a time, no further
+ * than the last capture. Each entry remembers the number of plies since the
+ * last irreversible move, and pushing and popping are O(1).
+ *
+ * @author Shukant Pal
+ * @see DrawRule
+ */
+public final class PositionHistory {
+
+	private long[] keys;
+	private int[] quietPlies;
+	private int size;
+
+	/**
+	 * Constructs an empty history.
+	 */
+	public PositionHistory() {
+		this.keys = new long[64];
+		this.quietPlies = new int[64];
+		this.size = 0;
+	}
+
+	/**
+	 * Constructs a copy of the given history.
+	 *
+	 * @param source - the history to copy
+	 */
+	public PositionHistory(PositionHistory source) {
+		this.keys = Arrays.copyOf(source.keys, source.keys.length);
+		this.quietPlies = Arrays.copyOf(source.quietPlies, source.quietPlies.length);
+		this.size = source.size;
+	}
+
+	/**
+	 * Replaces the contents of this history with those of the given one.
+	 *
+	 * @param source - the history to copy
+	 */
+	public void copyFrom(PositionHistory source) {
+		if(keys.length < source.size) {
+			keys = new long[source.keys.length];
+			quietPlies = new int[source.keys.length];
+		}
+
+		System.arraycopy(source.keys, 0, keys, 0, source.size);
+		System.arraycopy(source.quietPlies, 0, quietPlies, 0, source.size);
+		size = source.size;
+	}
+
+	/**
+	 * Removes all the positions, and pushes the given starting position.
+	 *
+	 * @param key - the key of the starting position
+	 */
+	public void start(long key) {
+		size = 0;
+		push(key, true);
+	}
+
+	/**
+	 * Pushes the position reached by a move.
+	 *
+	 * @param key - the key of the position
+	 * @param irreversible - whether the move can't be undone (a capture),
+	 * 				so that no earlier position can repeat
+	 */
+	public void push(long key, boolean irreversible) {
+		if(size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			quietPlies = Arrays.copyOf(quietPlies, size * 2);
+		}
+
+		keys[size] = key;
+		quietPlies[size] = (irreversible || size == 0) ? 0 : quietPlies[size - 1] + 1;
+		++(size);
+	}
+
+	/**
+	 * Pops the last position pushed.
+	 */
+	public void pop() {
+		if(size == 0)
+			throw new IllegalStateException("Empty history");
+
+		--(size);
+	}
+
+	/**
+	 * Returns the number of positions in this history.
+	 */
+	public int size() {
+		return (size);
+	}
+
+	/**
+	 * Returns the key of the position at the given index, 0 being the first.
+	 */
+	public long key(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("No position " + index);
+
+		return (keys[index]);
+	}
+
+	/**
+	 * Returns the key of the current (last) position.
+	 */
+	public long lastKey() {
+		return (key(size - 1));
+	}
+
+	/**
+	 * Returns the number of plies played since the last capture (or since
+	 * the start).
+	 */
+	public int quietPlies() {
+		return ((size == 0) ? 0 : quietPlies[size - 1]);
+	}
+
+	/**
+	 * Returns the number of times the current position occurred before.
+	 */
+	public int repetitions() {
+		return (repetitionsFrom(0));
+	}
+
+	/**
+	 * Returns whether the current position occurred before at or after the
+	 * given index, e.g. within the line searched from a root position.
+	 *
+	 * @param index - the index of the earliest position to compare
+	 */
+	public boolean repeatsSince(int index) {
+		return (repetitionsFrom(index) > 0);
+	}
+
+	private int repetitionsFrom(int index) {
+		if(size == 0)
+			return (0);
+
+		long key = keys[size - 1];
+		int earliest = Math.max(index, size - 1 - quietPlies[size - 1]);
+		int count = 0;
+
+		for(int earlier = size - 3; earlier >= earliest; earlier -= 2) {
+			if(keys[earlier] == key)
+				++(count);
+		}
+
+		return (count);
+	}
+
+}
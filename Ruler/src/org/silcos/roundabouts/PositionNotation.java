@@ -0,0 +1,169 @@
+package org.silcos.roundabouts;
+
+/**
+ * <p>
+ * Reads and writes positions in a compact, FEN-like text notation, so that
+ * tests, analysis requests, engine messages and bug reports can set up any
+ * position without replaying a game.
+ *
+ * <p>
+ * The notation lists the six rows from row 0 to row 5, separated by <tt>'/'
+ * </tt>. Within a row, points are listed from column 0 to column 5: <tt>'s'
+ * </tt> for a pebble of the starter player, <tt>'o'</tt> for a pebble of the
+ * other player and a digit from 1 to 6 for that many empty points. The rows
+ * are followed by a space and the side to move (<tt>'s'</tt> or <tt>'o'</tt>).
+ * The initial position (see <tt>Game.placeAllPebbles</tt>) is written as
+ * <tt>INITIAL</tt>.
+ *
+ * <p>
+ * Parsing reads the characters in place and writing appends to a caller's
+ * <tt>StringBuilder</tt>; neither creates intermediate strings.
+ *
+ * @author Shukant Pal
+ */
+public final class PositionNotation {
+
+	public static final String INITIAL = "ssssss/ssssss/6/6/oooooo/oooooo s";
+
+	private static final char STARTER_CHAR = 's';
+	private static final char OTHER_CHAR = 'o';
+
+	private PositionNotation() {
+	}
+
+	private static IllegalArgumentException malformed(CharSequence text,
+			int index, String reason) {
+		return (new IllegalArgumentException("Malformed position \"" + text
+				+ "\" at index " + index + ": " + reason));
+	}
+
+	/**
+	 * Parses the given text into a new position.
+	 *
+	 * @param text - position in the notation
+	 * @return the parsed position
+	 * @throws IllegalArgumentException - if the text is malformed
+	 */
+	public static Position parse(CharSequence text) {
+		Position position = new Position();
+
+		parse(text, position);
+
+		return (position);
+	}
+
+	/**
+	 * Parses the given text into the given position, replacing its previous
+	 * contents (and history of moves).
+	 *
+	 * @param text - position in the notation
+	 * @param position - the position to fill
+	 * @throws IllegalArgumentException - if the text is malformed
+	 */
+	public static void parse(CharSequence text, Position position) {
+		int length = text.length();
+		int index = 0;
+
+		position.clear();
+
+		for(int row = 0; row < Board.linearSize; row++) {
+			if(row > 0) {
+				if(index >= length || text.charAt(index) != '/')
+					throw malformed(text, index, "expected '/'");
+
+				++(index);
+			}
+
+			int column = 0;
+
+			while(column < Board.linearSize) {
+				if(index >= length)
+					throw malformed(text, index, "row " + row + " is incomplete");
+
+				char c = text.charAt(index++);
+
+				if(c == STARTER_CHAR) {
+					position.place(Position.STARTER, Move.cellOf(row, column++));
+				} else if(c == OTHER_CHAR) {
+					position.place(Position.OTHER, Move.cellOf(row, column++));
+				} else if(c >= '1' && c <= '6' && column + (c - '0') <= Board.linearSize) {
+					column += c - '0';
+				} else {
+					throw malformed(text, index - 1, "unexpected '" + c + "'");
+				}
+			}
+		}
+
+		if(index + 1 >= length || text.charAt(index) != ' ')
+			throw malformed(text, index, "expected side to move");
+
+		char side = text.charAt(index + 1);
+
+		if(side == STARTER_CHAR) {
+			position.setSideToMove(Position.STARTER);
+		} else if(side == OTHER_CHAR) {
+			position.setSideToMove(Position.OTHER);
+		} else {
+			throw malformed(text, index + 1, "unexpected '" + side + "'");
+		}
+
+		for(index += 2; index < length; index++) {
+			if(!Character.isWhitespace(text.charAt(index)))
+				throw malformed(text, index, "trailing characters");
+		}
+
+		for(int checkedSide = Position.STARTER; checkedSide <= Position.OTHER;
+				checkedSide++) {
+			if(position.pebbleCount(checkedSide) > Player.pebbleSetSize())
+				throw malformed(text, length, "too many pebbles");
+		}
+	}
+
+	/**
+	 * Appends the given position, in the notation, to the given builder.
+	 *
+	 * @param position - the position to write
+	 * @param out - the builder to append to
+	 * @return <tt>out</tt>
+	 */
+	public static StringBuilder write(Position position, StringBuilder out) {
+		for(int row = 0; row < Board.linearSize; row++) {
+			int empty = 0;
+
+			if(row > 0)
+				out.append('/');
+
+			for(int column = 0; column < Board.linearSize; column++) {
+				int side = position.sideAt(Move.cellOf(row, column));
+
+				if(side == -1) {
+					++(empty);
+					continue;
+				}
+
+				if(empty > 0) {
+					out.append((char) ('0' + empty));
+					empty = 0;
+				}
+
+				out.append((side == Position.STARTER) ? STARTER_CHAR : OTHER_CHAR);
+			}
+
+			if(empty > 0)
+				out.append((char) ('0' + empty));
+		}
+
+		return (out.append(' ').append((position.sideToMove() == Position.STARTER)
+				? STARTER_CHAR : OTHER_CHAR));
+	}
+
+	/**
+	 * Returns the given position in the notation.
+	 *
+	 * @param position - the position to write
+	 */
+	public static String toString(Position position) {
+		return (write(position, new StringBuilder(48)).toString());
+	}
+
+}
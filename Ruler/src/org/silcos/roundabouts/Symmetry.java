@@ -0,0 +1,246 @@
+package org.silcos.roundabouts;
+
+/**
+ * <p>
+ * Maps positions to a canonical representative under the symmetries of
+ * the board, so that caches and tables keyed by positions can store one
+ * entry for all the positions that are equivalent under the rules.
+ *
+ * <p>
+ * The candidates are the eight rotations and reflections of the 6x6 grid.
+ * Only those mapping every connector linked by <tt>Board</tt> onto a
+ * connector are kept (the loops define which moves are legal), which is
+ * checked against a filled board when this class is loaded. Symmetries are
+ * identified by their index, from 0 (the identity) to <tt>count() - 1</tt>.
+ *
+ * <p>
+ * The canonical form of a position is its image with the smallest starter
+ * pebble mask (and then the smallest other pebble mask); the side to move
+ * is unchanged. Masks are mapped a row at a time using lookup tables.
+ *
+ * @author Shukant Pal
+ */
+public final class Symmetry {
+
+	private static final int last = Board.linearSize - 1;
+
+	/**
+	 * Maps (row, column) to the image row and column, for each candidate.
+	 */
+	private static final int[][] candidates = {
+			{ 1, 0, 0, 0, 1, 0 },		// identity
+			{ 0, 1, 0, -1, 0, last },	// rotation by 90 degrees
+			{ -1, 0, last, 0, -1, last },	// rotation by 180 degrees
+			{ 0, -1, last, 1, 0, 0 },	// rotation by 270 degrees
+			{ 1, 0, 0, 0, -1, last },	// reflection across the vertical axis
+			{ -1, 0, last, 0, 1, 0 },	// reflection across the horizontal axis
+			{ 0, 1, 0, 1, 0, 0 },		// reflection across the main diagonal
+			{ 0, -1, last, -1, 0, last }	// reflection across the anti-diagonal
+	};
+
+	private static final int[][] cellMaps;
+	private static final int[] inverses;
+	private static final long[][][] rowMaps;
+
+	static {
+		Board board = Board.filledInstance();
+		int[][] preserving = new int[candidates.length][];
+		int count = 0;
+
+		for(int[] candidate : candidates) {
+			int[] cellMap = new int[Board.arealSize];
+
+			for(int cell = 0; cell < Board.arealSize; cell++) {
+				int row = Move.rowOf(cell), column = Move.columnOf(cell);
+
+				cellMap[cell] = Move.cellOf(
+						candidate[0] * row + candidate[1] * column + candidate[2],
+						candidate[3] * row + candidate[4] * column + candidate[5]);
+			}
+
+			if(preservesConnectors(board, cellMap))
+				preserving[count++] = cellMap;
+		}
+
+		cellMaps = new int[count][];
+		inverses = new int[count];
+		rowMaps = new long[count][Board.linearSize][1 << Board.linearSize];
+
+		System.arraycopy(preserving, 0, cellMaps, 0, count);
+
+		for(int symmetry = 0; symmetry < count; symmetry++) {
+			for(int other = 0; other < count; other++) {
+				if(cellMaps[other][cellMaps[symmetry][1]] == 1 &&
+						cellMaps[other][cellMaps[symmetry][Board.linearSize]] ==
+						Board.linearSize) {
+					inverses[symmetry] = other;
+				}
+			}
+
+			for(int row = 0; row < Board.linearSize; row++) {
+				for(int bits = 0; bits < (1 << Board.linearSize); bits++) {
+					long image = 0;
+
+					for(int column = 0; column < Board.linearSize; column++) {
+						if((bits & (1 << column)) != 0)
+							image |= 1L << cellMaps[symmetry][Move.cellOf(row, column)];
+					}
+
+					rowMaps[symmetry][row][bits] = image;
+				}
+			}
+		}
+	}
+
+	private Symmetry() {
+	}
+
+	/**
+	 * Returns whether the given mapping of points takes the two ends of
+	 * each connector of the board to the two ends of some connector.
+	 */
+	private static boolean preservesConnectors(Board board, int[] cellMap) {
+		for(int corner = 0; corner < 4; corner++) {
+			for(Connector connector : new Connector[] {
+					board.innerCircuit(corner), board.outerCircuit(corner) }) {
+				int end0 = cellMap[Move.cellOf(connector.row0(), connector.column0())];
+				int end1 = cellMap[Move.cellOf(connector.row1(), connector.column1())];
+				Connector image = board.externalConnectorAt(
+						Move.rowOf(end0), Move.columnOf(end0));
+
+				if(image == null)
+					return (false);
+
+				int[] otherEnd = image.otherEnd(Move.rowOf(end0), Move.columnOf(end0));
+
+				if(Move.cellOf(otherEnd[0], otherEnd[1]) != end1)
+					return (false);
+			}
+		}
+
+		return (true);
+	}
+
+	/**
+	 * Returns the number of symmetries that preserve the connectors.
+	 */
+	public static int count() {
+		return (cellMaps.length);
+	}
+
+	/**
+	 * Returns the index of the symmetry that undoes the given one.
+	 *
+	 * @param symmetry - index of a symmetry
+	 */
+	public static int inverse(int symmetry) {
+		return (inverses[symmetry]);
+	}
+
+	/**
+	 * Returns the image of the point with the given index.
+	 *
+	 * @param symmetry - index of a symmetry
+	 * @param cell - index of the point
+	 */
+	public static int mapCell(int symmetry, int cell) {
+		return (cellMaps[symmetry][cell]);
+	}
+
+	/**
+	 * Returns the image of the given bit-mask of points.
+	 *
+	 * @param symmetry - index of a symmetry
+	 * @param mask - bit-mask of points
+	 */
+	public static long mapMask(int symmetry, long mask) {
+		long[][] rows = rowMaps[symmetry];
+		long image = 0;
+
+		for(int row = 0; row < Board.linearSize; row++) {
+			image |= rows[row][(int) (mask >>> (row * Board.linearSize))
+					& ((1 << Board.linearSize) - 1)];
+		}
+
+		return (image);
+	}
+
+	/**
+	 * Returns the image of the given move.
+	 *
+	 * @param symmetry - index of a symmetry
+	 * @param move - the encoded move
+	 */
+	public static int mapMove(int symmetry, int move) {
+		if(move == Move.NONE)
+			return (Move.NONE);
+
+		return (Move.of(cellMaps[symmetry][Move.source(move)],
+				cellMaps[symmetry][Move.target(move)]));
+	}
+
+	/**
+	 * Returns the index of the symmetry that maps the given position to its
+	 * canonical form (the smallest such index, if several do).
+	 *
+	 * @param position - the position to canonicalize
+	 */
+	public static int canonicalSymmetry(Position position) {
+		long starter = position.pebbles(Position.STARTER);
+		long other = position.pebbles(Position.OTHER);
+		long bestStarter = starter, bestOther = other;
+		int best = 0;
+
+		for(int symmetry = 1; symmetry < cellMaps.length; symmetry++) {
+			long imageStarter = mapMask(symmetry, starter);
+
+			if(Long.compareUnsigned(imageStarter, bestStarter) > 0)
+				continue;
+
+			long imageOther = mapMask(symmetry, other);
+
+			if(imageStarter != bestStarter ||
+					Long.compareUnsigned(imageOther, bestOther) < 0) {
+				bestStarter = imageStarter;
+				bestOther = imageOther;
+				best = symmetry;
+			}
+		}
+
+		return (best);
+	}
+
+	/**
+	 * Returns the Zobrist key of the canonical form of the given position.
+	 * Equivalent positions have the same canonical key.
+	 *
+	 * @param position - the position to canonicalize
+	 */
+	public static long canonicalKey(Position position) {
+		int symmetry = canonicalSymmetry(position);
+
+		if(symmetry == 0)
+			return (position.key());
+
+		return (Position.keyOf(mapMask(symmetry, position.pebbles(Position.STARTER)),
+				mapMask(symmetry, position.pebbles(Position.OTHER)),
+				position.sideToMove()));
+	}
+
+	/**
+	 * Returns a new position holding the canonical form of the given one.
+	 *
+	 * @param position - the position to canonicalize
+	 */
+	public static Position canonical(Position position) {
+		int symmetry = canonicalSymmetry(position);
+		Position canonical = new Position();
+
+		canonical.set(mapMask(symmetry, position.pebbles(Position.STARTER)),
+				mapMask(symmetry, position.pebbles(Position.OTHER)),
+				position.sideToMove());
+
+		return (canonical);
+	}
+
+}
@@ -0,0 +1,148 @@
+package org.silcos.roundabouts.analysis;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.silcos.roundabouts.Position;
+import org.silcos.roundabouts.archive.GameArchive;
+
+/**
+ * <p>
+ * Computes win/draw/loss rates, average game lengths and capture counts
+ * over all the games in a <tt>GameArchive</tt>, grouped by their opening
+ * sequence. The archive is scanned with a parallel stream over its mapped
+ * segments (see <tt>GameArchive.games</tt>), and each worker aggregates
+ * into its own table, so that no locking is needed.
+ *
+ * <p>
+ * Every game is replayed on a <tt>Position</tt>, which applies moves the
+ * same way <tt>Board.movePebble</tt> does, to count its captures.
+ *
+ * @author Shukant Pal
+ */
+public final class ArchiveStatistics {
+
+	/**
+	 * Longest opening sequence games can be grouped by.
+	 */
+	public static final int MAX_OPENING_LENGTH = 5;
+
+	private ArchiveStatistics() {
+	}
+
+	/**
+	 * Returns the statistics of the games in the archive grouped by their
+	 * first move, most played first.
+	 *
+	 * @param archive - the archive to scan
+	 */
+	public static List<OpeningStatistics> byFirstMove(GameArchive archive) {
+		return (byOpening(archive, 1));
+	}
+
+	/**
+	 * Returns the statistics of the games in the archive grouped by their
+	 * first <tt>openingLength</tt> moves, most played first. Games shorter
+	 * than that are grouped by all of their moves.
+	 *
+	 * @param archive - the archive to scan
+	 * @param openingLength - number of moves forming an opening, at most
+	 * 			<tt>MAX_OPENING_LENGTH</tt>
+	 */
+	public static List<OpeningStatistics> byOpening(GameArchive archive,
+			int openingLength) {
+		if(openingLength < 0 || openingLength > MAX_OPENING_LENGTH)
+			throw new IllegalArgumentException("Opening length out of range: "
+					+ openingLength);
+
+		Tally tally = archive.games().parallel().collect(
+				() -> new Tally(archive, openingLength), Tally::add, Tally::merge);
+		List<OpeningStatistics> openings =
+				new ArrayList<OpeningStatistics>(tally.openings.values());
+
+		openings.sort(Comparator.comparingLong(OpeningStatistics::games).reversed());
+
+		return (openings);
+	}
+
+	/**
+	 * Returns the statistics of all the games in the archive.
+	 *
+	 * @param archive - the archive to scan
+	 */
+	public static OpeningStatistics overall(GameArchive archive) {
+		List<OpeningStatistics> all = byOpening(archive, 0);
+
+		return (all.isEmpty() ? new OpeningStatistics(new int[0]) : all.get(0));
+	}
+
+	/**
+	 * Per-worker aggregation state. Openings are keyed by their length
+	 * followed by their moves, 12 bits each.
+	 */
+	private static final class Tally {
+
+		private final GameArchive archive;
+		private final int openingLength;
+		private final Position position;
+		private final HashMap<Long, OpeningStatistics> openings;
+
+		Tally(GameArchive archive, int openingLength) {
+			this.archive = archive;
+			this.openingLength = openingLength;
+			this.position = Position.initial();
+			this.openings = new HashMap<Long, OpeningStatistics>();
+		}
+
+		void add(long gameId) {
+			int plyCount = archive.plyCount(gameId);
+			int length = Math.min(openingLength, plyCount);
+			long key = length;
+			int captures = 0;
+
+			for(int ply = 0; ply < plyCount; ply++) {
+				int move = archive.moveAt(gameId, ply);
+
+				if(ply < length)
+					key = (key << 12) | move;
+
+				if(position.makeMove(move))
+					++(captures);
+			}
+
+			for(int ply = plyCount - 1; ply >= 0; ply--) {
+				position.unmakeMove(archive.moveAt(gameId, ply));
+			}
+
+			OpeningStatistics statistics = openings.get(key);
+
+			if(statistics == null) {
+				int[] opening = new int[length];
+
+				for(int ply = 0; ply < length; ply++) {
+					opening[ply] = archive.moveAt(gameId, ply);
+				}
+
+				statistics = new OpeningStatistics(opening);
+				openings.put(key, statistics);
+			}
+
+			statistics.add(archive.result(gameId), plyCount, captures);
+		}
+
+		void merge(Tally other) {
+			for(Map.Entry<Long, OpeningStatistics> entry : other.openings.entrySet()) {
+				OpeningStatistics statistics = openings.putIfAbsent(
+						entry.getKey(), entry.getValue());
+
+				if(statistics != null)
+					statistics.merge(entry.getValue());
+			}
+		}
+
+	}
+
+}
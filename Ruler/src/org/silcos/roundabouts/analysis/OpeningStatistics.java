@@ -0,0 +1,133 @@
+package org.silcos.roundabouts.analysis;
+
+import org.silcos.roundabouts.GameResult;
+
+/**
+ * Aggregated outcomes of the archived games that began with a given
+ * opening sequence (see <tt>ArchiveStatistics</tt>). Rates are given as
+ * fractions of <tt>games()</tt>, and are 0 if no games were counted.
+ *
+ * @author Shukant Pal
+ */
+public final class OpeningStatistics {
+
+	private final int[] opening;
+
+	private long games;
+	private long starterWins;
+	private long otherWins;
+	private long draws;
+	private long plies;
+	private long captures;
+
+	OpeningStatistics(int[] opening) {
+		this.opening = opening;
+	}
+
+	/**
+	 * Counts one more game with the given outcome, length and number of
+	 * captures.
+	 */
+	void add(GameResult result, int plyCount, int captureCount) {
+		++(games);
+
+		switch(result) {
+		case STARTER_WIN:
+			++(starterWins);
+			break;
+		case OTHER_WIN:
+			++(otherWins);
+			break;
+		case DRAW:
+			++(draws);
+			break;
+		default:
+			break;
+		}
+
+		plies += plyCount;
+		captures += captureCount;
+	}
+
+	/**
+	 * Adds the counts of the given statistics (for the same opening) to
+	 * these.
+	 */
+	void merge(OpeningStatistics other) {
+		games += other.games;
+		starterWins += other.starterWins;
+		otherWins += other.otherWins;
+		draws += other.draws;
+		plies += other.plies;
+		captures += other.captures;
+	}
+
+	private double rate(long count) {
+		return ((games == 0) ? 0 : (double) count / games);
+	}
+
+	/**
+	 * Returns a copy of the opening sequence (encoded moves) these
+	 * statistics are for.
+	 */
+	public int[] opening() {
+		return (opening.clone());
+	}
+
+	/**
+	 * Returns the number of games counted.
+	 */
+	public long games() {
+		return (games);
+	}
+
+	/**
+	 * Returns the fraction of the games won by the starter player.
+	 */
+	public double starterWinRate() {
+		return (rate(starterWins));
+	}
+
+	/**
+	 * Returns the fraction of the games won by the other player.
+	 */
+	public double otherWinRate() {
+		return (rate(otherWins));
+	}
+
+	/**
+	 * Returns the fraction of the games that were drawn.
+	 */
+	public double drawRate() {
+		return (rate(draws));
+	}
+
+	/**
+	 * Returns the fraction of the games that weren't finished.
+	 */
+	public double unfinishedRate() {
+		return (rate(games - starterWins - otherWins - draws));
+	}
+
+	/**
+	 * Returns the average number of moves played in the games.
+	 */
+	public double averageLength() {
+		return (rate(plies));
+	}
+
+	/**
+	 * Returns the total number of captures made in the games.
+	 */
+	public long captures() {
+		return (captures);
+	}
+
+	/**
+	 * Returns the average number of captures made per game.
+	 */
+	public double averageCaptures() {
+		return (rate(captures));
+	}
+
+}
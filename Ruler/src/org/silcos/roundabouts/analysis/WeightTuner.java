@@ -0,0 +1,375 @@
+package org.silcos.roundabouts.analysis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.silcos.roundabouts.GameResult;
+import org.silcos.roundabouts.Position;
+import org.silcos.roundabouts.archive.GameArchive;
+import org.silcos.roundabouts.batch.BatchEvaluator;
+import org.silcos.roundabouts.engine.Evaluator;
+
+/**
+ * <p>
+ * Tunes the weights of <tt>Evaluator</tt> against the outcomes of recorded
+ * games: the probability that the side to move wins a position is modelled
+ * as the logistic function of its score over <tt>SCALE</tt>, and the
+ * weights are moved down the gradient of the logistic (cross-entropy) loss
+ * of that prediction against the outcome, a draw counting as half a win.
+ *
+ * <p>
+ * Only quiet positions are used - those in which the side to move has no
+ * capture - since the score of a position with a capture pending says little
+ * about it. They are extracted once from a <tt>GameArchive</tt> into a file
+ * of fixed-size records, which the tuner memory-maps; as the score is linear
+ * in the weights, a record holds the features of the position (see <tt>
+ * Evaluator.features</tt>) rather than the position itself, so the tuner
+ * never evaluates a position again. Each pass over the records is split
+ * into blocks summed by a parallel stream.
+ *
+ * <p>
+ * The file begins with a <tt>HEADER_SIZE</tt>-byte header - <tt>[int
+ * magic][int featureCount][long positionCount]</tt> - followed by the
+ * records, <tt>[byte feature]...[byte outcome][byte unused]</tt> each, with
+ * the outcome 2, 1 or 0 for a win, draw or loss of the side to move.
+ *
+ * @author Shukant Pal
+ */
+public final class WeightTuner implements Closeable {
+
+	/**
+	 * Score at which the side to move is predicted to win with odds of
+	 * <tt>e</tt> to 1.
+	 */
+	public static final double SCALE = 100;
+
+	public static final int DEFAULT_ITERATIONS = 500;
+	public static final double DEFAULT_LEARNING_RATE = 0.5;
+
+	static final int RECORD_SIZE = 8;
+
+	private static final int MAGIC = 0x50524D57;
+	private static final int HEADER_SIZE = 16;
+	private static final int OUTCOME = Evaluator.FEATURE_COUNT;
+
+	/**
+	 * Records in each mapped segment of the file, and in each block summed
+	 * by a worker.
+	 */
+	private static final int SEGMENT_RECORDS = 1 << 26;
+	private static final int BLOCK_RECORDS = 1 << 16;
+
+	private final FileChannel channel;
+	private final long positionCount;
+	private MappedByteBuffer[] segments;
+
+	private WeightTuner(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+		this.channel = channel;
+		channel.read(header, 0);
+
+		if(header.getInt(0) != MAGIC || header.getInt(4) != Evaluator.FEATURE_COUNT)
+			throw new IOException("Not a tuning position file");
+
+		this.positionCount = header.getLong(8);
+		this.segments = new MappedByteBuffer[(int) ((positionCount + SEGMENT_RECORDS - 1)
+				/ SEGMENT_RECORDS)];
+
+		for(int segment = 0; segment < segments.length; segment++) {
+			long first = (long) segment * SEGMENT_RECORDS;
+
+			segments[segment] = channel.map(MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE,
+					Math.min(SEGMENT_RECORDS, positionCount - first) * RECORD_SIZE);
+		}
+	}
+
+	/**
+	 * Opens a file of positions extracted before.
+	 *
+	 * @param path - the file
+	 * @throws IOException - if the file cannot be mapped, or is not a
+	 * 			position file
+	 */
+	public static WeightTuner open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		try {
+			return (new WeightTuner(channel));
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Extracts the quiet positions of the finished games of the given
+	 * archive into the given file (replacing it), and opens it. The games
+	 * are replayed in order and the file is written sequentially.
+	 *
+	 * @param archive - the games to learn from
+	 * @param path - the file to write
+	 * @param openingPlies - the number of plies at the start of each game to
+	 * 				skip, since openings are shared by many games
+	 * @throws IOException - if the file cannot be written
+	 */
+	public static WeightTuner extract(GameArchive archive, Path path, int openingPlies)
+			throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+			Position position = new Position();
+			int[] moves = new int[Position.MAX_MOVES];
+			int[] features = new int[Evaluator.FEATURE_COUNT];
+			Position initial = Position.initial();
+			long count = 0;
+
+			buffer.putInt(MAGIC).putInt(Evaluator.FEATURE_COUNT).putLong(0);
+
+			for(long gameId : (Iterable<Long>) archive.games()::iterator) {
+				GameResult result = archive.result(gameId);
+
+				if(result == GameResult.UNFINISHED)
+					continue;
+
+				position.set(initial.pebbles(Position.STARTER), initial.pebbles(Position.OTHER),
+						initial.sideToMove());
+
+				for(int ply = 0, plyCount = archive.plyCount(gameId); ply < plyCount; ply++) {
+					if(ply >= openingPlies && position.generateCaptures(moves) == 0) {
+						int side = position.sideToMove();
+
+						BatchEvaluator.features(position.pebbles(side), position.pebbles(side ^ 1),
+								features);
+
+						for(int feature : features) {
+							buffer.put((byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE,
+									feature)));
+						}
+
+						buffer.put((byte) outcome(result, side)).put((byte) 0);
+						++(count);
+
+						if(buffer.remaining() < RECORD_SIZE)
+							flush(channel, buffer);
+					}
+
+					position.makeMove(archive.moveAt(gameId, ply));
+				}
+			}
+
+			flush(channel, buffer);
+			buffer.putLong(count).flip();
+			channel.write(buffer, 8);
+		}
+
+		return (open(path));
+	}
+
+	/**
+	 * Returns the outcome of the game for the given side, as written in the
+	 * records.
+	 */
+	private static int outcome(GameResult result, int side) {
+		switch(result) {
+		case STARTER_WIN:
+			return ((side == Position.STARTER) ? 2 : 0);
+		case OTHER_WIN:
+			return ((side == Position.OTHER) ? 2 : 0);
+		default:
+			return (1);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+
+		buffer.clear();
+	}
+
+	/**
+	 * Returns the number of positions in the file.
+	 */
+	public long positionCount() {
+		return (positionCount);
+	}
+
+	/**
+	 * Returns the mean loss of the given weights over all the positions.
+	 *
+	 * @param weights - the weight of each feature
+	 */
+	public double loss(double[] weights) {
+		return (gradient(weights)[Evaluator.FEATURE_COUNT]);
+	}
+
+	/**
+	 * Returns the mean gradient of the loss over all the positions, with the
+	 * mean loss after it (at <tt>Evaluator.FEATURE_COUNT</tt>).
+	 *
+	 * @param weights - the weight of each feature
+	 */
+	public double[] gradient(double[] weights) {
+		if(positionCount == 0)
+			throw new IllegalStateException("No positions to tune on");
+
+		int blocksPerSegment = SEGMENT_RECORDS / BLOCK_RECORDS;
+		int blocks = (int) ((positionCount + BLOCK_RECORDS - 1) / BLOCK_RECORDS);
+		double[] sum = IntStream.range(0, blocks).parallel()
+				.mapToObj((int block) -> blockGradient(weights,
+						segments[block / blocksPerSegment],
+						(block % blocksPerSegment) * BLOCK_RECORDS))
+				.reduce(new double[Evaluator.FEATURE_COUNT + 1], WeightTuner::add);
+
+		for(int index = 0; index < sum.length; index++) {
+			sum[index] /= positionCount;
+		}
+
+		return (sum);
+	}
+
+	/**
+	 * Sums the gradient and loss over the records of a block, which starts
+	 * at the given record of the given segment.
+	 */
+	private static double[] blockGradient(double[] weights, ByteBuffer segment, int first) {
+		double[] sum = new double[Evaluator.FEATURE_COUNT + 1];
+		int end = Math.min(first + BLOCK_RECORDS, segment.capacity() / RECORD_SIZE);
+
+		for(int record = first; record < end; record++) {
+			int offset = record * RECORD_SIZE;
+			double score = 0;
+
+			for(int feature = 0; feature < Evaluator.FEATURE_COUNT; feature++) {
+				score += weights[feature] * segment.get(offset + feature);
+			}
+
+			double target = segment.get(offset + OUTCOME) * 0.5;
+			double logit = score / SCALE;
+			double predicted = 1 / (1 + Math.exp(-logit));
+			double error = (predicted - target) / SCALE;
+
+			for(int feature = 0; feature < Evaluator.FEATURE_COUNT; feature++) {
+				sum[feature] += error * segment.get(offset + feature);
+			}
+
+			// -(t ln p + (1 - t) ln (1 - p)), written to stay finite
+			sum[Evaluator.FEATURE_COUNT] += Math.max(logit, 0) - logit * target
+					+ Math.log1p(Math.exp(-Math.abs(logit)));
+		}
+
+		return (sum);
+	}
+
+	private static double[] add(double[] sum, double[] other) {
+		double[] total = sum.clone();
+
+		for(int index = 0; index < total.length; index++) {
+			total[index] += other[index];
+		}
+
+		return (total);
+	}
+
+	/**
+	 * Tunes the given weights with the default number of iterations and
+	 * learning rate.
+	 *
+	 * @param initial - the weights to start from, by feature
+	 * @return the tuned weights, rounded
+	 */
+	public int[] tune(int[] initial) {
+		return (tune(initial, DEFAULT_ITERATIONS, DEFAULT_LEARNING_RATE));
+	}
+
+	/**
+	 * Tunes the given weights by gradient descent with adaptive steps (Adam),
+	 * one pass over all the positions per iteration.
+	 *
+	 * @param initial - the weights to start from, by feature
+	 * @param iterations - the number of passes
+	 * @param learningRate - the greatest change of a weight per iteration
+	 * @return the tuned weights, rounded
+	 */
+	public int[] tune(int[] initial, int iterations, double learningRate) {
+		if(initial.length != Evaluator.FEATURE_COUNT)
+			throw new IllegalArgumentException("Expected " + Evaluator.FEATURE_COUNT + " weights");
+
+		double[] weights = Arrays.stream(initial).asDoubleStream().toArray();
+		double[] mean = new double[weights.length], variance = new double[weights.length];
+		double decay1 = 0.9, decay2 = 0.999;
+
+		for(int iteration = 1; iteration <= iterations; iteration++) {
+			double[] gradient = gradient(weights);
+
+			for(int feature = 0; feature < weights.length; feature++) {
+				mean[feature] = decay1 * mean[feature] + (1 - decay1) * gradient[feature];
+				variance[feature] = decay2 * variance[feature]
+						+ (1 - decay2) * gradient[feature] * gradient[feature];
+
+				double step = (mean[feature] / (1 - Math.pow(decay1, iteration)))
+						/ (Math.sqrt(variance[feature] / (1 - Math.pow(decay2, iteration))) + 1e-12);
+
+				weights[feature] -= learningRate * step;
+			}
+		}
+
+		int[] tuned = new int[weights.length];
+
+		for(int feature = 0; feature < weights.length; feature++) {
+			tuned[feature] = (int) Math.round(weights[feature]);
+		}
+
+		return (tuned);
+	}
+
+	/**
+	 * Drops the mappings of the file, which are released by the JVM once
+	 * unreachable, and closes it.
+	 */
+	@Override
+	public void close() throws IOException {
+		segments = new MappedByteBuffer[0];
+		channel.close();
+	}
+
+	/**
+	 * Extracts the positions of the archive in the directory <tt>args[0]
+	 * </tt> into the file <tt>args[1]</tt>, tunes the default weights on them
+	 * and prints the result.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.err.println("Usage: WeightTuner <archive> <positions> [iterations]");
+			System.exit(2);
+		}
+
+		try(GameArchive archive = GameArchive.open(Paths.get(args[0]));
+				WeightTuner tuner = extract(archive, Paths.get(args[1]), 8)) {
+			int iterations = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+			int[] weights = tuner.tune(Evaluator.defaultWeights(), iterations,
+					DEFAULT_LEARNING_RATE);
+
+			System.out.println(tuner.positionCount() + " positions");
+			System.out.println("Loss before: " + tuner.loss(Arrays.stream(Evaluator
+					.defaultWeights()).asDoubleStream().toArray()));
+			System.out.println("Loss after: " + tuner.loss(Arrays.stream(weights)
+					.asDoubleStream().toArray()));
+			System.out.println("Weights: " + Arrays.toString(weights));
+		}
+	}
+
+}
@@ -0,0 +1,8 @@
+/**
+ * Reports computed over archived Permainan games.
+ */
+/**
+ * @author Shukant Pal
+ *
+ */
+package org.silcos.roundabouts.analysis;
@@ -0,0 +1,234 @@
+package org.silcos.roundabouts.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import org.silcos.roundabouts.GameResult;
+import org.silcos.roundabouts.Position;
+
+/**
+ * <p>
+ * Stores any number of <tt>GameRecord</tt>s in large memory-mapped segment
+ * files inside a directory, along with a <tt>PositionIndex</tt> of every
+ * position reached in them. Games are only ever appended, and each game is
+ * identified by the address at which it is stored (its "game id").
+ *
+ * <p>
+ * A game is laid out as <tt>[short plyCount][byte result][byte unused]
+ * </tt> followed by one <tt>short</tt> for each move (see <tt>Move</tt>).
+ * The accessors read games straight from the mapped segments, so that
+ * queries over tens of millions of games don't load them into the heap.
+ *
+ * <p>
+ * All positions after the first move are indexed; the initial position is
+ * shared by every game and is not indexed. Appending is synchronized, and
+ * queries may run concurrently with it, but don't see the games still being
+ * appended: a game is published once it is written, and only then indexed,
+ * so that the index never refers to a game that isn't stored (even after a
+ * crash, which at worst leaves the last game partly indexed).
+ *
+ * @author Shukant Pal
+ */
+public final class GameArchive implements Closeable {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+	public static final int DEFAULT_BUCKET_BITS = 22;
+
+	static final int GAME_HEADER_SIZE = 4;
+
+	private final MappedSegments games;
+	private final PositionIndex index;
+
+	private GameArchive(Path directory, int segmentSize, int bucketBits)
+			throws IOException {
+		this.games = new MappedSegments(directory, "games", segmentSize);
+		this.index = new PositionIndex(directory, segmentSize, bucketBits);
+	}
+
+	/**
+	 * Opens the archive stored in the given directory, creating it with the
+	 * default segment size and number of index buckets if it doesn't exist.
+	 *
+	 * @param directory - the directory holding the archive
+	 * @throws IOException - if the archive cannot be opened
+	 */
+	public static GameArchive open(Path directory) throws IOException {
+		return (open(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_BUCKET_BITS));
+	}
+
+	/**
+	 * Opens the archive stored in the given directory, creating it if it
+	 * doesn't exist. The number of index buckets should be about the number
+	 * of positions expected to be stored, and is fixed once the archive is
+	 * created.
+	 *
+	 * @param directory - the directory holding the archive
+	 * @param segmentSize - the size of each segment file, in bytes
+	 * @param bucketBits - log2 of the number of index buckets
+	 * @throws IOException - if the archive cannot be opened
+	 */
+	public static GameArchive open(Path directory, int segmentSize,
+			int bucketBits) throws IOException {
+		return (new GameArchive(directory, segmentSize, bucketBits));
+	}
+
+	/**
+	 * Returns the number of bytes used to store a game with the given
+	 * number of moves.
+	 */
+	static int recordSize(int plyCount) {
+		return (GAME_HEADER_SIZE + plyCount * Short.BYTES);
+	}
+
+	/**
+	 * Appends the given game to this archive, and indexes all the positions
+	 * reached in it.
+	 *
+	 * @param record - the game to store
+	 * @return the id of the stored game
+	 * @throws IOException - if a new segment cannot be created
+	 */
+	public synchronized long append(GameRecord record) throws IOException {
+		int plyCount = record.plyCount();
+
+		if(plyCount > 0xFFFF)
+			throw new IllegalArgumentException("Game too long: " + plyCount);
+
+		long gameId = games.allocate(recordSize(plyCount));
+		ByteBuffer segment = games.segment(MappedSegments.segmentOf(gameId));
+		int offset = MappedSegments.offsetOf(gameId);
+		Position position = Position.initial();
+
+		segment.putShort(offset, (short) plyCount);
+		segment.put(offset + 2, (byte) record.result().ordinal());
+		segment.put(offset + 3, (byte) 0);
+
+		for(int ply = 0; ply < plyCount; ply++) {
+			segment.putShort(offset + GAME_HEADER_SIZE + ply * Short.BYTES,
+					(short) record.move(ply));
+		}
+
+		games.publish();
+
+		for(int ply = 0; ply < plyCount; ply++) {
+			position.makeMove(record.move(ply));
+			index.add(position.key(), gameId, ply + 1);
+		}
+
+		return (gameId);
+	}
+
+	/**
+	 * Returns the number of moves played in the given game.
+	 *
+	 * @param gameId - the id of a stored game
+	 */
+	public int plyCount(long gameId) {
+		return (games.segment(MappedSegments.segmentOf(gameId))
+				.getShort(MappedSegments.offsetOf(gameId)) & 0xFFFF);
+	}
+
+	/**
+	 * Returns the result of the given game.
+	 *
+	 * @param gameId - the id of a stored game
+	 */
+	public GameResult result(long gameId) {
+		return (GameResult.values()[games.segment(MappedSegments.segmentOf(gameId))
+				.get(MappedSegments.offsetOf(gameId) + 2)]);
+	}
+
+	/**
+	 * Returns the move played at the given ply of the given game.
+	 *
+	 * @param gameId - the id of a stored game
+	 * @param ply - the index of the move, starting from 0
+	 */
+	public int moveAt(long gameId, int ply) {
+		return (games.segment(MappedSegments.segmentOf(gameId))
+				.getShort(MappedSegments.offsetOf(gameId) + GAME_HEADER_SIZE
+						+ ply * Short.BYTES) & 0xFFFF);
+	}
+
+	/**
+	 * Copies the given game into the heap.
+	 *
+	 * @param gameId - the id of a stored game
+	 */
+	public GameRecord read(long gameId) {
+		int[] moves = new int[plyCount(gameId)];
+
+		for(int ply = 0; ply < moves.length; ply++) {
+			moves[ply] = moveAt(gameId, ply);
+		}
+
+		return (new GameRecord(moves, result(gameId)));
+	}
+
+	/**
+	 * Returns a stream over the ids of the games stored in this archive (at
+	 * the time of calling), in the order they were appended. The stream
+	 * splits efficiently and can be made parallel.
+	 */
+	public LongStream games() {
+		return (StreamSupport.longStream(new GameSpliterator(games), false));
+	}
+
+	/**
+	 * Passes every occurrence of the given position in the stored games to
+	 * the visitor, newest first, till it asks to stop.
+	 *
+	 * @param positionKey - the Zobrist key of the position (see <tt>
+	 * 			Position.key</tt>)
+	 * @param visitor - receives the game ids and plies of the occurrences
+	 * @return the number of occurrences visited
+	 */
+	public int forEachOccurrence(long positionKey, OccurrenceVisitor visitor) {
+		return (index.forEach(positionKey, visitor));
+	}
+
+	/**
+	 * Returns the ids of all the stored games that reached the given
+	 * position, newest first. Games in which the position occurred more than
+	 * once are listed once.
+	 *
+	 * @param position - the position to look for
+	 */
+	public long[] gamesReaching(Position position) {
+		long[][] found = { new long[16] };
+		int[] count = { 0 };
+
+		forEachOccurrence(position.key(), (long gameId, int ply) -> {
+			if(count[0] == 0 || found[0][count[0] - 1] != gameId) {
+				if(count[0] == found[0].length)
+					found[0] = Arrays.copyOf(found[0], count[0] * 2);
+
+				found[0][(count[0])++] = gameId;
+			}
+
+			return (true);
+		});
+
+		return (Arrays.copyOf(found[0], count[0]));
+	}
+
+	/**
+	 * Writes all the changes made to this archive to the storage device.
+	 */
+	public void force() {
+		games.force();
+		index.force();
+	}
+
+	@Override
+	public void close() {
+		games.close();
+		index.close();
+	}
+
+}
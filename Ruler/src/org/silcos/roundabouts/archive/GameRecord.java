@@ -0,0 +1,94 @@
+package org.silcos.roundabouts.archive;
+
+import java.util.Arrays;
+
+import org.silcos.roundabouts.GameResult;
+import org.silcos.roundabouts.Position;
+
+/**
+ * <p>
+ * Immutable record of a game played from the initial position (see
+ * <tt>Position.initial</tt>), holding its moves in the order they were
+ * played and its result.
+ *
+ * <p>
+ * Moves are encoded using <tt>Move</tt>.
+ *
+ * @author Shukant Pal
+ */
+public final class GameRecord {
+
+	private final int[] moves;
+	private final GameResult result;
+
+	/**
+	 * Constructs a record for the game in which the given moves were played
+	 * and which ended with the given result.
+	 *
+	 * @param moves - the moves of the game, in order (copied)
+	 * @param result - the result of the game
+	 */
+	public GameRecord(int[] moves, GameResult result) {
+		this.moves = moves.clone();
+		this.result = result;
+	}
+
+	/**
+	 * Returns the number of moves (plies) played in this game.
+	 */
+	public int plyCount() {
+		return (moves.length);
+	}
+
+	/**
+	 * Returns the move played at the given ply, starting from 0.
+	 *
+	 * @param ply - the index of the move
+	 */
+	public int move(int ply) {
+		return (moves[ply]);
+	}
+
+	/**
+	 * Returns a copy of the moves played in this game.
+	 */
+	public int[] moves() {
+		return (moves.clone());
+	}
+
+	/**
+	 * Returns the result of this game.
+	 */
+	public GameResult result() {
+		return (result);
+	}
+
+	/**
+	 * Returns the position reached after the first <tt>ply</tt> moves of
+	 * this game, by replaying them from the initial position.
+	 *
+	 * @param ply - the number of moves to replay
+	 */
+	public Position positionAt(int ply) {
+		Position position = Position.initial();
+
+		for(int moveIdx = 0; moveIdx < ply; moveIdx++) {
+			position.makeMove(moves[moveIdx]);
+		}
+
+		return (position);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return (other instanceof GameRecord &&
+				result == ((GameRecord) other).result &&
+				Arrays.equals(moves, ((GameRecord) other).moves));
+	}
+
+	@Override
+	public int hashCode() {
+		return (31 * Arrays.hashCode(moves) + result.hashCode());
+	}
+
+}
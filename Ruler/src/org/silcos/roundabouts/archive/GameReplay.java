@@ -0,0 +1,174 @@
+package org.silcos.roundabouts.archive;
+
+import org.silcos.roundabouts.Position;
+
+/**
+ * <p>
+ * Steps forward and backward through a recorded game, and jumps to any ply
+ * of it, for review tools that scrub through games interactively. Moves are
+ * replayed headlessly on a <tt>Position</tt>; nothing is animated through a
+ * <tt>UIAdapter</tt> and no board events are fired.
+ *
+ * <p>
+ * The pebble masks of the position are stored every <tt>snapshotInterval
+ * </tt> plies when the replay is created. A jump restores the nearest
+ * snapshot before the target and replays fewer than <tt>snapshotInterval
+ * </tt> moves from there (or steps directly, if that is shorter), so that
+ * its cost doesn't depend on the length of the game.
+ *
+ * @author Shukant Pal
+ */
+public final class GameReplay {
+
+	public static final int DEFAULT_SNAPSHOT_INTERVAL = 16;
+
+	private final GameRecord record;
+	private final int snapshotInterval;
+
+	/**
+	 * Pebble masks at every <tt>snapshotInterval</tt> plies - the starter
+	 * player's at even and the other player's at odd indices. The side to
+	 * move follows from the parity of the ply.
+	 */
+	private final long[] snapshots;
+
+	private final Position position;
+	private int ply;
+
+	/**
+	 * Constructs a replay of the given game, with the default snapshot
+	 * interval, positioned at its start.
+	 *
+	 * @param record - the game to replay
+	 */
+	public GameReplay(GameRecord record) {
+		this(record, DEFAULT_SNAPSHOT_INTERVAL);
+	}
+
+	/**
+	 * Constructs a replay of the given game positioned at its start, and
+	 * stores a snapshot every <tt>snapshotInterval</tt> plies.
+	 *
+	 * @param record - the game to replay
+	 * @param snapshotInterval - number of plies between snapshots
+	 */
+	public GameReplay(GameRecord record, int snapshotInterval) {
+		if(snapshotInterval < 1)
+			throw new IllegalArgumentException("Snapshot interval must be positive");
+
+		this.record = record;
+		this.snapshotInterval = snapshotInterval;
+		this.snapshots = new long[2 * (record.plyCount() / snapshotInterval + 1)];
+		this.position = Position.initial();
+
+		for(int moveIdx = 0; moveIdx <= record.plyCount(); moveIdx++) {
+			if(moveIdx % snapshotInterval == 0) {
+				snapshots[2 * (moveIdx / snapshotInterval)] =
+						position.pebbles(Position.STARTER);
+				snapshots[2 * (moveIdx / snapshotInterval) + 1] =
+						position.pebbles(Position.OTHER);
+			}
+
+			if(moveIdx < record.plyCount())
+				position.makeMove(record.move(moveIdx));
+		}
+
+		restore(0);
+	}
+
+	/**
+	 * Sets the position to the snapshot taken at the given ply, which must
+	 * be a multiple of <tt>snapshotInterval</tt>.
+	 */
+	private void restore(int snapshotPly) {
+		int snapshot = 2 * (snapshotPly / snapshotInterval);
+
+		position.set(snapshots[snapshot], snapshots[snapshot + 1],
+				(snapshotPly % 2 == 0) ? Position.STARTER : Position.OTHER);
+		ply = snapshotPly;
+	}
+
+	/**
+	 * Returns the game being replayed.
+	 */
+	public GameRecord record() {
+		return (record);
+	}
+
+	/**
+	 * Returns the number of moves replayed so far.
+	 */
+	public int ply() {
+		return (ply);
+	}
+
+	/**
+	 * Returns the position after the moves replayed so far. The returned
+	 * position is updated by the replay and must not be modified.
+	 */
+	public Position position() {
+		return (position);
+	}
+
+	/**
+	 * Replays the next move, if the game isn't over.
+	 *
+	 * @return whether a move was replayed
+	 */
+	public boolean stepForward() {
+		if(ply == record.plyCount())
+			return (false);
+
+		position.makeMove(record.move((ply)++));
+
+		return (true);
+	}
+
+	/**
+	 * Takes back the last replayed move, if any.
+	 *
+	 * @return whether a move was taken back
+	 */
+	public boolean stepBackward() {
+		if(ply == 0)
+			return (false);
+
+		if(position.depth() > 0) {
+			position.unmakeMove(record.move(--(ply)));
+		} else {
+			seek(ply - 1);
+		}
+
+		return (true);
+	}
+
+	/**
+	 * Jumps to the position after the given number of moves.
+	 *
+	 * @param targetPly - the number of moves to have replayed, from 0 to
+	 * 			<tt>record().plyCount()</tt>
+	 */
+	public void seek(int targetPly) {
+		if(targetPly < 0 || targetPly > record.plyCount())
+			throw new IndexOutOfBoundsException("Ply out of range: " + targetPly);
+
+		int snapshotPly = targetPly - targetPly % snapshotInterval;
+
+		if(targetPly < ply && ply - targetPly <= position.depth()
+				&& ply - targetPly <= targetPly - snapshotPly) {
+			while(ply > targetPly) {
+				position.unmakeMove(record.move(--(ply)));
+			}
+
+			return;
+		}
+
+		if(targetPly < ply || targetPly - ply > targetPly - snapshotPly)
+			restore(snapshotPly);
+
+		while(ply < targetPly) {
+			position.makeMove(record.move((ply)++));
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package org.silcos.roundabouts.archive;
+
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>
+ * Spliterator over the ids of the games stored in a <tt>GameArchive</tt>,
+ * in the order they were appended. It covers a range of segments, from the
+ * current offset in the first one up to a fence in the last one, as of the
+ * time it was created.
+ *
+ * <p>
+ * Splitting hands out whole segments while more than one is left, and
+ * otherwise skips from record to record (reading only their lengths) to
+ * split the remaining part of the segment in half. Hence, parallel streams
+ * over large archives split into segment-sized tasks without any offset
+ * table.
+ *
+ * @author Shukant Pal
+ */
+final class GameSpliterator implements Spliterator.OfLong {
+
+	/**
+	 * Ranges smaller than this (in bytes) are not split any further.
+	 */
+	private static final int MIN_SPLIT_SIZE = 1 << 16;
+
+	/**
+	 * Rough size of a game record, used only for size estimates.
+	 */
+	private static final int AVERAGE_RECORD_SIZE = 128;
+
+	private final MappedSegments games;
+
+	private int segment;
+	private int offset;
+	private final int lastSegment;
+	private final int fence;
+
+	private GameSpliterator(MappedSegments games, int segment, int offset,
+			int lastSegment, int fence) {
+		this.games = games;
+		this.segment = segment;
+		this.offset = offset;
+		this.lastSegment = lastSegment;
+		this.fence = fence;
+	}
+
+	/**
+	 * Constructs a spliterator over all the games stored in the given
+	 * segments.
+	 */
+	GameSpliterator(MappedSegments games) {
+		this(games, 0, MappedSegments.HEADER_SIZE, games.segmentCount() - 1,
+				games.end(games.segmentCount() - 1));
+	}
+
+	private int endOf(int segmentIdx) {
+		return ((segmentIdx == lastSegment) ? fence : games.end(segmentIdx));
+	}
+
+	private int recordSizeAt(int segmentIdx, int recordOffset) {
+		return (GameArchive.recordSize(
+				games.segment(segmentIdx).getShort(recordOffset) & 0xFFFF));
+	}
+
+	@Override
+	public boolean tryAdvance(LongConsumer action) {
+		while(segment <= lastSegment) {
+			if(offset < endOf(segment)) {
+				long gameId = MappedSegments.address(segment, offset);
+
+				offset += recordSizeAt(segment, offset);
+				action.accept(gameId);
+
+				return (true);
+			}
+
+			++(segment);
+			offset = MappedSegments.HEADER_SIZE;
+		}
+
+		return (false);
+	}
+
+	@Override
+	public void forEachRemaining(LongConsumer action) {
+		for(; segment <= lastSegment; segment++) {
+			int end = endOf(segment);
+
+			while(offset < end) {
+				long gameId = MappedSegments.address(segment, offset);
+
+				offset += recordSizeAt(segment, offset);
+				action.accept(gameId);
+			}
+
+			offset = MappedSegments.HEADER_SIZE;
+		}
+	}
+
+	@Override
+	public Spliterator.OfLong trySplit() {
+		if(segment < lastSegment) {
+			int middle = (segment + lastSegment) >>> 1;
+			GameSpliterator prefix = new GameSpliterator(games, segment, offset,
+					middle, games.end(middle));
+
+			segment = middle + 1;
+			offset = MappedSegments.HEADER_SIZE;
+
+			return (prefix);
+		} else if(segment == lastSegment && fence - offset >= MIN_SPLIT_SIZE) {
+			int middle = offset + (fence - offset) / 2;
+			int splitOffset = offset;
+
+			while(splitOffset < middle) {
+				splitOffset += recordSizeAt(segment, splitOffset);
+			}
+
+			if(splitOffset >= fence)
+				return (null);
+
+			GameSpliterator prefix = new GameSpliterator(games, segment, offset,
+					segment, splitOffset);
+
+			offset = splitOffset;
+
+			return (prefix);
+		} else {
+			return (null);
+		}
+	}
+
+	@Override
+	public long estimateSize() {
+		long remaining = 0;
+
+		for(int segmentIdx = segment; segmentIdx <= lastSegment; segmentIdx++) {
+			remaining += endOf(segmentIdx) - ((segmentIdx == segment) ? offset
+					: MappedSegments.HEADER_SIZE);
+		}
+
+		return (Math.max(remaining, 0) / AVERAGE_RECORD_SIZE);
+	}
+
+	@Override
+	public int characteristics() {
+		return (ORDERED | DISTINCT | NONNULL | IMMUTABLE);
+	}
+
+}
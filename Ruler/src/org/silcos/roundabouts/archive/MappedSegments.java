@@ -0,0 +1,247 @@
+package org.silcos.roundabouts.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Append-only storage made of fixed-size files, each memory-mapped in full.
+ * Space is handed out as 64-bit addresses - the index of the segment in the
+ * upper 32 bits and the offset in the lower 32 bits - and an allocation
+ * never crosses the end of a segment, so that every record can be read from
+ * a single <tt>ByteBuffer</tt> using absolute (thread-safe) accessors.
+ *
+ * <p>
+ * Each segment begins with a <tt>HEADER_SIZE</tt>-byte header holding a
+ * magic number and the offset up to which it is filled. Hence, no valid
+ * address is ever 0, and 0 can be used as a "null" address.
+ *
+ * <p>
+ * Space is allocated and filled first, and then published with <tt>publish
+ * </tt>; readers (see <tt>end</tt> and <tt>published</tt>) only see the
+ * records published, and see them in full.
+ *
+ * @author Shukant Pal
+ */
+final class MappedSegments implements Closeable {
+
+	static final int HEADER_SIZE = 16;
+
+	private static final int MAGIC = 0x50524D4E;
+	private static final int END_OFFSET = 8;
+
+	private final Path directory;
+	private final String prefix;
+	private final int segmentSize;
+
+	/**
+	 * Mapped segments, in order. The array is replaced (never modified)
+	 * when a segment is added, so that readers need no locking.
+	 */
+	private volatile MappedByteBuffer[] segments;
+
+	/**
+	 * The address up to which records are published. It is written after
+	 * the records, so that readers seeing it see the records too.
+	 */
+	private volatile long published;
+
+	/**
+	 * The address up to which space is allocated, guarded by this.
+	 */
+	private long reserved;
+
+	/**
+	 * Opens the segments named <tt>prefix-NNNNN.seg</tt> in the given
+	 * directory, creating the first one if none exist.
+	 *
+	 * @param directory - the directory holding the segment files
+	 * @param prefix - the name prefix of the segment files
+	 * @param segmentSize - the size of each segment file, in bytes
+	 * @throws IOException - if a segment cannot be opened or mapped
+	 */
+	MappedSegments(Path directory, String prefix, int segmentSize)
+			throws IOException {
+		if(segmentSize <= HEADER_SIZE)
+			throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+
+		this.directory = directory;
+		this.prefix = prefix;
+		this.segmentSize = segmentSize;
+		this.segments = new MappedByteBuffer[0];
+
+		Files.createDirectories(directory);
+
+		while(Files.exists(segmentPath(segments.length))) {
+			MappedByteBuffer segment = map(segments.length);
+
+			if(segment.getInt(0) != MAGIC)
+				throw new IOException("Not a segment file: " + segmentPath(segments.length - 1));
+		}
+
+		if(segments.length == 0)
+			map(0);
+
+		int last = segments.length - 1;
+
+		this.reserved = address(last, segments[last].getInt(END_OFFSET));
+		this.published = reserved;
+	}
+
+	/**
+	 * Returns the address of the given offset in the given segment.
+	 */
+	static long address(int segment, int offset) {
+		return (((long) segment << 32) | offset);
+	}
+
+	/**
+	 * Returns the index of the segment the given address lies in.
+	 */
+	static int segmentOf(long address) {
+		return ((int) (address >>> 32));
+	}
+
+	/**
+	 * Returns the offset of the given address inside its segment.
+	 */
+	static int offsetOf(long address) {
+		return ((int) address);
+	}
+
+	private Path segmentPath(int index) {
+		return (directory.resolve(String.format("%s-%05d.seg", prefix, index)));
+	}
+
+	/**
+	 * Maps the segment with the given index (which must be the next one),
+	 * creating and initializing its file if it doesn't exist.
+	 */
+	private MappedByteBuffer map(int index) throws IOException {
+		Path path = segmentPath(index);
+		boolean created = !Files.exists(path);
+		MappedByteBuffer segment;
+
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			segment = channel.map(MapMode.READ_WRITE, 0, segmentSize);
+		}
+
+		if(created) {
+			segment.putInt(0, MAGIC);
+			segment.putInt(END_OFFSET, HEADER_SIZE);
+		}
+
+		MappedByteBuffer[] grown = Arrays.copyOf(segments, index + 1);
+		grown[index] = segment;
+		segments = grown;
+
+		return (segment);
+	}
+
+	/**
+	 * Reserves the given number of bytes at the end of the last segment,
+	 * adding a new segment if it doesn't have enough space left. The space
+	 * isn't seen by readers until <tt>publish</tt> is called.
+	 *
+	 * @param length - the number of bytes to reserve
+	 * @return the address of the reserved space
+	 * @throws IOException - if a new segment cannot be created
+	 */
+	synchronized long allocate(int length) throws IOException {
+		if(length > segmentSize - HEADER_SIZE)
+			throw new IllegalArgumentException("Record too large: " + length);
+
+		int index = segmentOf(reserved);
+		int offset = offsetOf(reserved);
+
+		if(segmentSize - offset < length) {
+			// Readers don't look at the end of a full segment till the
+			// published address has moved past it.
+			segments[index].putInt(END_OFFSET, offset);
+			map(++index);
+			offset = HEADER_SIZE;
+		}
+
+		reserved = address(index, offset + length);
+
+		return (address(index, offset));
+	}
+
+	/**
+	 * Publishes all the space allocated so far, which must have been filled.
+	 */
+	synchronized void publish() {
+		segments[segmentOf(reserved)].putInt(END_OFFSET, offsetOf(reserved));
+		published = reserved;
+	}
+
+	/**
+	 * Returns the address up to which records are published; the records
+	 * below it can be read in full.
+	 */
+	long published() {
+		return (published);
+	}
+
+	/**
+	 * Returns the number of segments.
+	 */
+	int segmentCount() {
+		return (segments.length);
+	}
+
+	/**
+	 * Returns the mapped segment with the given index. Callers must only
+	 * use the absolute accessors of the returned buffer.
+	 *
+	 * @param index - index of the segment
+	 */
+	ByteBuffer segment(int index) {
+		return (segments[index]);
+	}
+
+	/**
+	 * Returns the offset up to which the records of the given segment are
+	 * published.
+	 *
+	 * @param index - index of the segment
+	 */
+	int end(int index) {
+		long end = published;
+		int last = segmentOf(end);
+
+		if(index < last)
+			return (segments[index].getInt(END_OFFSET));
+
+		return ((index == last) ? offsetOf(end) : HEADER_SIZE);
+	}
+
+	/**
+	 * Writes all the changes made to the segments to the storage device.
+	 */
+	void force() {
+		for(MappedByteBuffer segment : segments) {
+			segment.force();
+		}
+	}
+
+	/**
+	 * Forces and drops all the mappings; they are released by the JVM once
+	 * unreachable.
+	 */
+	@Override
+	public void close() {
+		force();
+		segments = new MappedByteBuffer[0];
+	}
+
+}
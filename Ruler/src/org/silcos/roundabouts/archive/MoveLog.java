@@ -0,0 +1,482 @@
+package org.silcos.roundabouts.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import org.silcos.roundabouts.Game;
+import org.silcos.roundabouts.GameResult;
+
+/**
+ * <p>
+ * Write-ahead log of the moves accepted in server-hosted games, so that
+ * in-progress games can be rebuilt after a crash. A move is logged with
+ * <tt>logMove</tt> and must not be acknowledged before <tt>awaitDurable
+ * </tt> returns for its sequence number.
+ *
+ * <p>
+ * Records logged by all the sessions are collected in one buffer, and a
+ * single writer thread writes and forces them to the current log file
+ * together (group commit), while the next batch is being collected. Hence,
+ * one <tt>force</tt> makes a whole batch durable, instead of one for each
+ * move.
+ *
+ * <p>
+ * Records have a fixed size of <tt>RECORD_SIZE</tt> bytes - <tt>[long gameId]
+ * [int ply][short move][byte type][byte unused][int checksum]</tt> - so that
+ * a torn write at the end of the log is detected and dropped on recovery.
+ * Log files are rotated once they reach their maximum size, and the files
+ * not holding any record of an unfinished game are then deleted.
+ *
+ * @author Shukant Pal
+ */
+public final class MoveLog implements Closeable {
+
+	public static final long DEFAULT_MAX_FILE_SIZE = 64L << 20;
+
+	static final int RECORD_SIZE = 20;
+
+	private static final byte MOVE_RECORD = 0;
+	private static final byte RESULT_RECORD = 1;
+	private static final int CHECKSUM_SEED = 0x4D4C4F47;
+
+	private final Path directory;
+	private final long maxFileSize;
+
+	private final ReentrantLock lock;
+
+	/**
+	 * Signalled to the writer when records are pending, and to the waiting
+	 * sessions only when more records have been made durable.
+	 */
+	private final Condition recordsPending;
+	private final Condition durableAdvanced;
+
+	/**
+	 * Records logged since the last batch was handed to the writer.
+	 */
+	private ByteBuffer pending;
+
+	/**
+	 * Batch being written by the writer thread.
+	 */
+	private ByteBuffer writing;
+
+	private long loggedSequence;
+	private long durableSequence;
+	private IOException failure;
+	private boolean closed;
+
+	/**
+	 * Index of the first log file holding a record of each unfinished game.
+	 */
+	private final HashMap<Long, Integer> openGames;
+
+	private FileChannel channel;
+	private int fileIndex;
+
+	private final Map<Long, GameRecord> recoveredGames;
+	private final Thread writer;
+
+	private MoveLog(Path directory, long maxFileSize) throws IOException {
+		this.directory = directory;
+		this.maxFileSize = maxFileSize;
+		this.lock = new ReentrantLock();
+		this.recordsPending = lock.newCondition();
+		this.durableAdvanced = lock.newCondition();
+		this.pending = ByteBuffer.allocate(RECORD_SIZE * 1024);
+		this.writing = ByteBuffer.allocate(RECORD_SIZE * 1024);
+		this.openGames = new HashMap<Long, Integer>();
+
+		Files.createDirectories(directory);
+		this.recoveredGames = Collections.unmodifiableMap(recover());
+		this.channel = FileChannel.open(logPath(fileIndex), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+		this.writer = new Thread(this::writeBatches, "MoveLog writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Opens the move log in the given directory with the default maximum
+	 * file size, recovering the games left unfinished in it.
+	 *
+	 * @param directory - the directory holding the log files
+	 * @throws IOException - if the log cannot be read or opened
+	 */
+	public static MoveLog open(Path directory) throws IOException {
+		return (new MoveLog(directory, DEFAULT_MAX_FILE_SIZE));
+	}
+
+	/**
+	 * Opens the move log in the given directory, recovering the games left
+	 * unfinished in it.
+	 *
+	 * @param directory - the directory holding the log files
+	 * @param maxFileSize - the size after which log files are rotated
+	 * @throws IOException - if the log cannot be read or opened
+	 */
+	public static MoveLog open(Path directory, long maxFileSize)
+			throws IOException {
+		return (new MoveLog(directory, maxFileSize));
+	}
+
+	private Path logPath(int index) {
+		return (directory.resolve(String.format("moves-%05d.log", index)));
+	}
+
+	private static int checksum(long gameId, int ply, int move, int type) {
+		long mixed = (gameId * 0x9E3779B97F4A7C15L) ^ ((long) ply << 24)
+				^ ((long) move << 8) ^ type;
+
+		return (Long.hashCode(mixed * 0xBF58476D1CE4E5B9L) ^ CHECKSUM_SEED);
+	}
+
+	/**
+	 * Reads all the log files, from the oldest one, and collects the moves
+	 * of the games that weren't finished. A torn record at the end of the
+	 * last file (and anything after it) is truncated.
+	 */
+	private Map<Long, GameRecord> recover() throws IOException {
+		LinkedHashMap<Long, int[]> moves = new LinkedHashMap<Long, int[]>();
+		HashMap<Long, Integer> plyCounts = new HashMap<Long, Integer>();
+		int firstIndex = firstLogIndex();
+
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+		for(fileIndex = firstIndex; Files.exists(logPath(fileIndex)); fileIndex++) {
+			try(FileChannel file = FileChannel.open(logPath(fileIndex),
+					StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				long position = 0;
+
+				for(;; position += RECORD_SIZE) {
+					record.clear();
+
+					while(record.hasRemaining() && file.read(record,
+							position + record.position()) > 0);
+
+					if(record.hasRemaining())
+						break;
+
+					long gameId = record.getLong(0);
+					int ply = record.getInt(8);
+					int move = record.getShort(12) & 0xFFFF;
+					byte type = record.get(14);
+
+					if(record.getInt(16) != checksum(gameId, ply, move, type))
+						break;
+
+					if(type == RESULT_RECORD) {
+						moves.remove(gameId);
+						plyCounts.remove(gameId);
+						openGames.remove(gameId);
+						continue;
+					}
+
+					int[] gameMoves = moves.get(gameId);
+					int plyCount = plyCounts.getOrDefault(gameId, 0);
+
+					if(ply != plyCount)
+						continue;// duplicate or out-of-order move
+
+					if(gameMoves == null) {
+						gameMoves = new int[16];
+						openGames.put(gameId, fileIndex);
+					} else if(plyCount == gameMoves.length) {
+						gameMoves = Arrays.copyOf(gameMoves, plyCount * 2);
+					}
+
+					gameMoves[plyCount] = move;
+					moves.put(gameId, gameMoves);
+					plyCounts.put(gameId, plyCount + 1);
+				}
+
+				if(position < file.size()) {
+					System.err.println("Warning : MoveLog truncating torn tail of "
+							+ logPath(fileIndex) + " at " + position);
+					file.truncate(position);
+				}
+			}
+		}
+
+		fileIndex = Math.max(fileIndex - 1, firstIndex);
+
+		LinkedHashMap<Long, GameRecord> games = new LinkedHashMap<Long, GameRecord>();
+
+		for(Map.Entry<Long, int[]> entry : moves.entrySet()) {
+			games.put(entry.getKey(), new GameRecord(Arrays.copyOf(entry.getValue(),
+					plyCounts.get(entry.getKey())), GameResult.UNFINISHED));
+		}
+
+		return (games);
+	}
+
+	/**
+	 * Returns the index of the oldest log file in the directory (older
+	 * files may have been deleted), or 0 if there are none.
+	 */
+	private int firstLogIndex() throws IOException {
+		try(Stream<Path> files = Files.list(directory)) {
+			return (files.map((Path path) -> path.getFileName().toString())
+					.filter((String name) -> name.matches("moves-\\d{5}\\.log"))
+					.mapToInt((String name) -> Integer.parseInt(name.substring(6, 11)))
+					.min().orElse(0));
+		}
+	}
+
+	/**
+	 * Returns the games that were in progress when the log was last closed
+	 * (or crashed), keyed by their game ids, with the moves logged for them.
+	 */
+	public Map<Long, GameRecord> recoveredGames() {
+		return (recoveredGames);
+	}
+
+	/**
+	 * Rebuilds the recovered games as <tt>Game</tt> objects controlled by two
+	 * <tt>HumanPlayer</tt> objects. The logged moves are replayed through
+	 * each game from the initial position, so that it has the history the
+	 * draw rule needs (and ends if the last move drew it).
+	 *
+	 * @return the rebuilt games keyed by their game ids
+	 */
+	public Map<Long, Game> rebuildGames() {
+		LinkedHashMap<Long, Game> games = new LinkedHashMap<Long, Game>();
+
+		for(Map.Entry<Long, GameRecord> entry : recoveredGames.entrySet()) {
+			GameRecord record = entry.getValue();
+			Game game = Game.doubleUserGame();
+
+			game.placeAllPebbles();
+
+			for(int ply = 0; ply < record.plyCount() && game.playMove(record.move(ply)); ply++);
+
+			games.put(entry.getKey(), game);
+		}
+
+		return (games);
+	}
+
+	/**
+	 * Buffers one record for the next batch, and wakes up the writer.
+	 */
+	private long log(long gameId, int ply, int move, byte type) {
+		lock.lock();
+
+		try {
+			if(closed)
+				throw new IllegalStateException("MoveLog is closed");
+
+			if(pending.remaining() < RECORD_SIZE) {
+				ByteBuffer grown = ByteBuffer.allocate(pending.capacity() * 2);
+
+				pending.flip();
+				pending = grown.put(pending);
+			}
+
+			pending.putLong(gameId).putInt(ply).putShort((short) move).put(type)
+					.put((byte) 0).putInt(checksum(gameId, ply, move, type));
+
+			if(type == RESULT_RECORD) {
+				openGames.remove(gameId);
+			} else if(ply == 0) {
+				openGames.putIfAbsent(gameId, fileIndex);
+			}
+
+			if(pending.position() == RECORD_SIZE)
+				recordsPending.signal();
+
+			return (++(loggedSequence));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Logs that the given move was accepted as the <tt>ply</tt>th move
+	 * (starting from 0) of the given game. The move is only durable once
+	 * <tt>awaitDurable</tt> returns for the returned sequence number.
+	 *
+	 * @param gameId - the id of the game
+	 * @param ply - the index of the move in the game
+	 * @param move - the encoded move (see <tt>Move</tt>)
+	 * @return the sequence number of the record
+	 */
+	public long logMove(long gameId, int ply, int move) {
+		return (log(gameId, ply, move, MOVE_RECORD));
+	}
+
+	/**
+	 * Logs that the given game is over, so that it isn't recovered again.
+	 *
+	 * @param gameId - the id of the game
+	 * @param result - the result of the game
+	 * @return the sequence number of the record
+	 */
+	public long logResult(long gameId, GameResult result) {
+		return (log(gameId, 0, result.ordinal(), RESULT_RECORD));
+	}
+
+	/**
+	 * Blocks till the record with the given sequence number (and all those
+	 * logged before it) have been forced to the storage device.
+	 *
+	 * @param sequence - the sequence number of a record
+	 * @throws IOException - if the log failed to write the record
+	 * @throws InterruptedException - if interrupted while waiting
+	 */
+	public void awaitDurable(long sequence)
+			throws IOException, InterruptedException {
+		lock.lock();
+
+		try {
+			while(durableSequence < sequence && failure == null) {
+				durableAdvanced.await();
+			}
+
+			if(durableSequence < sequence)
+				throw new IOException("MoveLog failed", failure);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Runs on the writer thread: hands over the pending records as one batch,
+	 * writes and forces them, and then wakes up the sessions waiting for them.
+	 */
+	private void writeBatches() {
+		for(;;) {
+			long batchSequence;
+
+			lock.lock();
+
+			try {
+				while(pending.position() == 0 && !closed) {
+					recordsPending.await();
+				}
+
+				if(pending.position() == 0)
+					return;
+
+				ByteBuffer batch = pending;
+
+				pending = writing;
+				writing = batch;
+				batchSequence = loggedSequence;
+			} catch(InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
+
+			try {
+				writing.flip();
+
+				while(writing.hasRemaining()) {
+					channel.write(writing);
+				}
+
+				channel.force(false);
+				writing.clear();
+
+				if(channel.size() >= maxFileSize)
+					rotate();
+			} catch(IOException e) {
+				lock.lock();
+
+				try {
+					failure = e;
+					durableAdvanced.signalAll();
+				} finally {
+					lock.unlock();
+				}
+
+				return;
+			}
+
+			lock.lock();
+
+			try {
+				durableSequence = batchSequence;
+				durableAdvanced.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Switches to a new log file and deletes the old files that don't hold a
+	 * record of any unfinished game.
+	 */
+	private void rotate() throws IOException {
+		int oldestNeeded;
+
+		channel.close();
+		channel = FileChannel.open(logPath(fileIndex + 1), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+		lock.lock();
+
+		try {
+			oldestNeeded = ++(fileIndex);
+
+			for(int gameFile : openGames.values()) {
+				oldestNeeded = Math.min(oldestNeeded, gameFile);
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		for(int index = oldestNeeded - 1; index >= 0
+				&& Files.deleteIfExists(logPath(index)); index--);
+	}
+
+	/**
+	 * Writes the records logged so far, stops the writer and closes the
+	 * current log file.
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+
+		try {
+			closed = true;
+			recordsPending.signal();
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			writer.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		channel.close();
+
+		lock.lock();
+
+		try {
+			if(failure != null)
+				throw failure;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+}
@@ -0,0 +1,21 @@
+package org.silcos.roundabouts.archive;
+
+/**
+ * Receives the occurrences of a position found in a <tt>GameArchive</tt>,
+ * one at a time, so that queries don't have to build result lists.
+ *
+ * @author Shukant Pal
+ */
+@FunctionalInterface
+public interface OccurrenceVisitor {
+
+	/**
+	 * Called for each game in which the position occurred.
+	 *
+	 * @param gameId - the id of the game in the archive
+	 * @param ply - the number of moves after which the position occurred
+	 * @return whether to continue visiting occurrences
+	 */
+	boolean visit(long gameId, int ply);
+
+}
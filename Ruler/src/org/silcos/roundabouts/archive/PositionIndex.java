@@ -0,0 +1,158 @@
+package org.silcos.roundabouts.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>
+ * On-disk hash index from position keys to the games (and plies) in which
+ * those positions occurred. It is made of a memory-mapped bucket table,
+ * holding the address of the newest entry for each bucket, and of entries
+ * appended to <tt>MappedSegments</tt>, each linking to the previous entry
+ * of its bucket.
+ *
+ * <p>
+ * An entry is laid out as <tt>[long key][long gameId][long next][int ply]
+ * [int unused]</tt>. Lookups only touch the bucket and the entries chained
+ * to it, and never copy them into the heap.
+ *
+ * @author Shukant Pal
+ */
+final class PositionIndex implements Closeable {
+
+	static final int ENTRY_SIZE = 32;
+	static final int MAX_BUCKET_BITS = 27;
+
+	private static final int MAGIC = 0x50524D49;
+	private static final int HEADER_SIZE = 16;
+
+	private final MappedByteBuffer buckets;
+	private final int bucketBits;
+	private final MappedSegments entries;
+
+	/**
+	 * Opens (or creates) the index stored in the given directory. The number
+	 * of buckets is fixed when the index is created; <tt>bucketBits</tt> is
+	 * ignored for existing indices.
+	 *
+	 * @param directory - the directory holding the index files
+	 * @param segmentSize - the size of each entry segment, in bytes
+	 * @param bucketBits - log2 of the number of buckets
+	 * @throws IOException - if the index cannot be opened
+	 */
+	PositionIndex(Path directory, int segmentSize, int bucketBits)
+			throws IOException {
+		if(bucketBits < 1 || bucketBits > MAX_BUCKET_BITS)
+			throw new IllegalArgumentException("Bucket bits out of range: " + bucketBits);
+
+		Files.createDirectories(directory);
+
+		Path bucketPath = directory.resolve("index.buckets");
+		boolean created = !Files.exists(bucketPath);
+
+		try(FileChannel channel = FileChannel.open(bucketPath,
+				StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			if(!created) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				channel.read(header, 0);
+
+				if(header.getInt(0) != MAGIC)
+					throw new IOException("Not an index file: " + bucketPath);
+
+				bucketBits = header.getInt(4);
+			}
+
+			this.buckets = channel.map(MapMode.READ_WRITE, 0,
+					HEADER_SIZE + ((long) Long.BYTES << bucketBits));
+		}
+
+		if(created) {
+			buckets.putInt(0, MAGIC);
+			buckets.putInt(4, bucketBits);
+		}
+
+		this.bucketBits = bucketBits;
+		this.entries = new MappedSegments(directory, "index", segmentSize);
+	}
+
+	private int bucketOffset(long key) {
+		return (HEADER_SIZE + (int) (key >>> (64 - bucketBits)) * Long.BYTES);
+	}
+
+	/**
+	 * Records that the position with the given key occurred in the given
+	 * game after <tt>ply</tt> moves.
+	 *
+	 * @throws IOException - if a new entry segment cannot be created
+	 */
+	synchronized void add(long key, long gameId, int ply) throws IOException {
+		long address = entries.allocate(ENTRY_SIZE);
+		ByteBuffer segment = entries.segment(MappedSegments.segmentOf(address));
+		int offset = MappedSegments.offsetOf(address);
+		int bucket = bucketOffset(key);
+
+		segment.putLong(offset, key);
+		segment.putLong(offset + 8, gameId);
+		segment.putLong(offset + 16, buckets.getLong(bucket));
+		segment.putInt(offset + 24, ply);
+		entries.publish();
+		buckets.putLong(bucket, address);
+	}
+
+	/**
+	 * Passes every recorded occurrence of the position with the given key to
+	 * the visitor, newest first, till it asks to stop.
+	 *
+	 * @param key - the Zobrist key of the position
+	 * @param visitor - receives the occurrences
+	 * @return the number of occurrences visited
+	 */
+	int forEach(long key, OccurrenceVisitor visitor) {
+		int visited = 0;
+		long head = buckets.getLong(bucketOffset(key));
+
+		// Entries are published before they are linked, so the head is
+		// normally below the published address read after it; only entries
+		// below that address are sure to be seen in full.
+		long published = entries.published();
+
+		for(long address = head; address != 0 && address < published; ) {
+			ByteBuffer segment = entries.segment(MappedSegments.segmentOf(address));
+			int offset = MappedSegments.offsetOf(address);
+
+			if(segment.getLong(offset) == key) {
+				++(visited);
+
+				if(!visitor.visit(segment.getLong(offset + 8), segment.getInt(offset + 24)))
+					break;
+			}
+
+			address = segment.getLong(offset + 16);
+		}
+
+		return (visited);
+	}
+
+	/**
+	 * Writes all changes to the index to the storage device.
+	 */
+	void force() {
+		buckets.force();
+		entries.force();
+	}
+
+	@Override
+	public void close() {
+		buckets.force();
+		entries.close();
+	}
+
+}
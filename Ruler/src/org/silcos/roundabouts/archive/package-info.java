@@ -0,0 +1,8 @@
+/**
+ * Persistent storage of recorded Permainan games.
+ */
+/**
+ * @author Shukant Pal
+ *
+ */
+package org.silcos.roundabouts.archive;
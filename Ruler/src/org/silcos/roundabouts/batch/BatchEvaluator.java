@@ -0,0 +1,337 @@
+package org.silcos.roundabouts.batch;
+
+import org.silcos.roundabouts.Board;
+import org.silcos.roundabouts.Circuits;
+import org.silcos.roundabouts.Move;
+import org.silcos.roundabouts.Position;
+import org.silcos.roundabouts.engine.Evaluator;
+
+/**
+ * <p>
+ * Scores blocks of positions held as pebble masks, with the features and
+ * weights of <tt>Evaluator</tt> (and the same scores), but without keeping
+ * any state: each position is evaluated from scratch with word-parallel
+ * bit operations, which suits leaf batches and training pipelines that see
+ * every position only once.
+ *
+ * <p>
+ * Mobility is counted by shifting all the pebbles of a side one step in
+ * each of the eight directions at once. For the circuit features, the
+ * occupancy of each circuit is gathered into a 24-bit word (one bit per
+ * entry) through byte-indexed tables; the walk from a pebble in each
+ * direction then reduces to finding the nearest set bit of the rotated word,
+ * and the points it controls to a range of bits, which is scattered back to
+ * points through tables again.
+ *
+ * <p>
+ * Evaluators hold no mutable state, so one can be shared by any number of
+ * threads.
+ *
+ * @author Shukant Pal
+ */
+public final class BatchEvaluator {
+
+	private static final int RING_LENGTH = Circuits.RING_LENGTH;
+	private static final int RING_BITS = (1 << RING_LENGTH) - 1;
+
+	private static final long BOARD = (1L << Board.arealSize) - 1;
+	private static final long NOT_FIRST_COLUMN;
+	private static final long NOT_LAST_COLUMN;
+
+	/**
+	 * Bits of the circuit entries of the points in each byte of a pebble
+	 * mask, indexed by <tt>[ring][byte][value]</tt>.
+	 */
+	private static final int[][][] entryTables;
+
+	/**
+	 * Points of the circuit entries in each byte of a circuit word, indexed
+	 * by <tt>[ring][byte][value]</tt>.
+	 */
+	private static final long[][][] pointTables;
+
+	/**
+	 * Bits of the entries after which a circuit goes through a connector.
+	 */
+	private static final int[] loopWords = new int[2];
+
+	/**
+	 * Bits of all the entries of the point at each entry, indexed by
+	 * <tt>[ring][entry]</tt>.
+	 */
+	private static final int[][] sameWords = new int[2][RING_LENGTH];
+
+	static {
+		long firstColumn = 0, lastColumn = 0;
+
+		for(int row = 0; row < Board.linearSize; row++) {
+			firstColumn |= Position.bit(Move.cellOf(row, 0));
+			lastColumn |= Position.bit(Move.cellOf(row, Board.linearSize - 1));
+		}
+
+		NOT_FIRST_COLUMN = BOARD & ~firstColumn;
+		NOT_LAST_COLUMN = BOARD & ~lastColumn;
+
+		int maskBytes = (Board.arealSize + 7) / 8, wordBytes = (RING_LENGTH + 7) / 8;
+
+		entryTables = new int[2][maskBytes][256];
+		pointTables = new long[2][wordBytes][256];
+
+		for(int ring = Circuits.INNER; ring <= Circuits.OUTER; ring++) {
+			for(int entry = 0; entry < RING_LENGTH; entry++) {
+				int cell = Circuits.cellAt(ring, entry);
+
+				for(int value = 0; value < 256; value++) {
+					if((value & (1 << (cell & 7))) != 0)
+						entryTables[ring][cell >>> 3][value] |= 1 << entry;
+
+					if((value & (1 << (entry & 7))) != 0)
+						pointTables[ring][entry >>> 3][value] |= Position.bit(cell);
+				}
+
+				if(Circuits.loopAfter(ring, entry))
+					loopWords[ring] |= 1 << entry;
+
+				for(int other : Circuits.occurrencesOf(ring, cell)) {
+					sameWords[ring][entry] |= 1 << other;
+				}
+			}
+		}
+	}
+
+	private final int[] weights;
+
+	/**
+	 * Constructs an evaluator with the default weights of <tt>Evaluator</tt>.
+	 */
+	public BatchEvaluator() {
+		this(Evaluator.defaultWeights());
+	}
+
+	/**
+	 * Constructs an evaluator with the given weights, indexed by the
+	 * features of <tt>Evaluator</tt>.
+	 *
+	 * @param weights - the weight of each feature (copied)
+	 */
+	public BatchEvaluator(int[] weights) {
+		if(weights.length != Evaluator.FEATURE_COUNT)
+			throw new IllegalArgumentException("Expected " + Evaluator.FEATURE_COUNT + " weights");
+
+		this.weights = weights.clone();
+	}
+
+	/**
+	 * Scores the positions from <tt>from</tt> (inclusive) to <tt>to</tt>
+	 * (exclusive) of the given arrays, each for its side to move.
+	 *
+	 * @param starterPebbles - points held by the starter player, by position
+	 * @param otherPebbles - points held by the other player, by position
+	 * @param sideToMove - the side to move, by position
+	 * @param scores - filled with the scores, by position
+	 * @param from - index of the first position
+	 * @param to - index after the last position
+	 */
+	public void evaluate(long[] starterPebbles, long[] otherPebbles, byte[] sideToMove,
+			int[] scores, int from, int to) {
+		for(int index = from; index < to; index++) {
+			scores[index] = (sideToMove[index] == Position.STARTER)
+					? evaluate(starterPebbles[index], otherPebbles[index])
+					: evaluate(otherPebbles[index], starterPebbles[index]);
+		}
+	}
+
+	/**
+	 * Scores the current positions of the games of the given batch, each for
+	 * its side to move.
+	 *
+	 * @param batch - the games
+	 * @param scores - filled with the scores, by game
+	 */
+	public void evaluate(GameBatch batch, int[] scores) {
+		for(int game = 0; game < batch.size(); game++) {
+			int side = batch.sideToMove(game);
+
+			scores[game] = evaluate(batch.pebbles(game, side), batch.pebbles(game, side ^ 1));
+		}
+	}
+
+	/**
+	 * Returns the score of the position with the given pebbles, for the side
+	 * holding <tt>own</tt>.
+	 *
+	 * @param own - points held by the side to move
+	 * @param opponents - points held by the other side
+	 */
+	public int evaluate(long own, long opponents) {
+		int score = weights[Evaluator.MATERIAL] * (Long.bitCount(own) - Long.bitCount(opponents));
+		long inner = Circuits.ringMask(Circuits.INNER), outer = Circuits.ringMask(Circuits.OUTER);
+		long empty = BOARD & ~(own | opponents);
+
+		score += weights[Evaluator.INNER_PRESENCE]
+				* (Long.bitCount(own & inner) - Long.bitCount(opponents & inner));
+		score += weights[Evaluator.OUTER_PRESENCE]
+				* (Long.bitCount(own & outer) - Long.bitCount(opponents & outer));
+		score += weights[Evaluator.MOBILITY] * (mobility(own, empty) - mobility(opponents, empty));
+
+		if(weights[Evaluator.ATTACKED] != 0 || weights[Evaluator.CONTROL] != 0) {
+			int attacked = 0, control = 0;
+
+			for(int ring = Circuits.INNER; ring <= Circuits.OUTER; ring++) {
+				int ownWord = ringWord(ring, own), opponentWord = ringWord(ring, opponents);
+				long ownMaps = circuitMaps(ring, ownWord, opponentWord);
+				long opponentMaps = circuitMaps(ring, opponentWord, ownWord);
+
+				attacked += (int) (ownMaps >>> 32) - (int) (opponentMaps >>> 32);
+				control += (int) ownMaps - (int) opponentMaps;
+			}
+
+			score += weights[Evaluator.ATTACKED] * attacked + weights[Evaluator.CONTROL] * control;
+		}
+
+		return (score);
+	}
+
+	/**
+	 * Fills the given array with the features of the position with the given
+	 * pebbles, as the differences between the side holding <tt>own</tt> and
+	 * the other (like <tt>Evaluator.features</tt>).
+	 *
+	 * @param own - points held by the side to move
+	 * @param opponents - points held by the other side
+	 * @param features - array of at least <tt>Evaluator.FEATURE_COUNT</tt>
+	 * 				entries
+	 */
+	public static void features(long own, long opponents, int[] features) {
+		long inner = Circuits.ringMask(Circuits.INNER), outer = Circuits.ringMask(Circuits.OUTER);
+		long empty = BOARD & ~(own | opponents);
+		int attacked = 0, control = 0;
+
+		for(int ring = Circuits.INNER; ring <= Circuits.OUTER; ring++) {
+			int ownWord = ringWord(ring, own), opponentWord = ringWord(ring, opponents);
+			long ownMaps = circuitMaps(ring, ownWord, opponentWord);
+			long opponentMaps = circuitMaps(ring, opponentWord, ownWord);
+
+			attacked += (int) (ownMaps >>> 32) - (int) (opponentMaps >>> 32);
+			control += (int) ownMaps - (int) opponentMaps;
+		}
+
+		features[Evaluator.MATERIAL] = Long.bitCount(own) - Long.bitCount(opponents);
+		features[Evaluator.INNER_PRESENCE] = Long.bitCount(own & inner)
+				- Long.bitCount(opponents & inner);
+		features[Evaluator.OUTER_PRESENCE] = Long.bitCount(own & outer)
+				- Long.bitCount(opponents & outer);
+		features[Evaluator.MOBILITY] = mobility(own, empty) - mobility(opponents, empty);
+		features[Evaluator.ATTACKED] = attacked;
+		features[Evaluator.CONTROL] = control;
+	}
+
+	/**
+	 * Returns the number of steps the given pebbles can make to the given
+	 * empty points, counting the eight directions one shift each.
+	 */
+	private static int mobility(long pebbles, long empty) {
+		long east = pebbles & NOT_LAST_COLUMN, west = pebbles & NOT_FIRST_COLUMN;
+		int linear = Board.linearSize;
+
+		return (Long.bitCount((east << 1) & empty) + Long.bitCount((west >>> 1) & empty)
+				+ Long.bitCount((pebbles << linear) & empty)
+				+ Long.bitCount((pebbles >>> linear) & empty)
+				+ Long.bitCount((east << (linear + 1)) & empty)
+				+ Long.bitCount((west << (linear - 1)) & empty)
+				+ Long.bitCount((east >>> (linear - 1)) & empty)
+				+ Long.bitCount((west >>> (linear + 1)) & empty));
+	}
+
+	/**
+	 * Gathers the bits of the entries of the given circuit holding the given
+	 * points.
+	 */
+	private static int ringWord(int ring, long points) {
+		int[][] tables = entryTables[ring];
+		int word = 0;
+
+		for(int index = 0; index < tables.length; index++) {
+			word |= tables[index][(int) (points >>> (index << 3)) & 0xFF];
+		}
+
+		return (word);
+	}
+
+	/**
+	 * Scatters the given bits of entries of the given circuit back to the
+	 * points at those entries.
+	 */
+	private static long points(int ring, int word) {
+		long[][] tables = pointTables[ring];
+		long points = 0;
+
+		for(int index = 0; index < tables.length; index++) {
+			points |= tables[index][(word >>> (index << 3)) & 0xFF];
+		}
+
+		return (points);
+	}
+
+	/**
+	 * Rotates the given circuit word so that entry <tt>entry</tt> comes at
+	 * bit 0.
+	 */
+	private static int rotate(int word, int entry) {
+		return (((word >>> entry) | (word << (RING_LENGTH - entry))) & RING_BITS);
+	}
+
+	/**
+	 * Bits <tt>low</tt> (inclusive) to <tt>high</tt> (exclusive).
+	 */
+	private static int range(int low, int high) {
+		return ((low >= high) ? 0 : ((1 << high) - 1) & ~((1 << low) - 1));
+	}
+
+	/**
+	 * Walks the given circuit from each entry of <tt>ownWord</tt> in both
+	 * directions, as <tt>AttackMaps</tt> does, and returns the number of
+	 * opponent pebbles attacked in the upper half and the number of empty
+	 * points controlled in the lower half.
+	 */
+	private static long circuitMaps(int ring, int ownWord, int opponentWord) {
+		int occupied = ownWord | opponentWord;
+		int attacked = 0, controlled = 0;
+
+		for(int sources = ownWord; sources != 0; sources &= sources - 1) {
+			int entry = Integer.numberOfTrailingZeros(sources);
+			int same = sameWords[ring][entry];
+			int blockers = rotate(occupied & ~same, entry);
+			int loops = rotate(loopWords[ring], entry);
+
+			/*
+			 * In the rotated words, bit j is the entry j steps forward, and
+			 * RING_LENGTH - j steps backward. A blocker j steps away is
+			 * captured if a loop is passed within those j steps; the points
+			 * after the first loop and before the blocker are controlled.
+			 */
+			int forward = (blockers == 0) ? RING_LENGTH : Integer.numberOfTrailingZeros(blockers);
+			int forwardLoop = Integer.numberOfTrailingZeros(loops) + 1;
+			int backward = (blockers == 0) ? RING_LENGTH
+					: RING_LENGTH - (31 - Integer.numberOfLeadingZeros(blockers));
+			int backwardLoop = RING_LENGTH - (31 - Integer.numberOfLeadingZeros(loops));
+			int hits = 0;
+
+			if(forward < RING_LENGTH && forwardLoop <= forward)
+				hits |= 1 << forward;
+
+			if(backward < RING_LENGTH && backwardLoop <= backward)
+				hits |= 1 << (RING_LENGTH - backward);
+
+			int reach = range(forwardLoop, forward)
+					| range(RING_LENGTH - backward + 1, RING_LENGTH - backwardLoop + 1);
+
+			attacked |= rotate(hits, RING_LENGTH - entry);
+			controlled |= rotate(reach, RING_LENGTH - entry) & ~same;
+		}
+
+		return (((long) Long.bitCount(points(ring, attacked & opponentWord)) << 32)
+				| Long.bitCount(points(ring, controlled)));
+	}
+
+}
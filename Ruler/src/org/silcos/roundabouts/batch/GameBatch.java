@@ -0,0 +1,347 @@
+package org.silcos.roundabouts.batch;
+
+import org.silcos.roundabouts.DrawRule;
+import org.silcos.roundabouts.GameOverReason;
+import org.silcos.roundabouts.GameResult;
+import org.silcos.roundabouts.Move;
+import org.silcos.roundabouts.Position;
+
+/**
+ * <p>
+ * Holds many games in struct-of-arrays form - a pebble mask for each side,
+ * the side to move, ply counters and results in primitive arrays indexed
+ * by game - and steps all of them with one vector of actions per call, as
+ * reinforcement learning and bulk simulation want. Moves follow the rules
+ * of <tt>Board.movePebble</tt> and the circuits (as <tt>Position</tt> does);
+ * no per-game objects are created and no events are fired.
+ *
+ * <p>
+ * A game ends when the side to move has no pebbles left (a win for the
+ * other), has no legal moves, or is drawn by the <tt>DrawRule</tt>; an
+ * illegal action loses the game for the side that took it. Repetitions are
+ * detected within the plies since the last capture, so a repetition rule
+ * needs a quiet-ply limit here (which bounds the keys kept per game).
+ * Finished games ignore their actions until they are <tt>reset</tt>.
+ *
+ * <p>
+ * Games are independent, so disjoint ranges of games may be stepped from
+ * different threads at once; a batch is not otherwise thread-safe.
+ *
+ * @author Shukant Pal
+ */
+public final class GameBatch {
+
+	/**
+	 * Reward for the side that took an action which won the game, lost it
+	 * (by being illegal) or neither.
+	 */
+	public static final float WIN_REWARD = 1;
+	public static final float LOSS_REWARD = -1;
+	public static final float NO_REWARD = 0;
+
+	private static final long INITIAL_STARTER;
+	private static final long INITIAL_OTHER;
+
+	static {
+		Position initial = Position.initial();
+
+		INITIAL_STARTER = initial.pebbles(Position.STARTER);
+		INITIAL_OTHER = initial.pebbles(Position.OTHER);
+	}
+
+	private final int size;
+	private final DrawRule drawRule;
+	private final int window;
+
+	/**
+	 * Pebbles of game <tt>g</tt> and side <tt>s</tt> at <tt>2 * g + s</tt>.
+	 */
+	private final long[] pebbles;
+	private final byte[] sideToMove;
+	private final int[] plies;
+	private final int[] quietPlies;
+	private final byte[] results;
+	private final byte[] reasons;
+
+	/**
+	 * Keys of the last <tt>window</tt> positions of each game, by ply modulo
+	 * the window (null without a repetition rule).
+	 */
+	private final long[] keys;
+
+	/**
+	 * Constructs a batch of games in the initial position.
+	 *
+	 * @param size - the number of games
+	 * @param drawRule - the rule by which games are drawn; if it has a
+	 * 				repetition limit, it must have a quiet-ply limit too
+	 */
+	public GameBatch(int size, DrawRule drawRule) {
+		if(size < 1)
+			throw new IllegalArgumentException("Empty batch");
+		else if(drawRule.repetitions() > 0 && drawRule.quietPlies() == 0)
+			throw new IllegalArgumentException("Repetitions need a quiet-ply limit in a batch");
+
+		this.size = size;
+		this.drawRule = drawRule;
+		this.window = drawRule.quietPlies() + 1;
+		this.pebbles = new long[2 * size];
+		this.sideToMove = new byte[size];
+		this.plies = new int[size];
+		this.quietPlies = new int[size];
+		this.results = new byte[size];
+		this.reasons = new byte[size];
+		this.keys = (drawRule.repetitions() > 0) ? new long[size * window] : null;
+
+		resetAll();
+	}
+
+	/**
+	 * Returns the number of games in this batch.
+	 */
+	public int size() {
+		return (size);
+	}
+
+	/**
+	 * Returns the rule by which the games are drawn.
+	 */
+	public DrawRule drawRule() {
+		return (drawRule);
+	}
+
+	/**
+	 * Puts all the games back in the initial position.
+	 */
+	public void resetAll() {
+		for(int game = 0; game < size; game++) {
+			reset(game);
+		}
+	}
+
+	/**
+	 * Puts the given game back in the initial position.
+	 *
+	 * @param game - index of the game
+	 */
+	public void reset(int game) {
+		set(game, INITIAL_STARTER, INITIAL_OTHER, Position.STARTER);
+	}
+
+	/**
+	 * Sets up the given game in the given position, e.g. to start games
+	 * from varied openings.
+	 *
+	 * @param game - index of the game
+	 * @param position - the position to set up (its history is ignored)
+	 */
+	public void set(int game, Position position) {
+		set(game, position.pebbles(Position.STARTER), position.pebbles(Position.OTHER),
+				position.sideToMove());
+	}
+
+	private void set(int game, long starterPebbles, long otherPebbles, int side) {
+		pebbles[2 * game] = starterPebbles;
+		pebbles[2 * game + 1] = otherPebbles;
+		sideToMove[game] = (byte) side;
+		plies[game] = 0;
+		quietPlies[game] = 0;
+		results[game] = (byte) GameResult.UNFINISHED.ordinal();
+		reasons[game] = -1;
+
+		if(keys != null)
+			keys[game * window] = Position.keyOf(starterPebbles, otherPebbles, side);
+
+		checkOver(game);
+	}
+
+	/**
+	 * Copies the given game into the given position.
+	 *
+	 * @param game - index of the game
+	 * @param position - the position to fill
+	 */
+	public void get(int game, Position position) {
+		position.set(pebbles[2 * game], pebbles[2 * game + 1], sideToMove[game]);
+	}
+
+	/**
+	 * Returns the points held by the given side in the given game.
+	 */
+	public long pebbles(int game, int side) {
+		return (pebbles[2 * game + side]);
+	}
+
+	/**
+	 * Returns the side to move in the given game.
+	 */
+	public int sideToMove(int game) {
+		return (sideToMove[game]);
+	}
+
+	/**
+	 * Returns the number of plies played in the given game.
+	 */
+	public int plies(int game) {
+		return (plies[game]);
+	}
+
+	/**
+	 * Returns the result of the given game.
+	 */
+	public GameResult result(int game) {
+		return (GameResult.values()[results[game]]);
+	}
+
+	/**
+	 * Returns why the given game ended, or null if it is unfinished.
+	 */
+	public GameOverReason overReason(int game) {
+		return ((reasons[game] < 0) ? null : GameOverReason.values()[reasons[game]]);
+	}
+
+	/**
+	 * Returns whether the given game has ended.
+	 */
+	public boolean isOver(int game) {
+		return (results[game] != GameResult.UNFINISHED.ordinal());
+	}
+
+	/**
+	 * Returns whether the given move is legal in the given game.
+	 *
+	 * @param game - index of the game
+	 * @param move - the encoded move
+	 */
+	public boolean isLegal(int game, int move) {
+		int side = sideToMove[game];
+
+		return (!isOver(game) && Position.isLegal(pebbles[2 * game + side],
+				pebbles[2 * game + (side ^ 1)], move));
+	}
+
+	/**
+	 * Steps all the games, playing one action (an encoded move) in each.
+	 *
+	 * @param actions - the move of each game
+	 * @param rewards - filled with the reward of each game for the side that
+	 * 				moved in it
+	 * @param dones - filled with whether each game is over
+	 */
+	public void step(int[] actions, float[] rewards, boolean[] dones) {
+		step(actions, rewards, dones, 0, size);
+	}
+
+	/**
+	 * Steps the games from <tt>from</tt> (inclusive) to <tt>to</tt>
+	 * (exclusive), like <tt>step(int[], float[], boolean[])</tt>. The
+	 * arrays are indexed by game, not from <tt>from</tt>.
+	 */
+	public void step(int[] actions, float[] rewards, boolean[] dones, int from, int to) {
+		if(from < 0 || to > size || from > to)
+			throw new IndexOutOfBoundsException("Bad range: " + from + ", " + to);
+
+		for(int game = from; game < to; game++) {
+			rewards[game] = isOver(game) ? NO_REWARD : play(game, actions[game]);
+			dones[game] = isOver(game);
+		}
+	}
+
+	/**
+	 * Plays the given move in the given unfinished game, and returns the
+	 * reward for the side that moved.
+	 */
+	private float play(int game, int move) {
+		int side = sideToMove[game];
+		long own = pebbles[2 * game + side], opponents = pebbles[2 * game + (side ^ 1)];
+
+		if(!Position.isLegal(own, opponents, move)) {
+			end(game, (side == Position.STARTER) ? GameResult.OTHER_WIN
+					: GameResult.STARTER_WIN, GameOverReason.ILLEGAL_MOVE);
+			return (LOSS_REWARD);
+		}
+
+		long target = Position.bit(Move.target(move));
+		boolean capture = (opponents & target) != 0;
+
+		pebbles[2 * game + side] = own ^ Position.bit(Move.source(move)) ^ target;
+		pebbles[2 * game + (side ^ 1)] = opponents & ~target;
+		sideToMove[game] = (byte) (side ^ 1);
+		++(plies[game]);
+		quietPlies[game] = capture ? 0 : quietPlies[game] + 1;
+
+		if(keys != null)
+			keys[game * window + plies[game] % window] = Position.keyOf(
+					pebbles[2 * game], pebbles[2 * game + 1], sideToMove[game]);
+
+		checkOver(game);
+
+		return ((results[game] == GameResult.STARTER_WIN.ordinal() && side == Position.STARTER) ||
+				(results[game] == GameResult.OTHER_WIN.ordinal() && side == Position.OTHER)
+				? WIN_REWARD : NO_REWARD);
+	}
+
+	/**
+	 * Ends the given game if its current position is won or drawn.
+	 */
+	private void checkOver(int game) {
+		int side = sideToMove[game];
+		long own = pebbles[2 * game + side], opponents = pebbles[2 * game + (side ^ 1)];
+
+		if(own == 0)
+			end(game, (side == Position.STARTER) ? GameResult.OTHER_WIN
+					: GameResult.STARTER_WIN, GameOverReason.NO_PEBBLES);
+		else if(keys != null && repetitions(game) + 1 >= drawRule.repetitions())
+			end(game, GameResult.DRAW, GameOverReason.REPETITION);
+		else if(drawRule.quietPlies() > 0 && quietPlies[game] >= drawRule.quietPlies())
+			end(game, GameResult.DRAW, GameOverReason.NO_CAPTURES);
+		else if(!Position.hasMoves(own, opponents))
+			end(game, GameResult.DRAW, GameOverReason.NO_MOVES);
+	}
+
+	/**
+	 * Returns the number of times the current position of the given game
+	 * occurred since its last capture.
+	 */
+	private int repetitions(int game) {
+		int ply = plies[game], earliest = Math.max(0, ply - quietPlies[game]);
+		long key = keys[game * window + ply % window];
+		int count = 0;
+
+		for(int earlier = ply - 2; earlier >= earliest; earlier -= 2) {
+			if(keys[game * window + earlier % window] == key)
+				++(count);
+		}
+
+		return (count);
+	}
+
+	private void end(int game, GameResult result, GameOverReason reason) {
+		results[game] = (byte) result.ordinal();
+		reasons[game] = (byte) reason.ordinal();
+	}
+
+	/**
+	 * Fills the given array with the results of the games, as the ordinals
+	 * of <tt>GameResult</tt>.
+	 *
+	 * @param out - array of at least <tt>size</tt> entries
+	 */
+	public void results(byte[] out) {
+		System.arraycopy(results, 0, out, 0, size);
+	}
+
+	@Override
+	public String toString() {
+		int over = 0;
+
+		for(int game = 0; game < size; game++) {
+			if(isOver(game))
+				++(over);
+		}
+
+		return ("GameBatch[" + size + " games, " + over + " over, " + drawRule.repetitions()
+				+ "-fold / " + drawRule.quietPlies() + " quiet plies]");
+	}
+
+}
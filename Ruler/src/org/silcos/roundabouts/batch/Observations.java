@@ -0,0 +1,174 @@
+package org.silcos.roundabouts.batch;
+
+import java.nio.ByteBuffer;
+
+import org.silcos.roundabouts.Board;
+import org.silcos.roundabouts.Circuits;
+import org.silcos.roundabouts.Position;
+
+/**
+ * <p>
+ * Writes positions as the observation planes training code takes, straight
+ * from the pebble masks into a buffer supplied by the caller - typically a
+ * direct <tt>ByteBuffer</tt> shared with native code - without building
+ * any objects on the way.
+ *
+ * <p>
+ * An observation is <tt>PLANE_COUNT</tt> planes of <tt>Board.arealSize</tt>
+ * 32-bit floats each, in the byte order of the buffer, plane after plane
+ * and each plane in cell order (row by row). A value is 1 where the plane
+ * holds and 0 elsewhere. The planes are, from the side to move's view:
+ * <ol start="0">
+ * <li><tt>OWN</tt>: the pebbles of the side to move,
+ * <li><tt>OPPONENT</tt>: the pebbles of the other side,
+ * <li><tt>INNER_RING</tt> and <tt>OUTER_RING</tt>: the points on each
+ * circuit (the same in every position),
+ * <li><tt>SOURCES</tt>: the pebbles having a legal move,
+ * <li><tt>STEP_TARGETS</tt>: the points a pebble can step to,
+ * <li><tt>CAPTURE_TARGETS</tt>: the opponent pebbles that can be captured.
+ * </ol>
+ * A batch of observations is laid out game after game, <tt>
+ * OBSERVATION_BYTES</tt> apart.
+ *
+ * @author Shukant Pal
+ */
+public final class Observations {
+
+	public static final int OWN = 0;
+	public static final int OPPONENT = 1;
+	public static final int INNER_RING = 2;
+	public static final int OUTER_RING = 3;
+	public static final int SOURCES = 4;
+	public static final int STEP_TARGETS = 5;
+	public static final int CAPTURE_TARGETS = 6;
+
+	public static final int PLANE_COUNT = 7;
+
+	/**
+	 * Size of one plane, and of one observation, in bytes.
+	 */
+	public static final int PLANE_BYTES = Board.arealSize * Float.BYTES;
+	public static final int OBSERVATION_BYTES = PLANE_COUNT * PLANE_BYTES;
+
+	private Observations() {
+	}
+
+	/**
+	 * Writes the observation of the given position into the buffer.
+	 *
+	 * @param position - the position to observe
+	 * @param buffer - the buffer to write to; its position is not changed
+	 * @param offset - index in the buffer to write the observation at
+	 */
+	public static void write(Position position, ByteBuffer buffer, int offset) {
+		int side = position.sideToMove();
+
+		write(position.pebbles(side), position.pebbles(side ^ 1), true, buffer, offset);
+	}
+
+	/**
+	 * Writes the observations of the games of the given batch into the
+	 * buffer, one after another. Finished games have empty move planes.
+	 *
+	 * @param batch - the games to observe
+	 * @param buffer - the buffer to write to; its position is not changed
+	 * @param offset - index in the buffer to write the first observation at
+	 */
+	public static void write(GameBatch batch, ByteBuffer buffer, int offset) {
+		write(batch, 0, batch.size(), buffer, offset);
+	}
+
+	/**
+	 * Writes the observations of the games from <tt>from</tt> (inclusive) to
+	 * <tt>to</tt> (exclusive) of the given batch into the buffer, one after
+	 * another, e.g. for threads sharing the work on disjoint ranges.
+	 *
+	 * @param batch - the games to observe
+	 * @param from - index of the first game
+	 * @param to - index after the last game
+	 * @param buffer - the buffer to write to; its position is not changed
+	 * @param offset - index in the buffer to write the observation of game
+	 * 				<tt>from</tt> at
+	 */
+	public static void write(GameBatch batch, int from, int to, ByteBuffer buffer, int offset) {
+		if(from < 0 || to > batch.size() || from > to)
+			throw new IndexOutOfBoundsException("Bad range: " + from + ", " + to);
+		else if(offset < 0 || offset + (long) (to - from) * OBSERVATION_BYTES > buffer.limit())
+			throw new IndexOutOfBoundsException("Buffer too small for " + (to - from)
+					+ " observations at " + offset);
+
+		for(int game = from; game < to; game++) {
+			int side = batch.sideToMove(game);
+
+			write(batch.pebbles(game, side), batch.pebbles(game, side ^ 1), !batch.isOver(game),
+					buffer, offset + (game - from) * OBSERVATION_BYTES);
+		}
+	}
+
+	/**
+	 * Writes the observation of the position with the given pebbles into
+	 * the buffer.
+	 *
+	 * @param own - points held by the side to move
+	 * @param opponents - points held by the other side
+	 * @param withMoves - whether to fill the move planes
+	 * @param buffer - the buffer to write to
+	 * @param offset - index in the buffer to write the observation at
+	 */
+	private static void write(long own, long opponents, boolean withMoves,
+			ByteBuffer buffer, int offset) {
+		long sources = 0, stepTargets = 0, captureTargets = 0;
+
+		if(withMoves) {
+			long empty = ~(own | opponents);
+
+			for(long mask = own; mask != 0; mask &= mask - 1) {
+				int source = Long.numberOfTrailingZeros(mask);
+				long steps = Position.neighboursOf(source) & empty;
+				long captures = capturesOf(own, opponents, source);
+
+				if((steps | captures) != 0)
+					sources |= Position.bit(source);
+
+				stepTargets |= steps;
+				captureTargets |= captures;
+			}
+		}
+
+		writePlane(own, buffer, offset + OWN * PLANE_BYTES);
+		writePlane(opponents, buffer, offset + OPPONENT * PLANE_BYTES);
+		writePlane(Circuits.ringMask(Circuits.INNER), buffer, offset + INNER_RING * PLANE_BYTES);
+		writePlane(Circuits.ringMask(Circuits.OUTER), buffer, offset + OUTER_RING * PLANE_BYTES);
+		writePlane(sources, buffer, offset + SOURCES * PLANE_BYTES);
+		writePlane(stepTargets, buffer, offset + STEP_TARGETS * PLANE_BYTES);
+		writePlane(captureTargets, buffer, offset + CAPTURE_TARGETS * PLANE_BYTES);
+	}
+
+	/**
+	 * Returns the mask of the opponent pebbles the pebble at <tt>source</tt>
+	 * can capture.
+	 */
+	private static long capturesOf(long own, long opponents, int source) {
+		long captures = 0;
+
+		for(int ring = Circuits.INNER; ring <= Circuits.OUTER; ring++) {
+			for(int entry : Circuits.occurrencesOf(ring, source)) {
+				for(int step = -1; step <= 1; step += 2) {
+					int target = Position.captureTarget(own, opponents, source, ring, entry, step);
+
+					if(target != -1)
+						captures |= Position.bit(target);
+				}
+			}
+		}
+
+		return (captures);
+	}
+
+	private static void writePlane(long mask, ByteBuffer buffer, int offset) {
+		for(int cell = 0; cell < Board.arealSize; cell++) {
+			buffer.putFloat(offset + cell * Float.BYTES, (float) ((mask >>> cell) & 1));
+		}
+	}
+
+}
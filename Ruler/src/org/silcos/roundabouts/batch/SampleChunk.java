@@ -0,0 +1,283 @@
+package org.silcos.roundabouts.batch;
+
+import java.nio.ByteBuffer;
+
+import org.silcos.roundabouts.Move;
+import org.silcos.roundabouts.Position;
+
+/**
+ * <p>
+ * A chunk of training samples - a position, the policy the search found
+ * for it and the outcome of the game it occurred in - held column by column
+ * in primitive arrays, which is also how chunks are stored by <tt>
+ * SampleWriter</tt>. A chunk is meant to be reused: <tt>clear</tt> it, or
+ * let <tt>SampleReader</tt> refill it, instead of allocating another.
+ *
+ * <p>
+ * The policy of a sample is up to <tt>POLICY_SIZE</tt> moves with their
+ * weights (summing to 1), best first; unused slots hold <tt>Move.NONE</tt>
+ * and weight 0. The outcome is from the side to move's view: 1 for a win,
+ * 0 for a draw and -1 for a loss.
+ *
+ * @author Shukant Pal
+ */
+public final class SampleChunk {
+
+	public static final int POLICY_SIZE = 8;
+
+	/**
+	 * Size in bytes of one sample, with all its columns.
+	 */
+	static final int SAMPLE_BYTES = 2 * Long.BYTES + 2 + Short.BYTES
+			+ POLICY_SIZE * (Short.BYTES + Float.BYTES);
+
+	private final long[] starterPebbles;
+	private final long[] otherPebbles;
+	private final byte[] sideToMove;
+	private final byte[] outcomes;
+	private final short[] scores;
+	private final short[] policyMoves;
+	private final float[] policyWeights;
+
+	private int size;
+
+	/**
+	 * Constructs an empty chunk.
+	 *
+	 * @param capacity - the greatest number of samples it can hold
+	 */
+	public SampleChunk(int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("Bad capacity: " + capacity);
+
+		this.starterPebbles = new long[capacity];
+		this.otherPebbles = new long[capacity];
+		this.sideToMove = new byte[capacity];
+		this.outcomes = new byte[capacity];
+		this.scores = new short[capacity];
+		this.policyMoves = new short[capacity * POLICY_SIZE];
+		this.policyWeights = new float[capacity * POLICY_SIZE];
+	}
+
+	/**
+	 * Returns the greatest number of samples this chunk can hold.
+	 */
+	public int capacity() {
+		return (starterPebbles.length);
+	}
+
+	/**
+	 * Returns the number of samples in this chunk.
+	 */
+	public int size() {
+		return (size);
+	}
+
+	/**
+	 * Returns whether this chunk can't take another sample.
+	 */
+	public boolean isFull() {
+		return (size == capacity());
+	}
+
+	/**
+	 * Removes all the samples.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Appends a sample of the given position, with no policy and a drawn
+	 * outcome; the policy is then filled by <tt>setPolicy</tt> and the
+	 * outcome by <tt>setOutcome</tt>.
+	 *
+	 * @param position - the position
+	 * @param score - the score of the position found by the search, for the
+	 * 				side to move
+	 * @return the index of the sample
+	 */
+	public int add(Position position, int score) {
+		if(isFull())
+			throw new IllegalStateException("Chunk is full");
+
+		int sample = size++;
+
+		starterPebbles[sample] = position.pebbles(Position.STARTER);
+		otherPebbles[sample] = position.pebbles(Position.OTHER);
+		sideToMove[sample] = (byte) position.sideToMove();
+		outcomes[sample] = 0;
+		scores[sample] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score));
+
+		for(int slot = 0; slot < POLICY_SIZE; slot++) {
+			policyMoves[sample * POLICY_SIZE + slot] = (short) Move.NONE;
+			policyWeights[sample * POLICY_SIZE + slot] = 0;
+		}
+
+		return (sample);
+	}
+
+	/**
+	 * Appends a copy of the given sample of another chunk.
+	 *
+	 * @param source - the chunk holding the sample
+	 * @param sample - index of the sample in <tt>source</tt>
+	 */
+	public void add(SampleChunk source, int sample) {
+		if(isFull())
+			throw new IllegalStateException("Chunk is full");
+
+		starterPebbles[size] = source.starterPebbles[sample];
+		otherPebbles[size] = source.otherPebbles[sample];
+		sideToMove[size] = source.sideToMove[sample];
+		outcomes[size] = source.outcomes[sample];
+		scores[size] = source.scores[sample];
+		System.arraycopy(source.policyMoves, sample * POLICY_SIZE, policyMoves,
+				size * POLICY_SIZE, POLICY_SIZE);
+		System.arraycopy(source.policyWeights, sample * POLICY_SIZE, policyWeights,
+				size * POLICY_SIZE, POLICY_SIZE);
+		++(size);
+	}
+
+	/**
+	 * Sets a slot of the policy of the given sample.
+	 *
+	 * @param sample - index of the sample
+	 * @param slot - the slot, from 0 to <tt>POLICY_SIZE - 1</tt>
+	 * @param move - the move
+	 * @param weight - the weight of the move
+	 */
+	public void setPolicy(int sample, int slot, int move, float weight) {
+		policyMoves[sample * POLICY_SIZE + slot] = (short) move;
+		policyWeights[sample * POLICY_SIZE + slot] = weight;
+	}
+
+	/**
+	 * Sets the outcome of the given sample.
+	 *
+	 * @param sample - index of the sample
+	 * @param outcome - 1, 0 or -1 for a win, draw or loss of the side to move
+	 */
+	public void setOutcome(int sample, int outcome) {
+		outcomes[sample] = (byte) outcome;
+	}
+
+	/**
+	 * Returns the points held by the starter player in the given sample.
+	 */
+	public long starterPebbles(int sample) {
+		return (starterPebbles[sample]);
+	}
+
+	/**
+	 * Returns the points held by the other player in the given sample.
+	 */
+	public long otherPebbles(int sample) {
+		return (otherPebbles[sample]);
+	}
+
+	/**
+	 * Returns the side to move in the given sample.
+	 */
+	public int sideToMove(int sample) {
+		return (sideToMove[sample]);
+	}
+
+	/**
+	 * Sets up the position of the given sample in the given position.
+	 */
+	public void position(int sample, Position position) {
+		position.set(starterPebbles[sample], otherPebbles[sample], sideToMove[sample]);
+	}
+
+	/**
+	 * Returns the outcome of the given sample, for the side to move.
+	 */
+	public int outcome(int sample) {
+		return (outcomes[sample]);
+	}
+
+	/**
+	 * Returns the search score of the given sample, for the side to move.
+	 */
+	public int score(int sample) {
+		return (scores[sample]);
+	}
+
+	/**
+	 * Returns the move in the given slot of the policy of the given sample.
+	 */
+	public int policyMove(int sample, int slot) {
+		return (policyMoves[sample * POLICY_SIZE + slot]);
+	}
+
+	/**
+	 * Returns the weight in the given slot of the policy of the given sample.
+	 */
+	public float policyWeight(int sample, int slot) {
+		return (policyWeights[sample * POLICY_SIZE + slot]);
+	}
+
+	/**
+	 * Writes the samples into the given buffer, column by column.
+	 */
+	void writeTo(ByteBuffer buffer) {
+		for(int sample = 0; sample < size; sample++) {
+			buffer.putLong(starterPebbles[sample]);
+		}
+
+		for(int sample = 0; sample < size; sample++) {
+			buffer.putLong(otherPebbles[sample]);
+		}
+
+		buffer.put(sideToMove, 0, size);
+		buffer.put(outcomes, 0, size);
+
+		for(int sample = 0; sample < size; sample++) {
+			buffer.putShort(scores[sample]);
+		}
+
+		for(int slot = 0; slot < size * POLICY_SIZE; slot++) {
+			buffer.putShort(policyMoves[slot]);
+		}
+
+		for(int slot = 0; slot < size * POLICY_SIZE; slot++) {
+			buffer.putFloat(policyWeights[slot]);
+		}
+	}
+
+	/**
+	 * Replaces the samples with the given number of samples read from the
+	 * given buffer, as written by <tt>writeTo</tt>.
+	 */
+	void readFrom(ByteBuffer buffer, int count) {
+		if(count > capacity())
+			throw new IllegalArgumentException("Chunk too small for " + count + " samples");
+
+		for(int sample = 0; sample < count; sample++) {
+			starterPebbles[sample] = buffer.getLong();
+		}
+
+		for(int sample = 0; sample < count; sample++) {
+			otherPebbles[sample] = buffer.getLong();
+		}
+
+		buffer.get(sideToMove, 0, count);
+		buffer.get(outcomes, 0, count);
+
+		for(int sample = 0; sample < count; sample++) {
+			scores[sample] = buffer.getShort();
+		}
+
+		for(int slot = 0; slot < count * POLICY_SIZE; slot++) {
+			policyMoves[slot] = buffer.getShort();
+		}
+
+		for(int slot = 0; slot < count * POLICY_SIZE; slot++) {
+			policyWeights[slot] = buffer.getFloat();
+		}
+
+		size = count;
+	}
+
+}
@@ -0,0 +1,194 @@
+package org.silcos.roundabouts.batch;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * Reads the training samples written by <tt>SampleWriter</tt>, a chunk at
+ * a time. Training streams them sequentially with <tt>readChunk</tt>, or
+ * samples at random by reading randomly chosen chunks (locating a sample's
+ * chunk with <tt>chunkOf</tt>) and picking samples from them; only the index
+ * is kept in memory.
+ *
+ * <p>
+ * Chunks are read with positional reads, so any number of threads can read
+ * from one reader at once, each into its own <tt>SampleChunk</tt>.
+ *
+ * @author Shukant Pal
+ */
+public final class SampleReader implements Closeable {
+
+	private final FileChannel channel;
+	private final int chunkSize;
+
+	private final long[] chunkOffsets;
+
+	/**
+	 * Index of the first sample of each chunk, and the sample count after
+	 * the last chunk.
+	 */
+	private final long[] firstSamples;
+
+	private SampleReader(FileChannel channel) throws IOException {
+		this.channel = channel;
+
+		ByteBuffer header = read(0, SampleWriter.HEADER_SIZE);
+
+		if(header.getInt(0) != SampleWriter.MAGIC)
+			throw new IOException("Not a sample file");
+		else if(header.getInt(4) != SampleChunk.POLICY_SIZE)
+			throw new IOException("Unsupported policy size: " + header.getInt(4));
+
+		this.chunkSize = header.getInt(8);
+
+		if(channel.size() < SampleWriter.HEADER_SIZE + SampleWriter.TRAILER_SIZE)
+			throw new IOException("Incomplete sample file");
+
+		ByteBuffer trailer = read(channel.size() - SampleWriter.TRAILER_SIZE,
+				SampleWriter.TRAILER_SIZE);
+
+		if(trailer.getInt(12) != SampleWriter.MAGIC)
+			throw new IOException("Incomplete sample file");
+
+		int chunkCount = trailer.getInt(8);
+		ByteBuffer index = read(trailer.getLong(0), chunkCount * SampleWriter.INDEX_ENTRY_SIZE);
+
+		this.chunkOffsets = new long[chunkCount];
+		this.firstSamples = new long[chunkCount + 1];
+
+		for(int chunkIdx = 0; chunkIdx < chunkCount; chunkIdx++) {
+			chunkOffsets[chunkIdx] = index.getLong();
+			firstSamples[chunkIdx + 1] = firstSamples[chunkIdx] + index.getInt();
+			index.getInt();
+		}
+	}
+
+	/**
+	 * Opens the given sample file.
+	 *
+	 * @param path - the file to read
+	 * @throws IOException - if the file cannot be read, or is not a complete
+	 * 			sample file
+	 */
+	public static SampleReader open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		try {
+			return (new SampleReader(channel));
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the greatest number of samples in a chunk, which is the
+	 * capacity needed to read chunks.
+	 */
+	public int chunkSize() {
+		return (chunkSize);
+	}
+
+	/**
+	 * Returns a new sample chunk large enough to read any chunk into.
+	 */
+	public SampleChunk newChunk() {
+		return (new SampleChunk(chunkSize));
+	}
+
+	/**
+	 * Returns the number of chunks in the file.
+	 */
+	public int chunkCount() {
+		return (chunkOffsets.length);
+	}
+
+	/**
+	 * Returns the number of samples in the file.
+	 */
+	public long sampleCount() {
+		return (firstSamples[chunkOffsets.length]);
+	}
+
+	/**
+	 * Returns the index (in the file) of the first sample of the given
+	 * chunk.
+	 */
+	public long firstSample(int chunkIdx) {
+		return (firstSamples[chunkIdx]);
+	}
+
+	/**
+	 * Returns the index of the chunk holding the given sample.
+	 *
+	 * @param sample - index of the sample in the file
+	 */
+	public int chunkOf(long sample) {
+		if(sample < 0 || sample >= sampleCount())
+			throw new IndexOutOfBoundsException("No sample " + sample);
+
+		int found = Arrays.binarySearch(firstSamples, sample);
+
+		// Chunks are never empty, so an exact match is the chunk itself.
+		return ((found >= 0) ? found : -found - 2);
+	}
+
+	/**
+	 * Reads the given chunk into the given sample chunk, replacing its
+	 * samples.
+	 *
+	 * @param chunkIdx - index of the chunk
+	 * @param into - the sample chunk to fill, of at least <tt>chunkSize</tt>
+	 * 				samples
+	 * @throws IOException - if the chunk cannot be read or is corrupt
+	 */
+	public void readChunk(int chunkIdx, SampleChunk into) throws IOException {
+		long offset = chunkOffsets[chunkIdx];
+		ByteBuffer header = read(offset, SampleWriter.CHUNK_HEADER_SIZE);
+		int count = header.getInt(0);
+		ByteBuffer compressed = read(offset + SampleWriter.CHUNK_HEADER_SIZE, header.getInt(4));
+		byte[] columns = new byte[count * SampleChunk.SAMPLE_BYTES];
+		Inflater inflater = new Inflater();
+
+		try {
+			inflater.setInput(compressed.array(), 0, compressed.capacity());
+
+			if(inflater.inflate(columns) != columns.length || !inflater.finished())
+				throw new IOException("Corrupt chunk " + chunkIdx);
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt chunk " + chunkIdx, e);
+		} finally {
+			inflater.end();
+		}
+
+		into.readFrom(ByteBuffer.wrap(columns), count);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException("Sample file is truncated");
+		}
+
+		buffer.flip();
+
+		return (buffer);
+	}
+
+}
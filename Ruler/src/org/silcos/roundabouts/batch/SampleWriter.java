@@ -0,0 +1,207 @@
+package org.silcos.roundabouts.batch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * Writes training samples to a file of compressed chunks, for <tt>
+ * SampleReader</tt>. Samples are gathered into a chunk of a fixed number of
+ * samples, which is written (column by column and deflated) when full, so
+ * the memory used doesn't grow with the file and the file is written
+ * sequentially, one chunk at a time.
+ *
+ * <p>
+ * The file begins with a <tt>HEADER_SIZE</tt>-byte header - <tt>[int
+ * magic][int policySize][int chunkSize][int unused]</tt>. Each chunk is
+ * stored as <tt>[int sampleCount][int compressedSize]</tt> followed by the
+ * deflated columns (see <tt>SampleChunk</tt>). After the last chunk comes
+ * the index - <tt>[long offset][int sampleCount][int unused]</tt> for each
+ * chunk - and a trailer, <tt>[long indexOffset][int chunkCount][int
+ * magic]</tt>, written by <tt>close</tt>; a file without the trailer is
+ * incomplete and can't be read.
+ *
+ * <p>
+ * Appending is synchronized, so that self-play threads can share a writer.
+ *
+ * @author Shukant Pal
+ */
+public final class SampleWriter implements Closeable {
+
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	static final int MAGIC = 0x50524D53;
+	static final int HEADER_SIZE = 16;
+	static final int CHUNK_HEADER_SIZE = 8;
+	static final int INDEX_ENTRY_SIZE = 16;
+	static final int TRAILER_SIZE = 16;
+
+	private final FileChannel channel;
+	private final SampleChunk chunk;
+	private final ByteBuffer columns;
+	private final Deflater deflater;
+	private byte[] compressed;
+
+	private long[] chunkOffsets = new long[64];
+	private int[] chunkSamples = new int[64];
+	private int chunkCount;
+	private long sampleCount;
+
+	private SampleWriter(FileChannel channel, int chunkSize) {
+		this.channel = channel;
+		this.chunk = new SampleChunk(chunkSize);
+		this.columns = ByteBuffer.allocate(chunkSize * SampleChunk.SAMPLE_BYTES);
+		this.deflater = new Deflater();
+		this.compressed = new byte[columns.capacity() / 2];
+	}
+
+	/**
+	 * Creates (or replaces) the given sample file, with chunks of the default
+	 * size.
+	 *
+	 * @param path - the file to write
+	 * @throws IOException - if the file cannot be created
+	 */
+	public static SampleWriter create(Path path) throws IOException {
+		return (create(path, DEFAULT_CHUNK_SIZE));
+	}
+
+	/**
+	 * Creates (or replaces) the given sample file. Larger chunks compress
+	 * better, and smaller ones are cheaper to read at random.
+	 *
+	 * @param path - the file to write
+	 * @param chunkSize - the number of samples in each chunk
+	 * @throws IOException - if the file cannot be created
+	 */
+	public static SampleWriter create(Path path, int chunkSize) throws IOException {
+		if(chunkSize < 1)
+			throw new IllegalArgumentException("Bad chunk size: " + chunkSize);
+
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		SampleWriter writer = new SampleWriter(channel, chunkSize);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+		header.putInt(MAGIC).putInt(SampleChunk.POLICY_SIZE).putInt(chunkSize).putInt(0);
+		header.flip();
+
+		try {
+			writer.write(header);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		return (writer);
+	}
+
+	/**
+	 * Returns the number of samples appended so far.
+	 */
+	public synchronized long sampleCount() {
+		return (sampleCount);
+	}
+
+	/**
+	 * Appends all the samples of the given chunk, writing out chunks as they
+	 * fill up.
+	 *
+	 * @param samples - the samples to append
+	 * @throws IOException - if a chunk cannot be written
+	 */
+	public synchronized void append(SampleChunk samples) throws IOException {
+		if(!channel.isOpen())
+			throw new IllegalStateException("Writer is closed");
+
+		for(int sample = 0; sample < samples.size(); sample++) {
+			chunk.add(samples, sample);
+
+			if(chunk.isFull())
+				writeChunk();
+		}
+
+		sampleCount += samples.size();
+	}
+
+	/**
+	 * Writes out the last (partial) chunk, the index and the trailer, and
+	 * closes the file.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(!channel.isOpen())
+			return;
+
+		try {
+			if(chunk.size() > 0)
+				writeChunk();
+
+			ByteBuffer index = ByteBuffer.allocate(chunkCount * INDEX_ENTRY_SIZE + TRAILER_SIZE);
+			long indexOffset = channel.position();
+
+			for(int chunkIdx = 0; chunkIdx < chunkCount; chunkIdx++) {
+				index.putLong(chunkOffsets[chunkIdx]).putInt(chunkSamples[chunkIdx]).putInt(0);
+			}
+
+			index.putLong(indexOffset).putInt(chunkCount).putInt(MAGIC);
+			index.flip();
+			write(index);
+		} finally {
+			deflater.end();
+			channel.close();
+		}
+	}
+
+	/**
+	 * Deflates the columns of the current chunk, writes them out and empties
+	 * the chunk.
+	 */
+	private void writeChunk() throws IOException {
+		columns.clear();
+		chunk.writeTo(columns);
+		deflater.reset();
+		deflater.setInput(columns.array(), 0, columns.position());
+		deflater.finish();
+
+		int compressedSize = 0;
+
+		while(!deflater.finished()) {
+			if(compressedSize == compressed.length)
+				compressed = Arrays.copyOf(compressed, compressed.length * 2);
+
+			compressedSize += deflater.deflate(compressed, compressedSize,
+					compressed.length - compressedSize);
+		}
+
+		if(chunkCount == chunkOffsets.length) {
+			chunkOffsets = Arrays.copyOf(chunkOffsets, chunkCount * 2);
+			chunkSamples = Arrays.copyOf(chunkSamples, chunkCount * 2);
+		}
+
+		chunkOffsets[chunkCount] = channel.position();
+		chunkSamples[chunkCount] = chunk.size();
+		++(chunkCount);
+
+		ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+
+		header.putInt(chunk.size()).putInt(compressedSize);
+		header.flip();
+		write(header);
+		write(ByteBuffer.wrap(compressed, 0, compressedSize));
+		chunk.clear();
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+}
@@ -0,0 +1,315 @@
+package org.silcos.roundabouts.batch;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.silcos.roundabouts.DrawRule;
+import org.silcos.roundabouts.Position;
+import org.silcos.roundabouts.PositionHistory;
+import org.silcos.roundabouts.engine.AnalysisLine;
+import org.silcos.roundabouts.engine.Search;
+import org.silcos.roundabouts.engine.TimeManager;
+import org.silcos.roundabouts.engine.TranspositionTable;
+
+/**
+ * <p>
+ * Plays games of the engine against itself on several threads, without any
+ * <tt>Game</tt> or UI, and records a training sample for every position:
+ * the position, the search's policy - its best lines, weighted by a
+ * softmax of their scores - and the outcome of the game. The samples of
+ * each finished game are appended to a <tt>SampleWriter</tt>, so memory
+ * stays bounded by one game per thread and one chunk.
+ *
+ * <p>
+ * For variety, the first <tt>randomPlies</tt> moves of each game are
+ * drawn from the policy instead of being the best move; game <tt>i</tt>
+ * uses a random generator seeded from the seed and <tt>i</tt>, so a run is
+ * reproducible apart from the order the games finish in. Games reaching
+ * <tt>maxPlies</tt> are scored as draws.
+ *
+ * @author Shukant Pal
+ */
+public final class SelfPlay {
+
+	public static final int DEFAULT_DEPTH = 4;
+	public static final int DEFAULT_LINE_COUNT = 4;
+	public static final int DEFAULT_RANDOM_PLIES = 8;
+	public static final int DEFAULT_MAX_PLIES = 512;
+	public static final double DEFAULT_TEMPERATURE = 100;
+
+	private static final int TABLE_BITS = 18;
+
+	private static final Position INITIAL = Position.initial();
+
+	private final SampleWriter writer;
+
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	private int depth = DEFAULT_DEPTH;
+	private int lineCount = DEFAULT_LINE_COUNT;
+	private int randomPlies = DEFAULT_RANDOM_PLIES;
+	private int maxPlies = DEFAULT_MAX_PLIES;
+	private double temperature = DEFAULT_TEMPERATURE;
+	private DrawRule drawRule = DrawRule.STANDARD;
+	private long seed;
+
+	/*
+	 * The state of a run, shared by its workers.
+	 */
+	private AtomicInteger nextGame;
+	private int gameCount;
+	private final AtomicLong sampleCount = new AtomicLong();
+	private volatile IOException failure;
+
+	/**
+	 * Plays games until there are none left, each with its own search and
+	 * buffers.
+	 */
+	private class Worker extends Thread {
+
+		private final Position position = new Position();
+		private final PositionHistory history = new PositionHistory();
+		private final Search search = new Search(new Position());
+		private final SampleChunk samples = new SampleChunk(maxPlies);
+		private final float[] weights = new float[SampleChunk.POLICY_SIZE];
+
+		Worker(int index) {
+			super("SelfPlay-" + index);
+			search.setTable(new TranspositionTable(TABLE_BITS));
+			search.setDrawRule(drawRule);
+		}
+
+		@Override
+		public void run() {
+			int game;
+
+			try {
+				while(failure == null && (game = nextGame.getAndIncrement()) < gameCount) {
+					play(new Random(seed ^ (game * 0x9E3779B97F4A7C15L)));
+					writer.append(samples);
+					sampleCount.addAndGet(samples.size());
+				}
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+
+		/**
+		 * Plays one game, leaving its samples in <tt>samples</tt>.
+		 */
+		private void play(Random random) {
+			int outcome = 0;// for the starter player
+
+			position.set(INITIAL.pebbles(Position.STARTER), INITIAL.pebbles(Position.OTHER),
+					INITIAL.sideToMove());
+			history.start(position.key());
+			samples.clear();
+			search.table().clear();
+			search.clearHistory();
+
+			for(int ply = 0; ply < maxPlies && !drawRule.isDraw(history); ply++) {
+				search.setPosition(position, history);
+
+				List<AnalysisLine> lines = search.analyze(lineCount, depth,
+						TimeManager.infinite(), null);
+
+				if(lines.isEmpty())
+					break;// no moves, a draw
+
+				int sample = samples.add(position, lines.get(0).score());
+				int chosen = 0;
+
+				policy(lines);
+
+				for(int slot = 0; slot < lines.size(); slot++) {
+					samples.setPolicy(sample, slot, lines.get(slot).move(), weights[slot]);
+				}
+
+				if(ply < randomPlies) {
+					float draw = random.nextFloat();
+
+					while(chosen < lines.size() - 1 && (draw -= weights[chosen]) > 0) {
+						++(chosen);
+					}
+				}
+
+				int mover = position.sideToMove();
+				boolean capture = position.makeMove(lines.get(chosen).move());
+
+				history.push(position.key(), capture);
+
+				if(position.pebbles(mover ^ 1) == 0) {
+					outcome = (mover == Position.STARTER) ? 1 : -1;
+					break;
+				}
+			}
+
+			for(int sample = 0; sample < samples.size(); sample++) {
+				samples.setOutcome(sample, (samples.sideToMove(sample) == Position.STARTER)
+						? outcome : -outcome);
+			}
+		}
+
+		/**
+		 * Fills <tt>weights</tt> with the softmax of the scores of the given
+		 * lines (best first).
+		 */
+		private void policy(List<AnalysisLine> lines) {
+			double best = lines.get(0).score(), total = 0;
+
+			for(int slot = 0; slot < lines.size(); slot++) {
+				weights[slot] = (float) Math.exp((lines.get(slot).score() - best) / temperature);
+				total += weights[slot];
+			}
+
+			for(int slot = 0; slot < lines.size(); slot++) {
+				weights[slot] /= total;
+			}
+		}
+
+	}
+
+	/**
+	 * Constructs a self-play pipeline writing to the given writer, which
+	 * the caller closes when done.
+	 *
+	 * @param writer - the writer to append the samples to
+	 */
+	public SelfPlay(SampleWriter writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Sets the number of games played at once, by default the number of
+	 * processors.
+	 */
+	public void setThreadCount(int threadCount) {
+		if(threadCount < 1)
+			throw new IllegalArgumentException("Bad thread count: " + threadCount);
+
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Sets the depth searched for each move.
+	 */
+	public void setDepth(int depth) {
+		if(depth < 1 || depth > Search.MAX_PLY)
+			throw new IllegalArgumentException("Depth out of range: " + depth);
+
+		this.depth = depth;
+	}
+
+	/**
+	 * Sets the number of best lines searched for the policy of each move.
+	 */
+	public void setLineCount(int lineCount) {
+		if(lineCount < 1 || lineCount > SampleChunk.POLICY_SIZE)
+			throw new IllegalArgumentException("Line count out of range: " + lineCount);
+
+		this.lineCount = lineCount;
+	}
+
+	/**
+	 * Sets the number of plies, at the start of each game, whose moves are
+	 * drawn from the policy.
+	 */
+	public void setRandomPlies(int randomPlies) {
+		this.randomPlies = randomPlies;
+	}
+
+	/**
+	 * Sets the number of plies after which a game is scored as a draw.
+	 */
+	public void setMaxPlies(int maxPlies) {
+		if(maxPlies < 1)
+			throw new IllegalArgumentException("Bad ply limit: " + maxPlies);
+
+		this.maxPlies = maxPlies;
+	}
+
+	/**
+	 * Sets the temperature of the policy softmax, in score units; lower
+	 * temperatures favour the best line more.
+	 */
+	public void setTemperature(double temperature) {
+		if(!(temperature > 0))
+			throw new IllegalArgumentException("Bad temperature: " + temperature);
+
+		this.temperature = temperature;
+	}
+
+	/**
+	 * Sets the rule by which games are drawn.
+	 */
+	public void setDrawRule(DrawRule drawRule) {
+		this.drawRule = drawRule;
+	}
+
+	/**
+	 * Sets the seed the random generators of the games are derived from.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Plays the given number of games, and returns once all of them are
+	 * written.
+	 *
+	 * @param games - the number of games to play
+	 * @return the number of samples written
+	 * @throws IOException - if the samples cannot be written
+	 * @throws InterruptedException - if interrupted while waiting for the
+	 * 			games (which are then played to the end)
+	 */
+	public long play(int games) throws IOException, InterruptedException {
+		Worker[] workers = new Worker[threadCount];
+
+		nextGame = new AtomicInteger();
+		gameCount = games;
+		sampleCount.set(0);
+		failure = null;
+
+		for(int workerIdx = 0; workerIdx < workers.length; workerIdx++) {
+			workers[workerIdx] = new Worker(workerIdx);
+			workers[workerIdx].start();
+		}
+
+		for(Worker worker : workers) {
+			worker.join();
+		}
+
+		if(failure != null)
+			throw failure;
+
+		return (sampleCount.get());
+	}
+
+	/**
+	 * Plays <tt>args[1]</tt> games at depth <tt>args[2]</tt> (by default,
+	 * <tt>DEFAULT_DEPTH</tt>) and writes their samples to the file <tt>
+	 * args[0]</tt>.
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length < 2) {
+			System.err.println("Usage: SelfPlay <file> <games> [depth]");
+			System.exit(2);
+		}
+
+		try(SampleWriter writer = SampleWriter.create(Paths.get(args[0]))) {
+			SelfPlay selfPlay = new SelfPlay(writer);
+
+			if(args.length > 2)
+				selfPlay.setDepth(Integer.parseInt(args[2]));
+
+			long samples = selfPlay.play(Integer.parseInt(args[1]));
+
+			System.out.println(samples + " samples written to " + args[0]);
+		}
+	}
+
+}
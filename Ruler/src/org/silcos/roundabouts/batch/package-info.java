@@ -0,0 +1,9 @@
+/**
+ * Simulation of many games at once in primitive arrays, for training and
+ * bulk play.
+ */
+/**
+ * @author Shukant Pal
+ *
+ */
+package org.silcos.roundabouts.batch;
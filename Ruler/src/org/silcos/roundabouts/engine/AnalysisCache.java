@@ -0,0 +1,417 @@
+package org.silcos.roundabouts.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.silcos.roundabouts.Move;
+import org.silcos.roundabouts.Position;
+import org.silcos.roundabouts.Symmetry;
+
+/**
+ * <p>
+ * Remembers the results of analyses - best move, expected reply, score and
+ * depth - by position, so that engines asked about a position analyzed
+ * before (by any engine in the JVM sharing the cache; see <tt>shared</tt>)
+ * can answer without searching again. Positions are keyed by their canonical
+ * key (see <tt>Symmetry</tt>), so all the positions equivalent under the
+ * symmetries of the board share an entry; the moves are stored in the
+ * canonical frame and mapped back on each probe.
+ *
+ * <p>
+ * The cache holds a fixed number of entries in primitive arrays, split into
+ * stripes by key, each locked on its own. Each stripe evicts by segmented
+ * LRU: new entries go to a probationary segment, and move to a protected
+ * segment (of up to <tt>PROTECTED_SHARE</tt> of the stripe) when hit again,
+ * so that positions looked up once don't flush out the popular ones. When a
+ * stripe is full, the least recently used probationary entry is evicted.
+ *
+ * <p>
+ * A probe returns the entry packed into a <tt>long</tt>, unpacked with
+ * <tt>move</tt>, <tt>reply</tt>, <tt>score</tt> and <tt>depth</tt>, or
+ * <tt>NOT_FOUND</tt>.
+ *
+ * @author Shukant Pal
+ */
+public final class AnalysisCache {
+
+	public static final long NOT_FOUND = 0;
+
+	/**
+	 * Bytes used by each entry, including the hash table.
+	 */
+	public static final int ENTRY_BYTES = 2 * Long.BYTES + 4 * Integer.BYTES + 1;
+
+	/**
+	 * Memory used by the cache returned by <tt>shared</tt>.
+	 */
+	public static final long SHARED_MEMORY = 64L << 20;
+
+	public static final double PROTECTED_SHARE = 0.8;
+
+	private static final int STRIPE_BITS = 6;
+
+	private static final int PROBATION = 0;
+	private static final int PROTECTED = 1;
+
+	private final Stripe[] stripes;
+	private final int capacity;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	private static final class Shared {
+
+		static final AnalysisCache instance = forMemory(SHARED_MEMORY);
+
+	}
+
+	/**
+	 * One stripe of the cache. Entries live in slots; the hash table maps
+	 * keys to slots by linear probing, and the slots of each segment are
+	 * linked from the most to the least recently used.
+	 */
+	private static final class Stripe {
+
+		private final long[] keys;
+		private final long[] values;
+		private final int[] previous;
+		private final int[] next;
+		private final byte[] segments;
+		private final int[] table;
+		private final int tableMask;
+		private final int protectedCapacity;
+
+		private final int[] heads = new int[2];
+		private final int[] tails = new int[2];
+		private final int[] sizes = new int[2];
+		private int used;
+
+		Stripe(int capacity) {
+			this.keys = new long[capacity];
+			this.values = new long[capacity];
+			this.previous = new int[capacity];
+			this.next = new int[capacity];
+			this.segments = new byte[capacity];
+			this.table = new int[Integer.highestOneBit(capacity) << 2];
+			this.tableMask = table.length - 1;
+			this.protectedCapacity = (int) (capacity * PROTECTED_SHARE);
+
+			clear();
+		}
+
+		synchronized void clear() {
+			Arrays.fill(table, -1);
+			Arrays.fill(heads, -1);
+			Arrays.fill(tails, -1);
+			Arrays.fill(sizes, 0);
+			used = 0;
+		}
+
+		synchronized int size() {
+			return (used);
+		}
+
+		synchronized long get(long key) {
+			int slot = find(key);
+
+			if(slot == -1)
+				return (NOT_FOUND);
+
+			unlink(slot);
+
+			if(protectedCapacity == 0) {
+				link(slot, PROBATION);
+				return (values[slot]);
+			} else if(segments[slot] == PROBATION && sizes[PROTECTED] == protectedCapacity) {
+				int demoted = tails[PROTECTED];
+
+				unlink(demoted);
+				link(demoted, PROBATION);
+			}
+
+			link(slot, PROTECTED);
+
+			return (values[slot]);
+		}
+
+		synchronized void put(long key, long value) {
+			int slot = find(key);
+
+			if(slot != -1) {
+				if(depth(value) >= depth(values[slot]))
+					values[slot] = value;
+
+				return;
+			}
+
+			if(used < keys.length) {
+				slot = (used)++;
+			} else {
+				slot = tails[(sizes[PROBATION] > 0) ? PROBATION : PROTECTED];
+				unlink(slot);
+				removeFromTable(slot);
+			}
+
+			keys[slot] = key;
+			values[slot] = value;
+			link(slot, PROBATION);
+
+			int index = home(key);
+
+			while(table[index] != -1) {
+				index = (index + 1) & tableMask;
+			}
+
+			table[index] = slot;
+		}
+
+		private int home(long key) {
+			return ((int) key & tableMask);
+		}
+
+		private int find(long key) {
+			for(int index = home(key); table[index] != -1; index = (index + 1) & tableMask) {
+				if(keys[table[index]] == key)
+					return (table[index]);
+			}
+
+			return (-1);
+		}
+
+		/**
+		 * Removes the given slot from the hash table, shifting the entries
+		 * after it back so that no probe sequence is broken.
+		 */
+		private void removeFromTable(int slot) {
+			int hole = home(keys[slot]);
+
+			while(table[hole] != slot) {
+				hole = (hole + 1) & tableMask;
+			}
+
+			for(int index = (hole + 1) & tableMask; table[index] != -1;
+					index = (index + 1) & tableMask) {
+				int wanted = home(keys[table[index]]);
+
+				// Move the entry into the hole unless its home lies cyclically
+				// in (hole, index].
+				if(((index - wanted) & tableMask) >= ((index - hole) & tableMask)) {
+					table[hole] = table[index];
+					hole = index;
+				}
+			}
+
+			table[hole] = -1;
+		}
+
+		private void link(int slot, int segment) {
+			segments[slot] = (byte) segment;
+			previous[slot] = -1;
+			next[slot] = heads[segment];
+
+			if(heads[segment] != -1)
+				previous[heads[segment]] = slot;
+			else
+				tails[segment] = slot;
+
+			heads[segment] = slot;
+			++(sizes[segment]);
+		}
+
+		private void unlink(int slot) {
+			int segment = segments[slot];
+
+			if(previous[slot] != -1)
+				next[previous[slot]] = next[slot];
+			else
+				heads[segment] = next[slot];
+
+			if(next[slot] != -1)
+				previous[next[slot]] = previous[slot];
+			else
+				tails[segment] = previous[slot];
+
+			--(sizes[segment]);
+		}
+
+	}
+
+	/**
+	 * Constructs a cache of the given number of entries.
+	 *
+	 * @param capacity - the greatest number of entries
+	 */
+	public AnalysisCache(int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("Bad capacity: " + capacity);
+
+		int stripeCapacity = (capacity + (1 << STRIPE_BITS) - 1) >>> STRIPE_BITS;
+
+		this.stripes = new Stripe[1 << STRIPE_BITS];
+		this.capacity = stripeCapacity << STRIPE_BITS;
+
+		for(int stripe = 0; stripe < stripes.length; stripe++) {
+			stripes[stripe] = new Stripe(stripeCapacity);
+		}
+	}
+
+	/**
+	 * Returns a cache using about the given number of bytes.
+	 *
+	 * @param bytes - the memory to use
+	 */
+	public static AnalysisCache forMemory(long bytes) {
+		return (new AnalysisCache((int) Math.min(Integer.MAX_VALUE / 4, bytes / ENTRY_BYTES)));
+	}
+
+	/**
+	 * Returns the cache shared by everything in the JVM that uses it, of
+	 * <tt>SHARED_MEMORY</tt> bytes; it is created on first use.
+	 */
+	public static AnalysisCache shared() {
+		return (Shared.instance);
+	}
+
+	/**
+	 * Returns the greatest number of entries.
+	 */
+	public int capacity() {
+		return (capacity);
+	}
+
+	/**
+	 * Returns the number of entries.
+	 */
+	public long size() {
+		long size = 0;
+
+		for(Stripe stripe : stripes) {
+			size += stripe.size();
+		}
+
+		return (size);
+	}
+
+	/**
+	 * Returns the number of probes that found an entry.
+	 */
+	public long hits() {
+		return (hits.sum());
+	}
+
+	/**
+	 * Returns the number of probes that found nothing.
+	 */
+	public long misses() {
+		return (misses.sum());
+	}
+
+	/**
+	 * Removes all the entries.
+	 */
+	public void clear() {
+		for(Stripe stripe : stripes) {
+			stripe.clear();
+		}
+	}
+
+	/**
+	 * Returns the entry of the given position (or of one equivalent to it),
+	 * with its moves mapped to the position, or <tt>NOT_FOUND</tt>.
+	 *
+	 * @param position - the position to look up
+	 */
+	public long probe(Position position) {
+		int symmetry = Symmetry.canonicalSymmetry(position);
+		long key = keyOf(position, symmetry);
+		long value = stripeOf(key).get(key);
+
+		if(value == NOT_FOUND) {
+			misses.increment();
+			return (NOT_FOUND);
+		}
+
+		hits.increment();
+
+		if(symmetry == 0)
+			return (value);
+
+		int inverse = Symmetry.inverse(symmetry);
+
+		return (pack(mapMove(inverse, move(value)), mapMove(inverse, reply(value)),
+				score(value), depth(value)));
+	}
+
+	/**
+	 * Stores the result of an analysis of the given position. An entry of a
+	 * deeper analysis of the position is kept instead.
+	 *
+	 * @param position - the position analyzed
+	 * @param move - the best move
+	 * @param reply - the reply expected to it, or <tt>Move.NONE</tt>
+	 * @param score - the score of the position, for the side to move
+	 * @param depth - the depth analyzed to, from 1 to 255
+	 */
+	public void store(Position position, int move, int reply, int score, int depth) {
+		if(depth < 1 || depth > 0xFF)
+			throw new IllegalArgumentException("Depth out of range: " + depth);
+
+		int symmetry = Symmetry.canonicalSymmetry(position);
+		long key = keyOf(position, symmetry);
+
+		stripeOf(key).put(key, pack(mapMove(symmetry, move), mapMove(symmetry, reply),
+				score, depth));
+	}
+
+	/**
+	 * Returns the best move of the given entry.
+	 */
+	public static int move(long entry) {
+		return ((int) (entry & 0xFFFF));
+	}
+
+	/**
+	 * Returns the reply expected to the best move of the given entry, or
+	 * <tt>Move.NONE</tt>.
+	 */
+	public static int reply(long entry) {
+		return ((int) ((entry >>> 16) & 0xFFFF));
+	}
+
+	/**
+	 * Returns the score of the given entry.
+	 */
+	public static int score(long entry) {
+		return ((short) (entry >>> 32));
+	}
+
+	/**
+	 * Returns the depth of the analysis of the given entry.
+	 */
+	public static int depth(long entry) {
+		return ((int) ((entry >>> 48) & 0xFF));
+	}
+
+	private static long pack(int move, int reply, int score, int depth) {
+		return (move | ((long) reply << 16) | ((long) (score & 0xFFFF) << 32)
+				| ((long) depth << 48));
+	}
+
+	private static int mapMove(int symmetry, int move) {
+		return ((move == Move.NONE) ? Move.NONE : Symmetry.mapMove(symmetry, move));
+	}
+
+	private static long keyOf(Position position, int symmetry) {
+		if(symmetry == 0)
+			return (position.key());
+
+		return (Position.keyOf(Symmetry.mapMask(symmetry, position.pebbles(Position.STARTER)),
+				Symmetry.mapMask(symmetry, position.pebbles(Position.OTHER)),
+				position.sideToMove()));
+	}
+
+	private Stripe stripeOf(long key) {
+		return (stripes[(int) (key >>> (Long.SIZE - STRIPE_BITS))]);
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.silcos.roundabouts.engine;
+
+import java.util.Arrays;
+
+import org.silcos.roundabouts.Move;
+
+/**
+ * <p>
+ * One of the best lines of a multi-PV analysis: its rank among the lines
+ * of an iteration, the depth searched to, the score (from the view of the
+ * side to move at the root), and the principal variation, starting with
+ * the root move.
+ *
+ * <p>
+ * The variation is read back from the transposition table, so it may be
+ * shorter than the depth, if entries on the way were replaced.
+ *
+ * @author Shukant Pal
+ */
+public final class AnalysisLine {
+
+	private final int rank;
+	private final int depth;
+	private final int score;
+	private final int[] variation;
+	private final long nodes;
+
+	AnalysisLine(int rank, int depth, int score, int[] variation, long nodes) {
+		this.rank = rank;
+		this.depth = depth;
+		this.score = score;
+		this.variation = variation;
+		this.nodes = nodes;
+	}
+
+	/**
+	 * Returns the rank of this line, 1 being the best.
+	 */
+	public int rank() {
+		return (rank);
+	}
+
+	/**
+	 * Returns this line with another rank.
+	 */
+	AnalysisLine withRank(int newRank) {
+		return (new AnalysisLine(newRank, depth, score, variation, nodes));
+	}
+
+	/**
+	 * Returns the depth this line was searched to.
+	 */
+	public int depth() {
+		return (depth);
+	}
+
+	/**
+	 * Returns the score of this line.
+	 */
+	public int score() {
+		return (score);
+	}
+
+	/**
+	 * Returns the root move of this line.
+	 */
+	public int move() {
+		return (variation[0]);
+	}
+
+	/**
+	 * Returns the number of moves in the principal variation.
+	 */
+	public int length() {
+		return (variation.length);
+	}
+
+	/**
+	 * Returns the move at the given index of the principal variation.
+	 */
+	public int moveAt(int index) {
+		return (variation[index]);
+	}
+
+	/**
+	 * Returns a copy of the principal variation.
+	 */
+	public int[] variation() {
+		return (Arrays.copyOf(variation, variation.length));
+	}
+
+	/**
+	 * Returns the number of nodes the analysis had visited when this line
+	 * was found.
+	 */
+	public long nodes() {
+		return (nodes);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+
+		text.append(rank).append(". depth ").append(depth).append(" score ").append(score);
+
+		for(int move : variation) {
+			text.append(' ').append(Move.toString(move));
+		}
+
+		return (text.toString());
+	}
+
+}
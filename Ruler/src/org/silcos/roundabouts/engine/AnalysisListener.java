@@ -0,0 +1,29 @@
+package org.silcos.roundabouts.engine;
+
+import java.util.EventListener;
+import java.util.List;
+
+/**
+ * Receives the lines found by <tt>Search.analyze</tt> while it runs, so
+ * that an analysis can be shown as it improves instead of only at the end.
+ * It is called on the thread running the search, and should return quickly.
+ *
+ * @author Shukant Pal
+ */
+public interface AnalysisListener extends EventListener {
+
+	/**
+	 * Called when a line of the current iteration has been searched.
+	 *
+	 * @param line - the line, with its rank among the lines of the iteration
+	 */
+	void lineFound(AnalysisLine line);
+
+	/**
+	 * Called when all the lines of an iteration have been searched.
+	 *
+	 * @param lines - the lines of the iteration, best first
+	 */
+	void depthCompleted(List<AnalysisLine> lines);
+
+}
@@ -0,0 +1,402 @@
+package org.silcos.roundabouts.engine;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.silcos.roundabouts.Board;
+import org.silcos.roundabouts.DrawRule;
+import org.silcos.roundabouts.Game;
+import org.silcos.roundabouts.GameResult;
+import org.silcos.roundabouts.Move;
+import org.silcos.roundabouts.Player;
+import org.silcos.roundabouts.Position;
+import org.silcos.roundabouts.PositionHistory;
+import org.silcos.roundabouts.tablebase.Tablebase;
+
+/**
+ * <p>
+ * A player whose moves are chosen by a <tt>Search</tt>, on a thread of its
+ * own, so that the game (and UI) are never kept waiting. It is created like
+ * any other player, e.g. <tt>Game.newGame(EnginePlayer::new,
+ * HumanPlayer::new)</tt>, and plays its moves through <tt>Game.playMove
+ * </tt>. The thread ends with the game (or on <tt>quit</tt>).
+ *
+ * <p>
+ * The time for each move is budgeted from the engine's own clock by a
+ * <tt>TimeManager</tt>; the clock is charged with the time spent and given
+ * the increment after each move.
+ *
+ * <p>
+ * With pondering on, the engine keeps thinking after its move, on the
+ * position after the reply it expects. If the opponent plays that reply,
+ * the pondering search simply goes on as the search for the move, with the
+ * clock starting then (a ponder hit); otherwise it is stopped and a new
+ * search starts, which still benefits from the transposition table filled
+ * while pondering.
+ *
+ * <p>
+ * With an <tt>AnalysisCache</tt> set, a position analyzed before to at
+ * least the depth asked for is answered from the cache, and the results of
+ * new searches are stored in it. Only single-line analyses of positions
+ * with no earlier positions since the last capture go through the cache,
+ * since a history (with its repetitions) could change their results.
+ *
+ * @author Shukant Pal
+ */
+public class EnginePlayer extends Player {
+
+	/**
+	 * Depth searched to unless <tt>setMaxDepth</tt> is called; in practice,
+	 * the time runs out first.
+	 */
+	public static final int DEFAULT_MAX_DEPTH = Search.MAX_PLY / 2;
+
+	private static final long DEFAULT_CLOCK = 5 * 60 * 1000;
+
+	private final Search search;
+	private final Thinker thinker;
+
+	private volatile long remainingMillis = DEFAULT_CLOCK;
+	private volatile long incrementMillis;
+	private volatile int maxDepth = DEFAULT_MAX_DEPTH;
+	private volatile boolean ponder;
+	private volatile AnalysisCache analysisCache;
+	private volatile int cacheDepth;
+
+	/**
+	 * The reply expected after the move of the last analysis, if it was
+	 * answered from the cache, or -1.
+	 */
+	private volatile int cachedReply = -1;
+
+	/*
+	 * The state shared with the thinker, guarded by this player.
+	 */
+	private boolean turnPending;
+	private TimeManager ponderTime;
+	private long ponderKey;
+	private boolean ponderHit;
+
+	private class Thinker extends Thread {
+
+		Thinker() {
+			super("EnginePlayer");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while(true) {
+					awaitTurn();
+					play();
+				}
+			} catch (InterruptedException e) {
+				// quit() was called
+			}
+		}
+
+	}
+
+	public EnginePlayer(Board playBoard, Game gameInstance) {
+		super(playBoard, gameInstance);
+		this.search = new Search(new Position());
+		this.thinker = new Thinker();
+
+		thinker.start();
+	}
+
+	/**
+	 * Sets the clock of this player.
+	 *
+	 * @param remainingMillis - the time left for the rest of the game
+	 * @param incrementMillis - the time added after each move
+	 */
+	public void setClock(long remainingMillis, long incrementMillis) {
+		this.remainingMillis = remainingMillis;
+		this.incrementMillis = incrementMillis;
+	}
+
+	/**
+	 * Returns the time left on the clock of this player.
+	 */
+	public long remainingMillis() {
+		return (remainingMillis);
+	}
+
+	/**
+	 * Sets whether this player thinks on the opponent's time.
+	 */
+	public void setPondering(boolean ponder) {
+		this.ponder = ponder;
+	}
+
+	/**
+	 * Sets the greatest depth this player searches to.
+	 *
+	 * @param maxDepth - the depth, from 1 to <tt>Search.MAX_PLY</tt>
+	 */
+	public void setMaxDepth(int maxDepth) {
+		if(maxDepth < 1 || maxDepth > Search.MAX_PLY)
+			throw new IllegalArgumentException("Depth out of range: " + maxDepth);
+
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Returns the search used by this player, e.g. to read the statistics of
+	 * its last move. It must not be used while the player is thinking.
+	 */
+	public Search search() {
+		return (search);
+	}
+
+	/**
+	 * Chooses a move for the given position, on the calling thread. This is
+	 * for callers managing the game themselves, like <tt>EngineProtocol</tt>;
+	 * it must not be mixed with play through a <tt>Game</tt>.
+	 *
+	 * @param position - the position to move in
+	 * @param time - the time manager for the move
+	 * @return the move chosen, or <tt>Move.NONE</tt> if there are no moves
+	 */
+	public int chooseMove(Position position, TimeManager time) {
+		return (chooseMove(position, null, time));
+	}
+
+	/**
+	 * Chooses a move for the given position like <tt>chooseMove(Position,
+	 * TimeManager)</tt>, knowing the positions the game went through.
+	 *
+	 * @param position - the position to move in
+	 * @param history - the history of the game up to the position, or null
+	 * @param time - the time manager for the move
+	 * @return the move chosen, or <tt>Move.NONE</tt> if there are no moves
+	 */
+	public int chooseMove(Position position, PositionHistory history, TimeManager time) {
+		List<AnalysisLine> lines = analyze(position, history, time, 1, null);
+
+		return (lines.isEmpty() ? Move.NONE : lines.get(0).move());
+	}
+
+	/**
+	 * Finds the given number of best lines for the given position, on the
+	 * calling thread, streaming them to the given listener. Engines with
+	 * another way of choosing their moves override this method; the other
+	 * ways of thinking go through it.
+	 *
+	 * @param position - the position to analyze
+	 * @param history - the history of the game up to the position (to see
+	 * 				repetitions), or null
+	 * @param time - the time manager for the analysis
+	 * @param lineCount - the number of lines wanted
+	 * @param listener - the listener to stream the lines to, or null
+	 * @return the lines found, best first (none if there are no moves)
+	 */
+	public List<AnalysisLine> analyze(Position position, PositionHistory history,
+			TimeManager time, int lineCount, AnalysisListener listener) {
+		AnalysisCache cache = analysisCache;
+		boolean cacheable = cache != null && lineCount == 1
+				&& (history == null || history.quietPlies() == 0);
+
+		cachedReply = -1;
+
+		if(cacheable) {
+			List<AnalysisLine> lines = probe(cache, position, time, listener);
+
+			if(lines != null)
+				return (lines);
+		}
+
+		search.setPosition(position, history);
+
+		List<AnalysisLine> lines = search.analyze(lineCount, maxDepth, time, listener);
+
+		if(cacheable && !lines.isEmpty() && lines.get(0).depth() > 0) {
+			AnalysisLine best = lines.get(0);
+
+			cache.store(position, best.move(), (best.length() > 1) ? best.moveAt(1) : Move.NONE,
+					best.score(), best.depth());
+		}
+
+		return (lines);
+	}
+
+	/**
+	 * Returns the line of the given position found in the cache, if it was
+	 * analyzed deep enough, or null.
+	 */
+	private List<AnalysisLine> probe(AnalysisCache cache, Position position, TimeManager time,
+			AnalysisListener listener) {
+		long entry = cache.probe(position);
+
+		if(entry == AnalysisCache.NOT_FOUND || AnalysisCache.depth(entry) < Math.min(cacheDepth,
+				maxDepth) || !position.isLegal(AnalysisCache.move(entry)))
+			return (null);
+
+		int move = AnalysisCache.move(entry), reply = AnalysisCache.reply(entry);
+		AnalysisLine line = new AnalysisLine(1, AnalysisCache.depth(entry),
+				AnalysisCache.score(entry),
+				(reply == Move.NONE) ? new int[] { move } : new int[] { move, reply }, 0);
+		List<AnalysisLine> lines = Collections.singletonList(line);
+
+		time.start();
+		cachedReply = reply;
+
+		if(listener != null) {
+			listener.lineFound(line);
+			listener.depthCompleted(lines);
+		}
+
+		return (lines);
+	}
+
+	/**
+	 * Sets the cache of analyses consulted before searching, e.g. <tt>
+	 * AnalysisCache.shared()</tt>, or null to always search.
+	 *
+	 * @param analysisCache - the cache, or null
+	 * @param cacheDepth - the least depth of a cached analysis to use it
+	 * 				(or the greatest depth searched to, if lower)
+	 */
+	public void setAnalysisCache(AnalysisCache analysisCache, int cacheDepth) {
+		this.analysisCache = analysisCache;
+		this.cacheDepth = cacheDepth;
+	}
+
+	/**
+	 * Sets the rule by which the search scores positions as drawn. Playing
+	 * through a <tt>Game</tt>, the rule of the game is used.
+	 *
+	 * @param drawRule - the draw rule
+	 */
+	public void setDrawRule(DrawRule drawRule) {
+		search.setDrawRule(drawRule);
+	}
+
+	/**
+	 * Sets the endgame tables the search scores the positions they cover
+	 * from, or null to search all positions (see <tt>Search.setTablebase</tt>).
+	 *
+	 * @param tablebase - the tablebase, or null
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		search.setTablebase(tablebase);
+	}
+
+	/**
+	 * Returns the reply expected to the move chosen by the last search, or
+	 * <tt>Move.NONE</tt>.
+	 */
+	public int expectedReply() {
+		int reply = cachedReply;
+
+		return ((reply != -1) ? reply : search.expectedReply());
+	}
+
+	/**
+	 * Asks the search running for <tt>chooseMove</tt> or <tt>analyze</tt> to
+	 * stop, which then returns the best move found so far. A search that has
+	 * not started yet isn't stopped; callers that may race with its start
+	 * stop the <tt>TimeManager</tt> they gave it instead.
+	 */
+	public void stopThinking() {
+		search.stop();
+	}
+
+	/**
+	 * Stops the thinking thread of this player for good.
+	 */
+	public void quit() {
+		stopThinking();
+		thinker.interrupt();
+	}
+
+	@Override
+	protected void turnStarted() {
+		long key = gameInstance().currentPosition().key();
+
+		synchronized(this) {
+			if(ponderTime != null) {
+				if(key == ponderKey) {
+					ponderTime.ponderHit();
+					ponderHit = true;
+					return;
+				}
+
+				ponderTime.stop();
+			}
+
+			turnPending = true;
+			notifyAll();
+		}
+	}
+
+	@Override
+	protected void gameOver(GameResult result) {
+		synchronized(this) {
+			if(ponderTime != null)
+				ponderTime.stop();
+		}
+
+		quit();// a player takes part in only one game
+	}
+
+	private synchronized void awaitTurn() throws InterruptedException {
+		while(!turnPending)
+			wait();
+
+		turnPending = false;
+	}
+
+	/**
+	 * Searches the current position and plays the best move; then ponders
+	 * until the opponent replies, playing the pondered move on a hit.
+	 */
+	private void play() {
+		Position root = gameInstance().currentPosition();
+		PositionHistory history = gameInstance().history();
+		TimeManager time = TimeManager.forClock(remainingMillis, incrementMillis, 0);
+
+		setDrawRule(gameInstance().drawRule());
+
+		int move = chooseMove(root, history, time);
+
+		while(move != Move.NONE) {
+			int reply = expectedReply();
+
+			remainingMillis += incrementMillis - time.elapsed();
+
+			if(!gameInstance().playMove(move) || !ponder || reply == Move.NONE)
+				return;
+
+			boolean capture = root.makeMove(move);
+
+			history.push(root.key(), capture);
+			capture = root.makeMove(reply);
+			history.push(root.key(), capture);
+
+			time = TimeManager.forClock(remainingMillis, incrementMillis, 0);
+			time.setPondering(true);
+
+			synchronized(this) {
+				if(turnPending || gameInstance().isOver())
+					return;// the opponent already replied, or the game ended
+
+				ponderTime = time;
+				ponderKey = root.key();
+				ponderHit = false;
+			}
+
+			move = chooseMove(root, history, time);
+
+			synchronized(this) {
+				ponderTime = null;
+
+				if(!ponderHit)
+					return;
+			}
+		}
+	}
+
+}
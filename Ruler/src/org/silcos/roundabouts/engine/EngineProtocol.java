@@ -0,0 +1,486 @@
+package org.silcos.roundabouts.engine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import org.silcos.roundabouts.Board;
+import org.silcos.roundabouts.DrawRule;
+import org.silcos.roundabouts.Game;
+import org.silcos.roundabouts.HumanPlayer;
+import org.silcos.roundabouts.Move;
+import org.silcos.roundabouts.Position;
+import org.silcos.roundabouts.PositionHistory;
+import org.silcos.roundabouts.PositionNotation;
+
+/**
+ * <p>
+ * Serves an <tt>EnginePlayer</tt> over a UCI-style text protocol, one
+ * command per line, so that engines can run as separate processes (see
+ * <tt>main</tt>), be driven by a <tt>RemoteEngine</tt>, and crash without
+ * taking the app or a match down with them. The commands are:
+ * <ul>
+ * <li><tt>uci</tt> - answered by <tt>id name</tt>, <tt>id author</tt>, the
+ * <tt>option</tt>s and <tt>uciok</tt>;</li>
+ * <li><tt>isready</tt> - answered by <tt>readyok</tt>;</li>
+ * <li><tt>setoption name &lt;name&gt; value &lt;value&gt;</tt> - sets
+ * <tt>MultiPV</tt> (lines reported), <tt>Hash</tt> (log2 of the table
+ * entries), the limits of the <tt>DrawRule</tt>, <tt>Repetitions</tt> and
+ * <tt>QuietPlies</tt>, or <tt>AnalysisCache</tt> (the least depth of an
+ * analysis in <tt>AnalysisCache.shared</tt> to answer from it, or 0 not to
+ * use it);</li>
+ * <li><tt>ucinewgame</tt> - forgets everything learnt by earlier searches;</li>
+ * <li><tt>position (startpos | fen &lt;notation&gt;) [moves &lt;move&gt;...]
+ * </tt> - sets the position, in <tt>PositionNotation</tt>, and the moves
+ * played from it, as written by <tt>Move.toString</tt>;</li>
+ * <li><tt>go</tt> followed by limits: <tt>stime</tt>, <tt>otime</tt>,
+ * <tt>sinc</tt>, <tt>oinc</tt> (the clock and increment of the starter and
+ * the other player), <tt>movestogo</tt>, <tt>movetime</tt>, <tt>depth</tt>,
+ * <tt>infinite</tt> and <tt>ponder</tt>;</li>
+ * <li><tt>stop</tt>, <tt>ponderhit</tt> and <tt>quit</tt>.</li>
+ * </ul>
+ *
+ * <p>
+ * While searching, the engine reports each line found as <tt>info depth
+ * &lt;d&gt; multipv &lt;k&gt; score (cp &lt;x&gt; | mate &lt;plies&gt;) nodes
+ * &lt;n&gt; time &lt;ms&gt; pv &lt;move&gt;...</tt>, and finally answers
+ * <tt>bestmove &lt;move&gt; [ponder &lt;move&gt;]</tt> (<tt>bestmove none
+ * </tt> if there are no moves). After <tt>go infinite</tt> or <tt>go
+ * ponder</tt>, the answer waits for <tt>stop</tt> or <tt>ponderhit</tt>.
+ * Malformed commands are answered by <tt>info string</tt> and otherwise
+ * ignored.
+ *
+ * @author Shukant Pal
+ */
+public final class EngineProtocol {
+
+	private static final int HASH_BITS = 18;
+
+	private final EnginePlayer engine;
+	private final BufferedReader in;
+	private final PrintWriter out;
+
+	private Position position = Position.initial();
+	private PositionHistory history = new PositionHistory();
+	private DrawRule drawRule = DrawRule.STANDARD;
+	private int lineCount = 1;
+
+	private Thinker thinker;
+
+	/*
+	 * The state of the running go, guarded by this protocol.
+	 */
+	private TimeManager time;
+	private boolean held;
+
+	private class Thinker extends Thread {
+
+		private final Position root;
+		private final PositionHistory rootHistory;
+		private final TimeManager thinkTime;
+
+		Thinker(Position root, PositionHistory rootHistory, TimeManager thinkTime) {
+			super("EngineProtocol");
+			this.root = root;
+			this.rootHistory = rootHistory;
+			this.thinkTime = thinkTime;
+		}
+
+		@Override
+		public void run() {
+			AnalysisListener listener = new AnalysisListener() {
+
+				@Override
+				public void lineFound(AnalysisLine line) {
+					send(infoOf(line, thinkTime.elapsed()));
+				}
+
+				@Override
+				public void depthCompleted(List<AnalysisLine> lines) {
+				}
+
+			};
+
+			List<AnalysisLine> lines = engine.analyze(root, rootHistory, thinkTime,
+					lineCount, listener);
+			int move = lines.isEmpty() ? Move.NONE : lines.get(0).move();
+			int reply = (move == Move.NONE) ? Move.NONE : engine.expectedReply();
+
+			awaitRelease();
+			send("bestmove " + Move.toString(move)
+					+ ((reply != Move.NONE) ? " ponder " + Move.toString(reply) : ""));
+		}
+
+	}
+
+	/**
+	 * Constructs a protocol serving the given engine.
+	 *
+	 * @param engine - the engine to serve
+	 * @param in - the input to read commands from
+	 * @param out - the output to write answers to
+	 */
+	public EngineProtocol(EnginePlayer engine, BufferedReader in, PrintWriter out) {
+		this.engine = engine;
+		this.in = in;
+		this.out = out;
+	}
+
+	/**
+	 * Reads and carries out commands until <tt>quit</tt>, or the end of the
+	 * input.
+	 *
+	 * @throws IOException - if the input can't be read
+	 * @throws InterruptedException - if interrupted while waiting for the
+	 * 			search to stop
+	 */
+	public void run() throws IOException, InterruptedException {
+		String command;
+
+		while((command = in.readLine()) != null) {
+			String[] tokens = command.trim().split("\\s+");
+
+			try {
+				if(!execute(tokens))
+					break;
+			} catch (IllegalArgumentException e) {
+				send("info string " + e.getMessage());
+			}
+		}
+
+		stopThinker();
+	}
+
+	/**
+	 * Carries out the given command, and returns whether to go on.
+	 */
+	private boolean execute(String[] tokens) throws InterruptedException {
+		switch(tokens[0]) {
+		case "uci":
+			send("id name Permainan");
+			send("id author Shukant Pal");
+			send("option name MultiPV type spin default 1 min 1 max " + Position.MAX_MOVES);
+			send("option name Hash type spin default " + HASH_BITS + " min 1 max " + maxHashBits());
+			send("option name Repetitions type spin default " + DrawRule.STANDARD.repetitions()
+					+ " min 0 max 1000");
+			send("option name QuietPlies type spin default " + DrawRule.STANDARD.quietPlies()
+					+ " min 0 max 10000");
+			send("option name AnalysisCache type spin default 0 min 0 max " + Search.MAX_PLY);
+			send("uciok");
+			break;
+		case "isready":
+			send("readyok");
+			break;
+		case "setoption":
+			stopThinker();// the options are read by the running search
+			setOption(tokens);
+			break;
+		case "ucinewgame":
+			stopThinker();
+			engine.search().clearHistory();
+			engine.search().table().clear();
+			break;
+		case "position":
+			setPosition(tokens);
+			break;
+		case "go":
+			go(tokens);
+			break;
+		case "stop":
+			stopThinker();
+			break;
+		case "ponderhit":
+			ponderHit();
+			break;
+		case "quit":
+			return (false);
+		case "":
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown command: " + tokens[0]);
+		}
+
+		return (true);
+	}
+
+	private void setOption(String[] tokens) {
+		if(tokens.length != 5 || !tokens[1].equals("name") || !tokens[3].equals("value"))
+			throw new IllegalArgumentException("Usage: setoption name <name> value <value>");
+
+		int value = parseNumber(tokens[4]);
+
+		switch(tokens[2]) {
+		case "MultiPV":
+			if(value < 1)
+				throw new IllegalArgumentException("MultiPV out of range: " + value);
+
+			lineCount = value;
+			break;
+		case "Hash":
+			if(value < 1 || value > maxHashBits())
+				throw new IllegalArgumentException("Hash out of range: " + value);
+
+			// Drop the old table first, so that both needn't fit at once.
+			engine.search().setTable(new TranspositionTable(1));
+
+			try {
+				engine.search().setTable(new TranspositionTable(value));
+			} catch (OutOfMemoryError e) {
+				engine.search().setTable(new TranspositionTable(HASH_BITS));
+				throw new IllegalArgumentException("Not enough memory for Hash " + value);
+			}
+			break;
+		case "Repetitions":
+			drawRule = new DrawRule(value, drawRule.quietPlies());
+			break;
+		case "QuietPlies":
+			drawRule = new DrawRule(drawRule.repetitions(), value);
+			break;
+		case "AnalysisCache":
+			engine.setAnalysisCache((value > 0) ? AnalysisCache.shared() : null, value);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown option: " + tokens[2]);
+		}
+	}
+
+	private void setPosition(String[] tokens) {
+		Position newPosition;
+		int index;
+
+		if(tokens.length > 1 && tokens[1].equals("startpos")) {
+			newPosition = Position.initial();
+			index = 2;
+		} else if(tokens.length > 3 && tokens[1].equals("fen")) {
+			newPosition = PositionNotation.parse(tokens[2] + " " + tokens[3]);
+			index = 4;
+		} else {
+			throw new IllegalArgumentException("Usage: position (startpos | fen <notation>)"
+					+ " [moves <move>...]");
+		}
+
+		PositionHistory newHistory = new PositionHistory();
+
+		newHistory.start(newPosition.key());
+
+		if(index < tokens.length) {
+			if(!tokens[index].equals("moves"))
+				throw new IllegalArgumentException("Expected moves: " + tokens[index]);
+
+			for(++(index); index < tokens.length; index++) {
+				int move = Move.parse(tokens[index]);
+
+				if(!newPosition.isLegal(move))
+					throw new IllegalArgumentException("Illegal move: " + tokens[index]);
+
+				boolean capture = newPosition.makeMove(move);
+
+				newHistory.push(newPosition.key(), capture);
+			}
+		}
+
+		position = newPosition;
+		history = newHistory;
+	}
+
+	private void go(String[] tokens) throws InterruptedException {
+		long[] clock = new long[2], increment = new long[2];
+		long moveTime = -1;
+		int movesToGo = 0, depth = EnginePlayer.DEFAULT_MAX_DEPTH;
+		boolean infinite = false, ponder = false, clocked = false;
+
+		for(int index = 1; index < tokens.length; index++) {
+			String limit = tokens[index];
+
+			if(limit.equals("infinite")) {
+				infinite = true;
+				continue;
+			} else if(limit.equals("ponder")) {
+				ponder = true;
+				continue;
+			} else if(index + 1 == tokens.length) {
+				throw new IllegalArgumentException("Missing value of " + limit);
+			}
+
+			int value = parseNumber(tokens[++(index)]);
+
+			switch(limit) {
+			case "stime":
+			case "otime":
+				clock[limit.charAt(0) == 's' ? Position.STARTER : Position.OTHER] = value;
+				clocked = true;
+				break;
+			case "sinc":
+			case "oinc":
+				increment[limit.charAt(0) == 's' ? Position.STARTER : Position.OTHER] = value;
+				break;
+			case "movestogo":
+				movesToGo = value;
+				break;
+			case "movetime":
+				moveTime = value;
+				break;
+			case "depth":
+				depth = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown limit: " + limit);
+			}
+		}
+
+		TimeManager goTime;
+		int side = position.sideToMove();
+
+		if(moveTime >= 0)
+			goTime = TimeManager.fixed(moveTime);
+		else if(clocked && !infinite)
+			goTime = TimeManager.forClock(clock[side], increment[side], movesToGo);
+		else
+			goTime = TimeManager.infinite();
+
+		goTime.setPondering(ponder);
+
+		stopThinker();
+		engine.setMaxDepth(depth);
+		engine.setDrawRule(drawRule);
+
+		synchronized(this) {
+			time = goTime;
+			held = infinite || ponder;
+		}
+
+		thinker = new Thinker(position.copy(), new PositionHistory(history), goTime);
+		thinker.start();
+	}
+
+	private synchronized void ponderHit() {
+		if(time != null && time.isPondering()) {
+			time.ponderHit();
+			held = false;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until the answer of the running go may be given.
+	 */
+	private synchronized void awaitRelease() {
+		while(held) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stops the running go, if any, and waits for its answer.
+	 */
+	private void stopThinker() throws InterruptedException {
+		if(thinker == null)
+			return;
+
+		synchronized(this) {
+			held = false;
+			notifyAll();
+
+			// The thinker may not have started its search yet; stopping its
+			// time manager stops that search as soon as it starts.
+			time.stop();
+		}
+
+		thinker.join();
+		thinker = null;
+	}
+
+	/**
+	 * Returns the greatest <tt>Hash</tt> whose table takes at most half of
+	 * the heap.
+	 */
+	private static int maxHashBits() {
+		long budget = Runtime.getRuntime().maxMemory() / 2;
+		int bits = 1;
+
+		while(bits < TranspositionTable.MAX_SIZE_BITS
+				&& TranspositionTable.bytesFor(bits + 1) <= budget) {
+			++(bits);
+		}
+
+		return (bits);
+	}
+
+	private static int parseNumber(String text) {
+		try {
+			return (Integer.parseInt(text));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a number: " + text);
+		}
+	}
+
+	/**
+	 * Returns the <tt>info</tt> line reporting the given line.
+	 */
+	static String infoOf(AnalysisLine line, long elapsed) {
+		StringBuilder info = new StringBuilder("info depth ");
+		int score = line.score();
+
+		info.append(line.depth()).append(" multipv ").append(line.rank());
+
+		if(Search.isDecisive(score))
+			info.append(" score mate ").append((score > 0) ? Search.WIN - score : -Search.WIN - score);
+		else
+			info.append(" score cp ").append(score);
+
+		info.append(" nodes ").append(line.nodes()).append(" time ").append(elapsed).append(" pv");
+
+		for(int moveIdx = 0; moveIdx < line.length(); moveIdx++) {
+			info.append(' ').append(Move.toString(line.moveAt(moveIdx)));
+		}
+
+		return (info.toString());
+	}
+
+	private void send(String line) {
+		synchronized(out) {
+			out.println(line);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Serves an engine on the standard input and output. The engine is an
+	 * <tt>EnginePlayer</tt>, or the subclass of it named by the first
+	 * argument, which must have a <tt>(Board, Game)</tt> constructor.
+	 *
+	 * @param args - optionally, the class name of the engine
+	 */
+	public static void main(String[] args) throws Exception {
+		BiFunction<Board, Game, ? extends EnginePlayer> factory = EnginePlayer::new;
+
+		if(args.length > 0) {
+			Constructor<? extends EnginePlayer> constructor = Class.forName(args[0])
+					.asSubclass(EnginePlayer.class).getConstructor(Board.class, Game.class);
+
+			factory = (board, game) -> {
+				try {
+					return (constructor.newInstance(board, game));
+				} catch (ReflectiveOperationException e) {
+					throw new IllegalArgumentException("Cannot create " + args[0], e);
+				}
+			};
+		}
+
+		Game game = Game.newGame(factory, HumanPlayer::new);
+		EngineProtocol protocol = new EngineProtocol((EnginePlayer) game.getStarterPlayer(),
+				new BufferedReader(new InputStreamReader(System.in)),
+				new PrintWriter(System.out));
+
+		protocol.run();
+	}
+
+}
@@ -0,0 +1,262 @@
+package org.silcos.roundabouts.engine;
+
+import java.util.Arrays;
+
+import org.silcos.roundabouts.AttackMaps;
+import org.silcos.roundabouts.Circuits;
+import org.silcos.roundabouts.Move;
+import org.silcos.roundabouts.Position;
+
+/**
+ * <p>
+ * Scores positions for engines as a weighted sum of positional features,
+ * which are kept up to date as moves are made and unmade through this
+ * evaluator, instead of being recomputed from all the points at every
+ * leaf of a search.
+ *
+ * <p>
+ * The features, counted for each side, are: material (pebbles), presence on
+ * the inner and on the outer circuit, mobility (steps to empty adjacent
+ * points), opponent pebbles attacked through the circuits and empty circuit
+ * points controlled through them (reachable after going through a loop).
+ * Material, presence and mobility are updated around the points a move
+ * touched, and the circuit features are counted from <tt>AttackMaps</tt>,
+ * which only rescan the circuits the move touched. Making a move saves the
+ * features, so that unmaking it just restores them.
+ *
+ * <p>
+ * Evaluators are not thread-safe; each search thread needs its own.
+ *
+ * @author Shukant Pal
+ */
+public final class Evaluator {
+
+	public static final int MATERIAL = 0;
+	public static final int INNER_PRESENCE = 1;
+	public static final int OUTER_PRESENCE = 2;
+	public static final int MOBILITY = 3;
+	public static final int ATTACKED = 4;
+	public static final int CONTROL = 5;
+	public static final int FEATURE_COUNT = 6;
+
+	private static final int[] defaultWeights = { 100, 3, 4, 1, 25, 2 };
+
+	/**
+	 * Per-side features are stored at <tt>side * FEATURE_COUNT + feature
+	 * </tt>; the circuit features are counted from the attack maps instead.
+	 */
+	private static final int STATE_SIZE = 2 * FEATURE_COUNT;
+
+	private final Position position;
+	private final AttackMaps attackMaps;
+	private final int[] weights;
+
+	private int[] state;
+	private int[] savedStates;
+	private int depth;
+
+	/**
+	 * Constructs an evaluator with the default weights for the given
+	 * position. Moves must be made on the position only through the
+	 * evaluator from now on (or <tt>refresh</tt> must be called).
+	 *
+	 * @param position - the position to evaluate
+	 */
+	public Evaluator(Position position) {
+		this(position, defaultWeights);
+	}
+
+	/**
+	 * Constructs an evaluator with the given weights (indexed by feature)
+	 * for the given position.
+	 *
+	 * @param position - the position to evaluate
+	 * @param weights - the weight of each feature (copied)
+	 */
+	public Evaluator(Position position, int[] weights) {
+		if(weights.length != FEATURE_COUNT)
+			throw new IllegalArgumentException("Expected " + FEATURE_COUNT + " weights");
+
+		this.position = position;
+		this.attackMaps = new AttackMaps(position);
+		this.weights = weights.clone();
+		this.state = new int[STATE_SIZE];
+		this.savedStates = new int[STATE_SIZE * 64];
+
+		refresh();
+	}
+
+	/**
+	 * Returns a copy of the default weights, indexed by feature.
+	 */
+	public static int[] defaultWeights() {
+		return (defaultWeights.clone());
+	}
+
+	/**
+	 * Returns the position being evaluated.
+	 */
+	public Position position() {
+		return (position);
+	}
+
+	/**
+	 * Returns the attack maps of the position, which are kept up to date by
+	 * this evaluator.
+	 */
+	public AttackMaps attackMaps() {
+		return (attackMaps);
+	}
+
+	/**
+	 * Recomputes all the features from scratch, e.g. after the position was
+	 * changed without going through this evaluator.
+	 */
+	public void refresh() {
+		long empty = ~position.occupied();
+
+		Arrays.fill(state, 0);
+
+		for(int side = Position.STARTER; side <= Position.OTHER; side++) {
+			for(long mask = position.pebbles(side); mask != 0; mask &= mask - 1) {
+				int cell = Long.numberOfTrailingZeros(mask);
+
+				addPresence(side, cell, 1);
+				state[side * FEATURE_COUNT + MOBILITY] +=
+						Long.bitCount(Position.neighboursOf(cell) & empty);
+			}
+		}
+
+		attackMaps.refresh();
+	}
+
+	private void addPresence(int side, int cell, int sign) {
+		int base = side * FEATURE_COUNT;
+
+		state[base + MATERIAL] += sign;
+
+		if((Circuits.ringMask(Circuits.INNER) & Position.bit(cell)) != 0)
+			state[base + INNER_PRESENCE] += sign;
+
+		if((Circuits.ringMask(Circuits.OUTER) & Position.bit(cell)) != 0)
+			state[base + OUTER_PRESENCE] += sign;
+	}
+
+	/**
+	 * Makes the given move on the position and updates the features.
+	 *
+	 * @param move - a legal move for the side to move
+	 * @return whether an opponent pebble was captured
+	 */
+	public boolean makeMove(int move) {
+		int source = Move.source(move), target = Move.target(move);
+		int side = position.sideToMove(), opponent = side ^ 1;
+		int mobility = side * FEATURE_COUNT + MOBILITY;
+		boolean capture = position.sideAt(target) == opponent;
+
+		if((depth + 1) * STATE_SIZE > savedStates.length)
+			savedStates = Arrays.copyOf(savedStates, savedStates.length * 2);
+
+		System.arraycopy(state, 0, savedStates, (depth)++ * STATE_SIZE, STATE_SIZE);
+
+		long own = position.pebbles(side), others = position.pebbles(opponent);
+		long empty = ~(own | others);
+		long sourceAround = Position.neighboursOf(source);
+		long targetAround = Position.neighboursOf(target);
+
+		// The pebble leaves the source, freeing a step for the pebbles around.
+		state[mobility] += Long.bitCount(sourceAround & own)
+				- Long.bitCount(sourceAround & empty);
+		state[opponent * FEATURE_COUNT + MOBILITY] += Long.bitCount(sourceAround & others);
+
+		own &= ~Position.bit(source);
+		empty |= Position.bit(source);
+
+		if(capture) {
+			// The victim loses its steps; the point stays occupied for the rest.
+			state[opponent * FEATURE_COUNT + MOBILITY] -= Long.bitCount(targetAround & empty);
+			addPresence(opponent, target, -1);
+		} else {
+			state[mobility] -= Long.bitCount(targetAround & own);
+			state[opponent * FEATURE_COUNT + MOBILITY] -= Long.bitCount(targetAround & others);
+		}
+
+		state[mobility] += Long.bitCount(targetAround & empty & ~Position.bit(target));
+		addPresence(side, source, -1);
+		addPresence(side, target, 1);
+		attackMaps.makeMove(move);
+
+		return (capture);
+	}
+
+	/**
+	 * Unmakes the given move, which must be the last one made through this
+	 * evaluator, and restores the features.
+	 *
+	 * @param move - the move to take back
+	 */
+	public void unmakeMove(int move) {
+		attackMaps.unmakeMove(move);
+		System.arraycopy(savedStates, --(depth) * STATE_SIZE, state, 0, STATE_SIZE);
+	}
+
+	/**
+	 * Fills the given array with the differences between the features of the
+	 * side to move and those of its opponent.
+	 *
+	 * @param features - array of at least <tt>FEATURE_COUNT</tt> entries
+	 */
+	public void features(int[] features) {
+		int side = position.sideToMove();
+		int own = side * FEATURE_COUNT, opponent = (side ^ 1) * FEATURE_COUNT;
+
+		for(int feature = 0; feature < ATTACKED; feature++) {
+			features[feature] = state[own + feature] - state[opponent + feature];
+		}
+
+		features[ATTACKED] = circuitCount(side, true) - circuitCount(side ^ 1, true);
+		features[CONTROL] = circuitCount(side, false) - circuitCount(side ^ 1, false);
+	}
+
+	/**
+	 * Returns the number of opponent pebbles attacked (or empty points
+	 * reachable) by the given side, counted once for each circuit.
+	 */
+	private int circuitCount(int side, boolean attacks) {
+		if(attacks) {
+			return (Long.bitCount(attackMaps.attacked(side, Circuits.INNER))
+					+ Long.bitCount(attackMaps.attacked(side, Circuits.OUTER)));
+		}
+
+		return (Long.bitCount(attackMaps.reachable(side, Circuits.INNER))
+				+ Long.bitCount(attackMaps.reachable(side, Circuits.OUTER)));
+	}
+
+	/**
+	 * Returns the score of the position for the side to move.
+	 */
+	public int evaluate() {
+		int side = position.sideToMove();
+		int own = side * FEATURE_COUNT, opponent = (side ^ 1) * FEATURE_COUNT;
+		int score = 0;
+
+		for(int feature = 0; feature < ATTACKED; feature++) {
+			score += weights[feature] * (state[own + feature] - state[opponent + feature]);
+		}
+
+		score += weights[ATTACKED] * (circuitCount(side, true) - circuitCount(side ^ 1, true));
+		score += weights[CONTROL] * (circuitCount(side, false) - circuitCount(side ^ 1, false));
+
+		return (score);
+	}
+
+	/**
+	 * Returns the weight of the given feature.
+	 *
+	 * @param feature - index of the feature
+	 */
+	public int weight(int feature) {
+		return (weights[feature]);
+	}
+
+}
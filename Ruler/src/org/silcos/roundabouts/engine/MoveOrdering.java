@@ -0,0 +1,203 @@
+package org.silcos.roundabouts.engine;
+
+import java.util.Arrays;
+
+import org.silcos.roundabouts.AttackMaps;
+import org.silcos.roundabouts.Board;
+import org.silcos.roundabouts.Circuits;
+import org.silcos.roundabouts.Move;
+import org.silcos.roundabouts.Position;
+
+/**
+ * <p>
+ * Orders the moves of each node of a <tt>Search</tt>, so that the moves
+ * most likely to cause a cut-off are tried first: the move to try first
+ * (e.g. the best move of the previous iteration), then captures, by the
+ * outcome of their static exchange and the value of the victim, then the
+ * killer moves of the ply, and then the other quiet moves by their history.
+ *
+ * <p>
+ * The value of a victim grows with the circuits it lies on (from which it
+ * threatens pebbles), and quiet moves taking a threatened pebble away
+ * from the circuits it is exposed on get a bonus. Killers are the last two
+ * quiet moves that caused a cut-off at a ply; the butterfly history counts
+ * the cut-offs of each quiet move (by side, source and target), weighted
+ * by the square of the remaining depth.
+ *
+ * <p>
+ * Everything is kept in primitive arrays allocated once, so ordering
+ * allocates nothing per node.
+ *
+ * @author Shukant Pal
+ */
+final class MoveOrdering {
+
+	private static final int FIRST_SCORE = 1 << 30;
+	private static final int CAPTURE_SCORE = 1 << 28;
+	private static final int KILLER_SCORE = 1 << 26;
+	private static final int ESCAPE_BONUS = 1 << 20;
+
+	/**
+	 * History entries are halved when one grows beyond this.
+	 */
+	private static final int HISTORY_LIMIT = 1 << 19;
+
+	private static final int KILLER_SLOTS = 2;
+
+	private final Search search;
+	private final Position position;
+	private final AttackMaps attackMaps;
+
+	private final int[][] scores;
+	private final int[][] exchanges;
+	private final int[] killers;
+	private final int[] history;
+
+	MoveOrdering(Search search) {
+		this.search = search;
+		this.position = search.evaluator().position();
+		this.attackMaps = search.evaluator().attackMaps();
+		this.scores = new int[Search.MAX_PLY + 1][Position.MAX_MOVES];
+		this.exchanges = new int[Search.MAX_PLY + 1][Position.MAX_MOVES];
+		this.killers = new int[(Search.MAX_PLY + 1) * KILLER_SLOTS];
+		this.history = new int[2 * Board.arealSize * Board.arealSize];
+	}
+
+	private static int historyIndex(int side, int move) {
+		return ((side * Board.arealSize + Move.source(move)) * Board.arealSize
+				+ Move.target(move));
+	}
+
+	/**
+	 * Forgets the killers and history, e.g. before searching an unrelated
+	 * position.
+	 */
+	void clear() {
+		Arrays.fill(killers, Move.NONE);
+		Arrays.fill(history, 0);
+	}
+
+	/**
+	 * Scores the given moves of the node at the given ply.
+	 *
+	 * @param moves - the moves of the node
+	 * @param count - the number of moves
+	 * @param ply - the distance of the node from the root
+	 * @param firstMove - a move to try before all the others, or <tt>
+	 * 					Move.NONE</tt>
+	 */
+	void scoreMoves(int[] moves, int count, int ply, int firstMove) {
+		int side = position.sideToMove();
+		long threatened = attackMaps.attacked(side ^ 1);
+		int[] plyScores = scores[ply], plyExchanges = exchanges[ply];
+
+		for(int moveIdx = 0; moveIdx < count; moveIdx++) {
+			int move = moves[moveIdx];
+			int source = Move.source(move), target = Move.target(move);
+
+			plyExchanges[moveIdx] = 0;
+
+			if(move == firstMove) {
+				plyScores[moveIdx] = FIRST_SCORE;
+			} else if(position.sideAt(target) == (side ^ 1)) {
+				int exchange = search.staticExchange(move);
+				int victimValue = 0;
+
+				for(int ring = Circuits.INNER; ring <= Circuits.OUTER; ring++) {
+					if((Circuits.ringMask(ring) & Position.bit(target)) != 0)
+						++(victimValue);
+				}
+
+				plyExchanges[moveIdx] = exchange;
+				plyScores[moveIdx] = CAPTURE_SCORE + (exchange << 4) + victimValue;
+			} else if(move == killers[ply * KILLER_SLOTS] ||
+					move == killers[ply * KILLER_SLOTS + 1]) {
+				plyScores[moveIdx] = KILLER_SCORE
+						+ ((move == killers[ply * KILLER_SLOTS]) ? 1 : 0);
+			} else {
+				plyScores[moveIdx] = history[historyIndex(side, move)];
+
+				if((threatened & Position.bit(source)) != 0 &&
+						(attackMaps.reachable(side ^ 1) & Position.bit(target)) == 0)
+					plyScores[moveIdx] += ESCAPE_BONUS;
+			}
+		}
+	}
+
+	/**
+	 * Moves the best-scored of the moves from <tt>index</tt> on to <tt>index
+	 * </tt>, and returns it. Calling this for increasing indices yields the
+	 * moves in order, without sorting the ones never reached.
+	 *
+	 * @param moves - the moves scored by <tt>scoreMoves</tt>
+	 * @param count - the number of moves
+	 * @param index - the number of moves already picked
+	 * @param ply - the distance of the node from the root
+	 */
+	int next(int[] moves, int count, int index, int ply) {
+		int[] plyScores = scores[ply], plyExchanges = exchanges[ply];
+		int best = index;
+
+		for(int moveIdx = index + 1; moveIdx < count; moveIdx++) {
+			if(plyScores[moveIdx] > plyScores[best])
+				best = moveIdx;
+		}
+
+		if(best != index) {
+			int move = moves[best], score = plyScores[best], exchange = plyExchanges[best];
+
+			moves[best] = moves[index];
+			plyScores[best] = plyScores[index];
+			plyExchanges[best] = plyExchanges[index];
+			moves[index] = move;
+			plyScores[index] = score;
+			plyExchanges[index] = exchange;
+		}
+
+		return (moves[index]);
+	}
+
+	/**
+	 * Returns the static exchange of the move picked at the given index, if
+	 * it is a capture (0 otherwise).
+	 */
+	int exchangeAt(int ply, int index) {
+		return (exchanges[ply][index]);
+	}
+
+	/**
+	 * Returns whether the move picked at the given index is a quiet move
+	 * other than the first move or a killer, i.e. one that may be reduced or
+	 * pruned.
+	 */
+	boolean isQuietAt(int ply, int index) {
+		return (scores[ply][index] < KILLER_SCORE);
+	}
+
+	/**
+	 * Records that the given quiet move caused a cut-off at the given ply,
+	 * with the given depth remaining.
+	 *
+	 * @param move - the move that caused the cut-off
+	 * @param side - the side that played it
+	 * @param depth - the depth remaining at the node
+	 * @param ply - the distance of the node from the root
+	 */
+	void recordCutoff(int move, int side, int depth, int ply) {
+		if(killers[ply * KILLER_SLOTS] != move) {
+			killers[ply * KILLER_SLOTS + 1] = killers[ply * KILLER_SLOTS];
+			killers[ply * KILLER_SLOTS] = move;
+		}
+
+		int index = historyIndex(side, move);
+
+		history[index] += depth * depth;
+
+		if(history[index] > HISTORY_LIMIT) {
+			for(int entry = 0; entry < history.length; entry++) {
+				history[entry] >>= 1;
+			}
+		}
+	}
+
+}
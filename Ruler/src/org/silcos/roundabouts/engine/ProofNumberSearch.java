@@ -0,0 +1,312 @@
+package org.silcos.roundabouts.engine;
+
+import java.util.Arrays;
+
+import org.silcos.roundabouts.Move;
+import org.silcos.roundabouts.Position;
+
+/**
+ * <p>
+ * Proves or disproves that the side to move in a position can force a win
+ * (capturing all the opponent pebbles), with a depth-first proof-number
+ * search (df-pn). Unlike an alpha-beta search, it needs no evaluation and
+ * gives a yes or no answer, which is what puzzles need to be checked.
+ *
+ * <p>
+ * The attacker (the side to move at the root) moves at OR nodes and the
+ * defender at AND nodes. Each node has a proof number (the least number of
+ * leaves to prove to win) and a disproof number; df-pn searches below the
+ * most-proving node until its numbers cross the thresholds given by its
+ * parent, and keeps the numbers in a bounded transposition table, which
+ * replaces the entry that took less work in a full bucket.
+ *
+ * <p>
+ * A position without moves is a draw, and so is a position repeating one
+ * on the current path, or beyond the ply limit - all of which disprove the
+ * win. Proofs hold regardless of the path; a disproof may be an artifact
+ * of the ply limit or of a repetition found through another path.
+ *
+ * <p>
+ * Solvers are not thread-safe; each thread needs its own.
+ *
+ * @author Shukant Pal
+ */
+public final class ProofNumberSearch {
+
+	public static final int PROVEN = 1;
+	public static final int DISPROVEN = -1;
+	public static final int UNKNOWN = 0;
+
+	private static final int INFINITE = Integer.MAX_VALUE / 2;
+	private static final int BUCKET_SIZE = 2;
+
+	private final long[] keys;
+	private final int[] proofs;
+	private final int[] disproofs;
+	private final int[] work;
+	private final int mask;
+
+	private final Position position;
+	private final int[][] moveStack;
+	private final long[] pathKeys;
+
+	private int attacker;
+	private int maxPly;
+	private long nodes;
+	private long maxNodes;
+
+	/**
+	 * Constructs a solver with a transposition table of <tt>2^tableBits</tt>
+	 * entries.
+	 *
+	 * @param tableBits - log2 of the number of table entries (1 to 28)
+	 */
+	public ProofNumberSearch(int tableBits) {
+		if(tableBits < 1 || tableBits > 28)
+			throw new IllegalArgumentException("Table bits out of range: " + tableBits);
+
+		this.keys = new long[1 << tableBits];
+		this.proofs = new int[1 << tableBits];
+		this.disproofs = new int[1 << tableBits];
+		this.work = new int[1 << tableBits];
+		this.mask = (1 << tableBits) - BUCKET_SIZE;
+		this.position = new Position();
+		this.moveStack = new int[Search.MAX_PLY + 1][Position.MAX_MOVES];
+		this.pathKeys = new long[Search.MAX_PLY + 1];
+		this.maxPly = Search.MAX_PLY;
+	}
+
+	/**
+	 * Sets the number of plies beyond which positions count as not won.
+	 *
+	 * @param maxPly - the ply limit, up to <tt>Search.MAX_PLY</tt>
+	 */
+	public void setMaxPly(int maxPly) {
+		if(maxPly < 1 || maxPly > Search.MAX_PLY)
+			throw new IllegalArgumentException("Ply limit out of range: " + maxPly);
+
+		this.maxPly = maxPly;
+	}
+
+	/**
+	 * Returns the number of nodes expanded by the last solve.
+	 */
+	public long nodes() {
+		return (nodes);
+	}
+
+	/**
+	 * Tries to prove that the side to move in the given position can force a
+	 * win, expanding at most the given number of nodes. The position isn't
+	 * modified.
+	 *
+	 * @param root - the position to solve
+	 * @param maxNodes - the budget of expanded nodes
+	 * @return <tt>PROVEN</tt>, <tt>DISPROVEN</tt>, or <tt>UNKNOWN</tt> if the
+	 * 			budget ran out
+	 */
+	public int solve(Position root, long maxNodes) {
+		position.set(root.pebbles(Position.STARTER), root.pebbles(Position.OTHER),
+				root.sideToMove());
+
+		Arrays.fill(keys, 0);
+		Arrays.fill(work, 0);
+
+		this.attacker = root.sideToMove();
+		this.nodes = 0;
+		this.maxNodes = maxNodes;
+
+		mid(INFINITE, INFINITE, 0);
+
+		int entry = probe(position.key());
+
+		if(entry == -1)
+			return (UNKNOWN);
+		else if(proofs[entry] == 0)
+			return (PROVEN);
+		else if(disproofs[entry] == 0)
+			return (DISPROVEN);
+
+		return (UNKNOWN);
+	}
+
+	/**
+	 * Returns a move proving the win found by the last solve (one leading to
+	 * a proven position), or <tt>Move.NONE</tt> if it wasn't proven. The
+	 * position must be the one solved.
+	 *
+	 * @param root - the position solved
+	 */
+	public int provingMove(Position root) {
+		position.set(root.pebbles(Position.STARTER), root.pebbles(Position.OTHER),
+				root.sideToMove());
+
+		int[] moves = moveStack[0];
+		int count = position.generateMoves(moves);
+
+		for(int moveIdx = 0; moveIdx < count; moveIdx++) {
+			position.makeMove(moves[moveIdx]);
+
+			boolean proven = position.pebbleCount(attacker ^ 1) == 0;
+
+			if(!proven) {
+				int entry = probe(position.key());
+
+				proven = (entry != -1 && proofs[entry] == 0);
+			}
+
+			position.unmakeMove(moves[moveIdx]);
+
+			if(proven)
+				return (moves[moveIdx]);
+		}
+
+		return (Move.NONE);
+	}
+
+	/**
+	 * Returns the index of the table entry holding the given key, or -1.
+	 */
+	private int probe(long key) {
+		int bucket = (int) (key ^ (key >>> 32)) & mask;
+
+		for(int entry = bucket; entry < bucket + BUCKET_SIZE; entry++) {
+			if(keys[entry] == key && work[entry] != 0)
+				return (entry);
+		}
+
+		return (-1);
+	}
+
+	private void store(long key, int proof, int disproof, int spent) {
+		int bucket = (int) (key ^ (key >>> 32)) & mask;
+		int victim = bucket;
+
+		for(int entry = bucket; entry < bucket + BUCKET_SIZE; entry++) {
+			if(keys[entry] == key || work[entry] == 0) {
+				victim = entry;
+				break;
+			} else if(work[entry] < work[victim]) {
+				victim = entry;
+			}
+		}
+
+		keys[victim] = key;
+		proofs[victim] = proof;
+		disproofs[victim] = disproof;
+		work[victim] = Math.max(1, spent);
+	}
+
+	private static int add(int numberA, int numberB) {
+		return (Math.min(INFINITE, numberA + numberB));
+	}
+
+	/**
+	 * Returns the proof number (<tt>disproof</tt> false) or disproof number
+	 * of the current position, which was just reached at the given ply; from
+	 * its terminal state, the table, or 1 if it is unknown.
+	 */
+	private int numberOf(int ply, boolean disproof) {
+		int side = position.sideToMove();
+
+		if(position.pebbleCount(side) == 0) {
+			boolean won = (side != attacker);
+
+			return ((won != disproof) ? 0 : INFINITE);
+		}
+
+		long key = position.key();
+
+		for(int earlier = ply - 2; earlier >= 0; earlier -= 2) {
+			if(pathKeys[earlier] == key)
+				return (disproof ? 0 : INFINITE);
+		}
+
+		if(ply >= maxPly)
+			return (disproof ? 0 : INFINITE);
+
+		int entry = probe(key);
+
+		if(entry == -1)
+			return (1);
+
+		return (disproof ? disproofs[entry] : proofs[entry]);
+	}
+
+	/**
+	 * Expands the current position (at the given ply) until its proof or
+	 * disproof number reaches the given threshold, and stores its numbers.
+	 */
+	private void mid(int proofThreshold, int disproofThreshold, int ply) {
+		long key = position.key();
+		int[] moves = moveStack[ply];
+		int count = position.generateMoves(moves);
+		boolean orNode = (position.sideToMove() == attacker);
+		long startNodes = nodes;
+
+		pathKeys[ply] = key;
+		++(nodes);
+
+		if(count == 0) {
+			store(key, INFINITE, 0, 1);
+			return;
+		}
+
+		while(true) {
+			int proof = orNode ? INFINITE : 0, disproof = orNode ? 0 : INFINITE;
+			int best = -1, bestNumber = INFINITE, secondNumber = INFINITE;
+			int bestProof = 0, bestDisproof = 0;
+
+			for(int moveIdx = 0; moveIdx < count; moveIdx++) {
+				position.makeMove(moves[moveIdx]);
+
+				int childProof = numberOf(ply + 1, false);
+				int childDisproof = numberOf(ply + 1, true);
+
+				position.unmakeMove(moves[moveIdx]);
+
+				int number = orNode ? childProof : childDisproof;
+
+				if(orNode) {
+					proof = Math.min(proof, childProof);
+					disproof = add(disproof, childDisproof);
+				} else {
+					proof = add(proof, childProof);
+					disproof = Math.min(disproof, childDisproof);
+				}
+
+				if(number < bestNumber) {
+					secondNumber = bestNumber;
+					bestNumber = number;
+					best = moveIdx;
+					bestProof = childProof;
+					bestDisproof = childDisproof;
+				} else if(number < secondNumber) {
+					secondNumber = number;
+				}
+			}
+
+			if(proof >= proofThreshold || disproof >= disproofThreshold ||
+					nodes >= maxNodes) {
+				store(key, proof, disproof, (int) Math.min(Integer.MAX_VALUE,
+						nodes - startNodes));
+				return;
+			}
+
+			int childProofThreshold, childDisproofThreshold;
+
+			if(orNode) {
+				childProofThreshold = Math.min(proofThreshold, add(secondNumber, 1));
+				childDisproofThreshold = add(disproofThreshold - disproof, bestDisproof);
+			} else {
+				childProofThreshold = add(proofThreshold - proof, bestProof);
+				childDisproofThreshold = Math.min(disproofThreshold, add(secondNumber, 1));
+			}
+
+			position.makeMove(moves[best]);
+			mid(childProofThreshold, childDisproofThreshold, ply + 1);
+			position.unmakeMove(moves[best]);
+		}
+	}
+
+}
@@ -0,0 +1,238 @@
+package org.silcos.roundabouts.engine;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.silcos.roundabouts.Move;
+import org.silcos.roundabouts.Position;
+import org.silcos.roundabouts.PositionNotation;
+
+/**
+ * <p>
+ * Drives an engine running in another process through the protocol of
+ * <tt>EngineProtocol</tt>, e.g. to play matches between engine builds
+ * side by side, several at once. The command starting the process may pin
+ * it to cores, e.g. by starting with <tt>taskset -c 2</tt> on Linux.
+ *
+ * <p>
+ * If the engine process dies, the call waiting for it fails with an
+ * <tt>IOException</tt>, and the caller (not this JVM) decides what to do -
+ * e.g. score the game as lost by the engine. Each engine is meant to be
+ * driven by one thread.
+ *
+ * @author Shukant Pal
+ */
+public final class RemoteEngine implements Closeable {
+
+	private final Process process;
+	private final BufferedReader in;
+	private final PrintWriter out;
+
+	private String name = "";
+	private Consumer<String> infoListener;
+	private int ponderMove = Move.NONE;
+
+	private RemoteEngine(Process process) {
+		this.process = process;
+		this.in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		this.out = new PrintWriter(process.getOutputStream(), true);
+	}
+
+	/**
+	 * Starts the engine process with the given command, and waits for it to
+	 * identify itself.
+	 *
+	 * @param command - the program and its arguments
+	 * @return the engine, ready to use
+	 * @throws IOException - if the process can't be started, or doesn't
+	 * 			speak the protocol
+	 */
+	public static RemoteEngine start(List<String> command) throws IOException {
+		Process process = new ProcessBuilder(command)
+				.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		RemoteEngine engine = new RemoteEngine(process);
+
+		try {
+			engine.send("uci");
+
+			String line;
+
+			while(!(line = engine.receive()).equals("uciok")) {
+				if(line.startsWith("id name "))
+					engine.name = line.substring("id name ".length());
+			}
+		} catch (IOException e) {
+			process.destroyForcibly();
+			throw e;
+		}
+
+		return (engine);
+	}
+
+	/**
+	 * Returns the name the engine gave.
+	 */
+	public String name() {
+		return (name);
+	}
+
+	/**
+	 * Sets a listener for the <tt>info</tt> lines sent by the engine while it
+	 * searches.
+	 *
+	 * @param infoListener - the listener, or null
+	 */
+	public void setInfoListener(Consumer<String> infoListener) {
+		this.infoListener = infoListener;
+	}
+
+	/**
+	 * Sets an option of the engine.
+	 */
+	public void setOption(String option, Object value) throws IOException {
+		send("setoption name " + option + " value " + value);
+	}
+
+	/**
+	 * Tells the engine that a new game starts, and waits until it is ready.
+	 */
+	public void newGame() throws IOException {
+		send("ucinewgame");
+		awaitReady();
+	}
+
+	/**
+	 * Waits until the engine has carried out the commands sent before.
+	 */
+	public void awaitReady() throws IOException {
+		send("isready");
+
+		while(!receive().equals("readyok"));
+	}
+
+	/**
+	 * Asks the engine for its move in the given position, and waits for it.
+	 * The engine knows nothing of the positions before it; see <tt>
+	 * bestMove(Position, int[], String)</tt> to apply the draw rule in games.
+	 *
+	 * @param position - the position, written in <tt>PositionNotation</tt>
+	 * @param limits - the limits of the search, e.g. <tt>"movetime 1000"
+	 * 				</tt> or <tt>"stime 60000 otime 60000 sinc 500 oinc 500"
+	 * 				</tt>
+	 * @return the move, or <tt>Move.NONE</tt> if there are no moves
+	 * @throws IOException - if the engine died, or answered nonsense
+	 */
+	public int bestMove(Position position, String limits) throws IOException {
+		return (bestMove(position, new int[0], limits));
+	}
+
+	/**
+	 * Asks the engine for its move after the given moves from the given
+	 * start position, and waits for it. The engine is given the moves, so that
+	 * it sees repetitions and the plies without captures.
+	 *
+	 * @param start - the position the game started from
+	 * @param moves - the moves played from it, in order
+	 * @param limits - the limits of the search, as for <tt>bestMove(Position,
+	 * 				String)</tt>
+	 * @return the move, or <tt>Move.NONE</tt> if there are no moves
+	 * @throws IOException - if the engine died, or answered nonsense
+	 */
+	public int bestMove(Position start, int[] moves, String limits) throws IOException {
+		StringBuilder command = new StringBuilder("position fen ")
+				.append(PositionNotation.toString(start));
+
+		if(moves.length > 0) {
+			command.append(" moves");
+
+			for(int move : moves) {
+				command.append(' ').append(Move.toString(move));
+			}
+		}
+
+		send(command.toString());
+		send("go " + limits);
+
+		while(true) {
+			String line = receive();
+
+			if(line.startsWith("info ")) {
+				if(infoListener != null)
+					infoListener.accept(line);
+			} else if(line.startsWith("bestmove ")) {
+				String[] tokens = line.split(" ");
+
+				try {
+					ponderMove = (tokens.length == 4 && tokens[2].equals("ponder"))
+							? Move.parse(tokens[3]) : Move.NONE;
+
+					return (tokens[1].equals("none") ? Move.NONE : Move.parse(tokens[1]));
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Bad answer from " + name + ": " + line, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the reply the engine expected to its last move, or <tt>
+	 * Move.NONE</tt>.
+	 */
+	public int ponderMove() {
+		return (ponderMove);
+	}
+
+	/**
+	 * Asks the engine to stop searching, e.g. from another thread while
+	 * <tt>bestMove</tt> waits for an infinite search.
+	 */
+	public void stop() {
+		out.println("stop");
+	}
+
+	/**
+	 * Returns whether the engine process is still running.
+	 */
+	public boolean isAlive() {
+		return (process.isAlive());
+	}
+
+	/**
+	 * Asks the engine to quit, and kills it if it doesn't within a second.
+	 */
+	@Override
+	public void close() {
+		out.println("quit");
+
+		try {
+			if(!process.waitFor(1, TimeUnit.SECONDS))
+				process.destroyForcibly();
+		} catch (InterruptedException e) {
+			process.destroyForcibly();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void send(String command) throws IOException {
+		out.println(command);
+
+		if(out.checkError())
+			throw new IOException("Engine " + name + " is gone");
+	}
+
+	private String receive() throws IOException {
+		String line = in.readLine();
+
+		if(line == null)
+			throw new IOException("Engine " + name + " exited");
+
+		return (line);
+	}
+
+}
@@ -0,0 +1,815 @@
+package org.silcos.roundabouts.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.silcos.roundabouts.Circuits;
+import org.silcos.roundabouts.DrawRule;
+import org.silcos.roundabouts.Move;
+import org.silcos.roundabouts.Position;
+import org.silcos.roundabouts.PositionHistory;
+import org.silcos.roundabouts.tablebase.Tablebase;
+
+/**
+ * <p>
+ * Searches the moves of a position with a fixed-depth alpha-beta (negamax)
+ * search, and scores its leaves with a capture-only quiescence search, so
+ * that a loop move taking a pebble from across the board right after the
+ * horizon isn't missed.
+ *
+ * <p>
+ * The quiescence search stands pat on the static evaluation, and skips
+ * captures that cannot bring the score up to alpha even if they win their
+ * static exchange (delta pruning). Static exchanges are estimated by
+ * replaying the recaptures on the target point through the circuits, each
+ * side recapturing only while it doesn't lose by it.
+ *
+ * <p>
+ * Scores are from the side to move's point of view. A side without pebbles
+ * has lost; losses found <tt>n</tt> plies from the root score <tt>-WIN + n
+ * </tt>, so that quicker wins are preferred. A side that has pebbles but
+ * no moves is treated as drawn, as in the endgame tables. Moves are tried
+ * in the order given by <tt>MoveOrdering</tt>; at the root, the best move
+ * of the previous search comes first, so that iterative deepening pays off.
+ * Null-move pruning, late-move reductions and futility pruning are done as
+ * set in the <tt>SearchOptions</tt> of the search. Results are kept in a
+ * <tt>TranspositionTable</tt>, which gives cut-offs and the move to try
+ * first; <tt>think</tt> deepens the search iteratively as long as its <tt>
+ * TimeManager</tt> allows. <tt>analyze</tt> does the same for several best
+ * lines at once (multi-PV), streaming them to an <tt>AnalysisListener</tt>.
+ * Positions repeating one since the root, or drawn by the <tt>DrawRule
+ * </tt> given the history of the game, score as draws.
+ *
+ * <p>
+ * With a <tt>Tablebase</tt> set, positions below the root that it covers
+ * aren't searched but scored from it: won positions <tt>d</tt> plies from
+ * the win score <tt>TABLEBASE_WIN - d</tt>, above any evaluation but below
+ * the wins found by the search itself.
+ *
+ * <p>
+ * Searches are not thread-safe and allocate nothing per node; each search
+ * thread needs its own.
+ *
+ * @author Shukant Pal
+ */
+public final class Search {
+
+	public static final int INFINITY = 32000;
+	public static final int WIN = 30000;
+	public static final int MAX_PLY = 128;
+	public static final int TABLEBASE_WIN = WIN - MAX_PLY - 1;
+
+	/**
+	 * Margin added to the material gained by a capture in delta pruning,
+	 * for the positional change the capture may bring.
+	 */
+	private static final int DELTA_MARGIN = 50;
+
+	/**
+	 * log2 of the number of entries of the default transposition table.
+	 */
+	private static final int DEFAULT_TABLE_BITS = 18;
+
+	/**
+	 * Number of nodes between two checks of the time.
+	 */
+	private static final int TIME_CHECK_NODES = 4096;
+
+	/**
+	 * Bound on the captures in one exchange; each removes a pebble.
+	 */
+	private static final int MAX_EXCHANGES = 32;
+
+	private final Evaluator evaluator;
+	private final Position position;
+
+	private final MoveOrdering ordering;
+	private SearchOptions options;
+	private final int[][] moveStack;
+	private final int[] exchangeGains;
+	private final int[] exchangeMoves;
+
+	private TranspositionTable table;
+	private final PositionHistory history;
+	private DrawRule drawRule;
+	private Tablebase tablebase;
+	private int rootIndex;
+	private volatile TimeManager timeManager;
+	private boolean aborted;
+
+	private long nodes;
+
+	/**
+	 * Node count at which the time is next checked.
+	 */
+	private long nextTimeCheck;
+	private int bestMove;
+	private int completedDepth;
+	private int lastScore;
+
+	/**
+	 * Constructs a search of the given position, evaluated with the default
+	 * weights. The position must not be changed while searching.
+	 *
+	 * @param position - the position to search
+	 */
+	public Search(Position position) {
+		this(new Evaluator(position));
+	}
+
+	/**
+	 * Constructs a search of the position of the given evaluator.
+	 *
+	 * @param evaluator - evaluator of the position to search
+	 */
+	public Search(Evaluator evaluator) {
+		this.evaluator = evaluator;
+		this.position = evaluator.position();
+		this.moveStack = new int[MAX_PLY + 1][Position.MAX_MOVES];
+		this.exchangeGains = new int[MAX_EXCHANGES];
+		this.exchangeMoves = new int[MAX_EXCHANGES];
+		this.ordering = new MoveOrdering(this);
+		this.options = new SearchOptions();
+		this.table = new TranspositionTable(DEFAULT_TABLE_BITS);
+		this.history = new PositionHistory();
+		this.drawRule = DrawRule.STANDARD;
+
+		history.start(position.key());
+	}
+
+	/**
+	 * Returns the evaluator used by this search.
+	 */
+	public Evaluator evaluator() {
+		return (evaluator);
+	}
+
+	/**
+	 * Returns a copy of the pruning options of this search.
+	 */
+	public SearchOptions options() {
+		return (options.copy());
+	}
+
+	/**
+	 * Sets the pruning options of this search (which are copied).
+	 *
+	 * @param options - the options for the following searches
+	 */
+	public void setOptions(SearchOptions options) {
+		this.options = options.copy();
+	}
+
+	/**
+	 * Returns the transposition table of this search.
+	 */
+	public TranspositionTable table() {
+		return (table);
+	}
+
+	/**
+	 * Sets the transposition table of this search, e.g. to share one between
+	 * searches run one after another.
+	 *
+	 * @param table - the table to use from now on
+	 */
+	public void setTable(TranspositionTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * Replaces the position searched with a copy of the given one (without
+	 * its history of moves). The killers, history and table are kept.
+	 *
+	 * @param source - the position to search from now on
+	 */
+	public void setPosition(Position source) {
+		setPosition(source, null);
+	}
+
+	/**
+	 * Replaces the position searched with a copy of the given one, reached
+	 * through the positions of the given game history (the last of which
+	 * must be the given position), so that repetitions of them are seen.
+	 *
+	 * @param source - the position to search from now on
+	 * @param gameHistory - the history of the game, or null if unknown
+	 */
+	public void setPosition(Position source, PositionHistory gameHistory) {
+		position.set(source.pebbles(Position.STARTER), source.pebbles(Position.OTHER),
+				source.sideToMove());
+		evaluator.refresh();
+		bestMove = Move.NONE;
+
+		if(gameHistory != null && gameHistory.size() > 0 &&
+				gameHistory.lastKey() == position.key())
+			history.copyFrom(gameHistory);
+		else
+			history.start(position.key());
+	}
+
+	/**
+	 * Returns the rule by which the search scores positions as drawn.
+	 */
+	public DrawRule drawRule() {
+		return (drawRule);
+	}
+
+	/**
+	 * Sets the rule by which the search scores positions as drawn; it should
+	 * be the rule of the game played.
+	 *
+	 * @param drawRule - the draw rule
+	 */
+	public void setDrawRule(DrawRule drawRule) {
+		this.drawRule = drawRule;
+	}
+
+	/**
+	 * Sets the endgame tables to score the positions they cover from, or
+	 * null to search all positions.
+	 *
+	 * @param tablebase - the tablebase, or null
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * Returns the position searched; it must not be modified while a search
+	 * is running.
+	 */
+	public Position position() {
+		return (position);
+	}
+
+	/**
+	 * Asks a running <tt>think</tt> to stop as soon as possible. It still
+	 * completes its first iteration, so that it has a move to give. Nothing
+	 * is stopped if the search isn't running yet; to stop a search that may
+	 * not have started, stop its <tt>TimeManager</tt> instead.
+	 */
+	public void stop() {
+		TimeManager time = timeManager;
+
+		if(time != null)
+			time.stop();
+	}
+
+	/**
+	 * Returns the depth of the last iteration completed by <tt>think</tt>.
+	 */
+	public int completedDepth() {
+		return (completedDepth);
+	}
+
+	/**
+	 * Returns the number of nodes visited since this search was constructed.
+	 */
+	public long nodes() {
+		return (nodes);
+	}
+
+	/**
+	 * Returns the best move found by the last call to <tt>search</tt>, or
+	 * <tt>Move.NONE</tt> if the position had no moves.
+	 */
+	public int bestMove() {
+		return (bestMove);
+	}
+
+	/**
+	 * Forgets the killer moves, history and best move gathered by earlier
+	 * searches, e.g. before searching an unrelated position.
+	 */
+	public void clearHistory() {
+		ordering.clear();
+		bestMove = Move.NONE;
+	}
+
+	/**
+	 * Returns whether the given score is a forced win or loss.
+	 *
+	 * @param score - a score returned by the search
+	 */
+	public static boolean isDecisive(int score) {
+		return (Math.abs(score) >= WIN - MAX_PLY);
+	}
+
+	/**
+	 * Searches the position with iterative deepening, until the given depth
+	 * is completed, the time manager says so, or <tt>stop</tt> is called,
+	 * and returns the best move (<tt>Move.NONE</tt> if there are no moves).
+	 * The score of the move is available from <tt>score</tt> afterwards.
+	 *
+	 * @param maxDepth - the greatest depth to search to
+	 * @param time - the time manager, which is started by this method
+	 */
+	public int think(int maxDepth, TimeManager time) {
+		analyze(1, maxDepth, time, null);
+
+		return (bestMove);
+	}
+
+	/**
+	 * Searches the position like <tt>think</tt>, but for the given number
+	 * of best lines (multi-PV): each iteration searches the root once for each
+	 * line, leaving out the root moves of the better lines, so that the lines
+	 * share the table and move ordering. The lines are given to the listener
+	 * as they are found, and the lines of the last completed iteration are
+	 * returned (best first; none if there are no moves).
+	 *
+	 * @param lineCount - the number of lines wanted, at least 1
+	 * @param maxDepth - the greatest depth to search to, at least 1
+	 * @param time - the time manager, which is started by this method
+	 * @param listener - the listener to stream the lines to, or null
+	 */
+	public List<AnalysisLine> analyze(int lineCount, int maxDepth, TimeManager time,
+			AnalysisListener listener) {
+		if(lineCount < 1 || maxDepth < 1)
+			throw new IllegalArgumentException("Bad line count or depth");
+
+		int count = position.generateMoves(moveStack[0]);
+		int lines = Math.min(lineCount, count);
+		int[] rootMoves = new int[lines];
+		List<AnalysisLine> result = Collections.emptyList();
+		long startNodes = nodes;
+
+		aborted = false;
+		nextTimeCheck = nodes + TIME_CHECK_NODES;
+		completedDepth = 0;
+		timeManager = time;
+		table.newSearch();
+		time.start();
+
+		if(lines == 0) {
+			timeManager = null;
+			bestMove = Move.NONE;
+			lastScore = (position.pebbleCount(position.sideToMove()) == 0) ? -WIN : 0;
+
+			return (result);
+		}
+
+		for(int depth = 1; depth <= maxDepth; depth++) {
+			List<AnalysisLine> found = new ArrayList<>(lines);
+
+			for(int rank = 0; rank < lines; rank++) {
+				int firstMove = (rank < result.size()) ? result.get(rank).move()
+						: ((rank == 0) ? bestMove : Move.NONE);
+				int score = rootSearch(depth, rootMoves, rank, firstMove);
+
+				if(aborted)
+					break;
+
+				AnalysisLine line = new AnalysisLine(rank + 1, depth, score,
+						principalVariation(bestMove, depth), nodes - startNodes);
+
+				rootMoves[rank] = bestMove;
+				found.add(line);
+
+				if(listener != null)
+					listener.lineFound(line);
+			}
+
+			if(aborted)
+				break;
+
+			// Pruning may find a later line better; rank the lines by score.
+			found.sort((lineA, lineB) -> Integer.compare(lineB.score(), lineA.score()));
+
+			for(int rank = 0; rank < lines; rank++) {
+				AnalysisLine line = found.get(rank);
+
+				if(line.rank() != rank + 1)
+					found.set(rank, line.withRank(rank + 1));
+			}
+
+			result = Collections.unmodifiableList(found);
+			completedDepth = depth;
+
+			if(listener != null)
+				listener.depthCompleted(result);
+
+			int score = result.get(0).score();
+
+			if(!time.iterationDone(score, count) || (isDecisive(score) && !time.isPondering()))
+				break;
+		}
+
+		timeManager = null;
+		bestMove = result.get(0).move();
+		lastScore = result.get(0).score();
+
+		return (result);
+	}
+
+	/**
+	 * Returns the score of the move returned by the last <tt>think</tt>.
+	 */
+	public int score() {
+		return (lastScore);
+	}
+
+	/**
+	 * Returns the reply expected after the best move of the last search (the
+	 * best move stored for the position it leads to), or <tt>Move.NONE</tt>.
+	 */
+	public int expectedReply() {
+		if(bestMove == Move.NONE)
+			return (Move.NONE);
+
+		position.makeMove(bestMove);
+
+		int entry = table.probe(position.key());
+		int reply = (entry == -1) ? Move.NONE : table.move(entry);
+
+		if(reply != Move.NONE && !position.isLegal(reply))
+			reply = Move.NONE;
+
+		position.unmakeMove(bestMove);
+
+		return (reply);
+	}
+
+	/**
+	 * Returns whether <tt>think</tt> has to stop, checking the time every few
+	 * thousand nodes. Nothing stops its first iteration.
+	 */
+	private boolean shouldStop() {
+		TimeManager time = timeManager;
+
+		if(time == null || completedDepth == 0)
+			return (false);
+
+		if(!aborted && time.isStopped()) {
+			aborted = true;
+		} else if(!aborted && nodes >= nextTimeCheck) {
+			nextTimeCheck = nodes + TIME_CHECK_NODES;
+			aborted = time.mustStop();
+		}
+
+		return (aborted);
+	}
+
+	/**
+	 * Searches the position to the given depth (in plies, not counting the
+	 * quiescence search), and returns its score. The best move is available
+	 * from <tt>bestMove</tt> afterwards.
+	 *
+	 * @param depth - the depth to search to, at least 1
+	 */
+	public int search(int depth) {
+		return (rootSearch(depth, null, 0, bestMove));
+	}
+
+	/**
+	 * Searches the root to the given depth, leaving out the given moves, and
+	 * sets <tt>bestMove</tt>. The table isn't given the result if moves are
+	 * left out, as it isn't the result for the whole position.
+	 */
+	private int rootSearch(int depth, int[] excluded, int excludedCount, int firstMove) {
+		int[] moves = moveStack[0];
+		int count = position.generateMoves(moves);
+		int alpha = -INFINITY;
+
+		if(history.lastKey() != position.key())
+			history.start(position.key());
+
+		rootIndex = history.size() - 1;
+
+		if(firstMove == Move.NONE && excludedCount == 0) {
+			int entry = table.probe(position.key());
+
+			if(entry != -1)
+				firstMove = table.move(entry);
+		}
+
+		bestMove = Move.NONE;
+
+		if(position.pebbleCount(position.sideToMove()) == 0)
+			return (-WIN);
+		else if(count == 0)
+			return (0);
+
+		ordering.scoreMoves(moves, count, 0, firstMove);
+
+		nextMove:
+		for(int moveIdx = 0; moveIdx < count; moveIdx++) {
+			int move = ordering.next(moves, count, moveIdx, 0);
+
+			for(int excludedIdx = 0; excludedIdx < excludedCount; excludedIdx++) {
+				if(excluded[excludedIdx] == move)
+					continue nextMove;
+			}
+
+			boolean capture = evaluator.makeMove(move);
+
+			history.push(position.key(), capture);
+
+			int score = -alphaBeta(depth - 1, -INFINITY, -alpha, 1, true);
+
+			history.pop();
+			evaluator.unmakeMove(move);
+
+			if(shouldStop())
+				break;
+
+			if(score > alpha) {
+				alpha = score;
+				bestMove = move;
+			}
+		}
+
+		if(!aborted && excludedCount == 0)
+			table.store(position.key(), bestMove, alpha, depth, TranspositionTable.EXACT, 0);
+
+		return (alpha);
+	}
+
+	/**
+	 * Returns the principal variation starting with the given root move, of
+	 * at most the given length, by following the best moves in the table.
+	 */
+	private int[] principalVariation(int move, int maxLength) {
+		int[] variation = new int[maxLength];
+		int length = 0;
+
+		while(move != Move.NONE && length < maxLength) {
+			position.makeMove(move);
+			variation[(length)++] = move;
+
+			int entry = table.probe(position.key());
+
+			move = (entry == -1) ? Move.NONE : table.move(entry);
+
+			if(move != Move.NONE && !position.isLegal(move))
+				move = Move.NONE;
+		}
+
+		for(int moveIdx = length - 1; moveIdx >= 0; moveIdx--) {
+			position.unmakeMove(variation[moveIdx]);
+		}
+
+		return (Arrays.copyOf(variation, length));
+	}
+
+	/**
+	 * Returns the score of the given tablebase probe result.
+	 */
+	private static int tablebaseScore(int result) {
+		switch(Tablebase.outcome(result)) {
+		case Tablebase.WIN:
+			return (TABLEBASE_WIN - Tablebase.distance(result));
+		case Tablebase.LOSS:
+			return (-TABLEBASE_WIN + Tablebase.distance(result));
+		default:
+			return (0);
+		}
+	}
+
+	private int alphaBeta(int depth, int alpha, int beta, int ply, boolean allowNull) {
+		int side = position.sideToMove();
+
+		if(position.pebbleCount(side) == 0)
+			return (-WIN + ply);
+		else if(history.repeatsSince(rootIndex) || drawRule.isDraw(history))
+			return (0);
+
+		if(tablebase != null && position.pebbleCount(side) + position.pebbleCount(side ^ 1)
+				<= tablebase.maxPebbles()) {
+			int result = tablebase.probe(position);
+
+			if(result != Tablebase.NOT_FOUND)
+				return (tablebaseScore(result));
+		}
+
+		if(depth <= 0 || ply >= MAX_PLY)
+			return (quiescence(alpha, beta, ply));
+
+		++(nodes);
+
+		if(shouldStop())
+			return (0);
+
+		long key = position.key();
+		int entry = table.probe(key);
+		int tableMove = Move.NONE;
+
+		if(entry != -1) {
+			int tableScore = table.score(entry, ply);
+			int bound = table.bound(entry);
+
+			tableMove = table.move(entry);
+
+			if(table.depth(entry) >= depth && (bound == TranspositionTable.EXACT ||
+					(bound == TranspositionTable.LOWER && tableScore >= beta) ||
+					(bound == TranspositionTable.UPPER && tableScore <= alpha)))
+				return (tableScore);
+		}
+
+		int originalAlpha = alpha;
+		int staticScore = evaluator.evaluate();
+
+		if(allowNull && options.nullMove() && depth >= options.nullMoveMinDepth() &&
+				staticScore >= beta && !isDecisive(beta)) {
+			int reducedDepth = depth - 1 - options.nullMoveReduction();
+
+			position.makeNullMove();
+			history.push(position.key(), true);
+
+			int score = -alphaBeta(reducedDepth, -beta, -beta + 1, ply + 1, false);
+
+			history.pop();
+			position.unmakeNullMove();
+
+			if(score >= beta) {
+				if(!options.nullMoveVerification() ||
+						position.pebbleCount(side) > options.verificationPebbles())
+					return (beta);
+
+				// Few pebbles left: passing may be better than any move.
+				if(alphaBeta(reducedDepth + 1, beta - 1, beta, ply, false) >= beta)
+					return (beta);
+			}
+		}
+
+		int[] moves = moveStack[ply];
+		int count = position.generateMoves(moves);
+
+		if(count == 0)
+			return (0);
+
+		boolean futile = options.futility() && depth <= options.futilityDepth() &&
+				!isDecisive(alpha) && staticScore + options.futilityMargin() * depth <= alpha;
+
+		int best = Move.NONE;
+
+		ordering.scoreMoves(moves, count, ply, tableMove);
+
+		for(int moveIdx = 0; moveIdx < count; moveIdx++) {
+			int move = ordering.next(moves, count, moveIdx, ply);
+			boolean quiet = ordering.isQuietAt(ply, moveIdx);
+
+			if(futile && quiet)
+				continue;
+
+			boolean capture = evaluator.makeMove(move);
+			int score;
+
+			history.push(position.key(), capture);
+
+			if(quiet && options.lateMoveReductions() && depth >= options.lateMoveMinDepth()
+					&& moveIdx >= options.lateMoveIndex()) {
+				score = -alphaBeta(depth - 1 - options.lateMoveReduction(),
+						-alpha - 1, -alpha, ply + 1, true);
+
+				if(score > alpha)
+					score = -alphaBeta(depth - 1, -beta, -alpha, ply + 1, true);
+			} else {
+				score = -alphaBeta(depth - 1, -beta, -alpha, ply + 1, true);
+			}
+
+			history.pop();
+			evaluator.unmakeMove(move);
+
+			if(aborted)
+				return (0);
+
+			if(score >= beta) {
+				if(!capture)
+					ordering.recordCutoff(move, side, depth, ply);
+
+				table.store(key, move, score, depth, TranspositionTable.LOWER, ply);
+
+				return (score);
+			}
+
+			if(score > alpha) {
+				alpha = score;
+				best = move;
+			}
+		}
+
+		table.store(key, best, alpha, depth, (alpha > originalAlpha)
+				? TranspositionTable.EXACT : TranspositionTable.UPPER, ply);
+
+		return (alpha);
+	}
+
+	/**
+	 * Searches only the captures of the position, standing pat on its static
+	 * evaluation, until the position is quiet.
+	 */
+	private int quiescence(int alpha, int beta, int ply) {
+		++(nodes);
+
+		if(shouldStop())
+			return (0);
+
+		if(position.pebbleCount(position.sideToMove()) == 0)
+			return (-WIN + ply);
+
+		int standPat = evaluator.evaluate();
+
+		if(standPat >= beta || ply >= MAX_PLY)
+			return (standPat);
+
+		int pebbleValue = evaluator.weight(Evaluator.MATERIAL);
+
+		// Even winning a pebble outright cannot raise the score to alpha.
+		if(standPat + pebbleValue + DELTA_MARGIN <= alpha)
+			return (alpha);
+
+		alpha = Math.max(alpha, standPat);
+
+		int[] moves = moveStack[ply];
+		int count = position.generateCaptures(moves);
+
+		ordering.scoreMoves(moves, count, ply, Move.NONE);
+
+		for(int moveIdx = 0; moveIdx < count; moveIdx++) {
+			int move = ordering.next(moves, count, moveIdx, ply);
+
+			if(standPat + ordering.exchangeAt(ply, moveIdx) + DELTA_MARGIN <= alpha)
+				continue;
+
+			evaluator.makeMove(move);
+
+			int score = -quiescence(-beta, -alpha, ply + 1);
+
+			evaluator.unmakeMove(move);
+
+			if(score >= beta)
+				return (score);
+
+			alpha = Math.max(alpha, score);
+		}
+
+		return (alpha);
+	}
+
+	/**
+	 * Returns the point of a pebble of the side to move that can capture the
+	 * pebble at the given point through a circuit, or -1 if there is none.
+	 */
+	private int recapturer(int square) {
+		long own = position.pebbles(position.sideToMove());
+
+		for(int ring = Circuits.INNER; ring <= Circuits.OUTER; ring++) {
+			if((Circuits.ringMask(ring) & Position.bit(square)) == 0)
+				continue;
+
+			for(long mask = own & Circuits.ringMask(ring); mask != 0; mask &= mask - 1) {
+				int source = Long.numberOfTrailingZeros(mask);
+
+				for(int entry : Circuits.occurrencesOf(ring, source)) {
+					if(position.captureTarget(source, ring, entry, 1) == square ||
+							position.captureTarget(source, ring, entry, -1) == square)
+						return (source);
+				}
+			}
+		}
+
+		return (-1);
+	}
+
+	/**
+	 * Returns the material the side to move is expected to gain by the given
+	 * capture, once all the recaptures on its target point are played out
+	 * (each side may stop recapturing when it would lose by going on). The
+	 * position is restored before returning.
+	 *
+	 * @param move - a capture of the side to move
+	 */
+	public int staticExchange(int move) {
+		int square = Move.target(move);
+		int value = evaluator.weight(Evaluator.MATERIAL);
+		int depth = 0;
+
+		exchangeGains[0] = value;
+		exchangeMoves[0] = move;
+		position.makeMove(move);
+
+		for(int source; depth + 1 < exchangeGains.length
+				&& (source = recapturer(square)) != -1;) {
+			++(depth);
+			exchangeGains[depth] = value - exchangeGains[depth - 1];
+			exchangeMoves[depth] = Move.of(source, square);
+			position.makeMove(exchangeMoves[depth]);
+		}
+
+		for(int exchange = depth; exchange >= 0; exchange--) {
+			position.unmakeMove(exchangeMoves[exchange]);
+		}
+
+		for(; depth > 0; depth--) {
+			exchangeGains[depth - 1] = -Math.max(-exchangeGains[depth - 1],
+					exchangeGains[depth]);
+		}
+
+		return (exchangeGains[0]);
+	}
+
+}
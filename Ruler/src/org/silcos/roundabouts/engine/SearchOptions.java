@@ -0,0 +1,272 @@
+package org.silcos.roundabouts.engine;
+
+/**
+ * <p>
+ * Switches and parameters of the selective pruning done by <tt>Search</tt>,
+ * so that each technique can be tuned or turned off (e.g. to compare the
+ * engine with and without it).
+ *
+ * <p>
+ * <b>Null-move pruning</b> lets the side to move pass, and cuts the node off
+ * if a search reduced by <tt>nullMoveReduction</tt> plies still fails high.
+ * When the side to move has at most <tt>verificationPebbles</tt> pebbles,
+ * where having to move can hurt (zugzwang), the cut-off is first verified
+ * by a reduced search without null moves.
+ *
+ * <p>
+ * <b>Late-move reductions</b> search quiet moves ordered after the first
+ * <tt>lateMoveIndex</tt> moves with <tt>lateMoveReduction</tt> plies less,
+ * and search them again at full depth only if they beat alpha.
+ *
+ * <p>
+ * <b>Futility pruning</b> skips quiet moves at nodes with at most <tt>
+ * futilityDepth</tt> plies left, if the static evaluation plus <tt>
+ * futilityMargin</tt> for each ply left is still no better than alpha.
+ *
+ * @author Shukant Pal
+ */
+public final class SearchOptions {
+
+	private boolean nullMove = true;
+	private int nullMoveMinDepth = 3;
+	private int nullMoveReduction = 2;
+	private boolean nullMoveVerification = true;
+	private int verificationPebbles = 4;
+
+	private boolean lateMoveReductions = true;
+	private int lateMoveMinDepth = 3;
+	private int lateMoveIndex = 3;
+	private int lateMoveReduction = 1;
+
+	private boolean futility = true;
+	private int futilityDepth = 2;
+	private int futilityMargin = 120;
+
+	/**
+	 * Constructs options with all the pruning turned on, with the default
+	 * parameters.
+	 */
+	public SearchOptions() {
+	}
+
+	/**
+	 * Returns options with all the pruning turned off, i.e. for a plain
+	 * alpha-beta search.
+	 */
+	public static SearchOptions none() {
+		SearchOptions options = new SearchOptions();
+
+		options.setNullMove(false);
+		options.setLateMoveReductions(false);
+		options.setFutility(false);
+
+		return (options);
+	}
+
+	/**
+	 * Returns a copy of these options.
+	 */
+	public SearchOptions copy() {
+		SearchOptions options = new SearchOptions();
+
+		options.nullMove = nullMove;
+		options.nullMoveMinDepth = nullMoveMinDepth;
+		options.nullMoveReduction = nullMoveReduction;
+		options.nullMoveVerification = nullMoveVerification;
+		options.verificationPebbles = verificationPebbles;
+		options.lateMoveReductions = lateMoveReductions;
+		options.lateMoveMinDepth = lateMoveMinDepth;
+		options.lateMoveIndex = lateMoveIndex;
+		options.lateMoveReduction = lateMoveReduction;
+		options.futility = futility;
+		options.futilityDepth = futilityDepth;
+		options.futilityMargin = futilityMargin;
+
+		return (options);
+	}
+
+	/**
+	 * Returns whether null-move pruning is done.
+	 */
+	public boolean nullMove() {
+		return (nullMove);
+	}
+
+	/**
+	 * Returns the least depth left at which a null move is tried.
+	 */
+	public int nullMoveMinDepth() {
+		return (nullMoveMinDepth);
+	}
+
+	/**
+	 * Returns the number of plies by which the search after a null move is
+	 * reduced (besides the null move itself).
+	 */
+	public int nullMoveReduction() {
+		return (nullMoveReduction);
+	}
+
+	/**
+	 * Returns whether null-move cut-offs are verified in endgames.
+	 */
+	public boolean nullMoveVerification() {
+		return (nullMoveVerification);
+	}
+
+	/**
+	 * Returns the number of pebbles of the side to move up to which null-move
+	 * cut-offs are verified.
+	 */
+	public int verificationPebbles() {
+		return (verificationPebbles);
+	}
+
+	/**
+	 * Returns whether late moves are searched with reduced depth.
+	 */
+	public boolean lateMoveReductions() {
+		return (lateMoveReductions);
+	}
+
+	/**
+	 * Returns the least depth left at which late moves are reduced.
+	 */
+	public int lateMoveMinDepth() {
+		return (lateMoveMinDepth);
+	}
+
+	/**
+	 * Returns the number of moves searched at full depth before the later
+	 * ones are reduced.
+	 */
+	public int lateMoveIndex() {
+		return (lateMoveIndex);
+	}
+
+	/**
+	 * Returns the number of plies by which late moves are reduced.
+	 */
+	public int lateMoveReduction() {
+		return (lateMoveReduction);
+	}
+
+	/**
+	 * Returns whether futility pruning is done.
+	 */
+	public boolean futility() {
+		return (futility);
+	}
+
+	/**
+	 * Returns the greatest depth left at which quiet moves may be pruned as
+	 * futile.
+	 */
+	public int futilityDepth() {
+		return (futilityDepth);
+	}
+
+	/**
+	 * Returns the margin, for each ply left, added to the static evaluation
+	 * in futility pruning.
+	 */
+	public int futilityMargin() {
+		return (futilityMargin);
+	}
+
+	/**
+	 * Turns null-move pruning on or off.
+	 */
+	public void setNullMove(boolean nullMove) {
+		this.nullMove = nullMove;
+	}
+
+	/**
+	 * Sets the least depth left at which a null move is tried.
+	 */
+	public void setNullMoveMinDepth(int nullMoveMinDepth) {
+		this.nullMoveMinDepth = nullMoveMinDepth;
+	}
+
+	/**
+	 * Sets the number of plies by which the search after a null move is
+	 * reduced.
+	 */
+	public void setNullMoveReduction(int nullMoveReduction) {
+		if(nullMoveReduction < 0)
+			throw new IllegalArgumentException("Negative reduction");
+
+		this.nullMoveReduction = nullMoveReduction;
+	}
+
+	/**
+	 * Turns the verification of null-move cut-offs in endgames on or off.
+	 */
+	public void setNullMoveVerification(boolean nullMoveVerification) {
+		this.nullMoveVerification = nullMoveVerification;
+	}
+
+	/**
+	 * Sets the number of pebbles of the side to move up to which null-move
+	 * cut-offs are verified.
+	 */
+	public void setVerificationPebbles(int verificationPebbles) {
+		this.verificationPebbles = verificationPebbles;
+	}
+
+	/**
+	 * Turns late-move reductions on or off.
+	 */
+	public void setLateMoveReductions(boolean lateMoveReductions) {
+		this.lateMoveReductions = lateMoveReductions;
+	}
+
+	/**
+	 * Sets the least depth left at which late moves are reduced.
+	 */
+	public void setLateMoveMinDepth(int lateMoveMinDepth) {
+		this.lateMoveMinDepth = lateMoveMinDepth;
+	}
+
+	/**
+	 * Sets the number of moves searched at full depth before the later ones
+	 * are reduced.
+	 */
+	public void setLateMoveIndex(int lateMoveIndex) {
+		this.lateMoveIndex = lateMoveIndex;
+	}
+
+	/**
+	 * Sets the number of plies by which late moves are reduced.
+	 */
+	public void setLateMoveReduction(int lateMoveReduction) {
+		if(lateMoveReduction < 0)
+			throw new IllegalArgumentException("Negative reduction");
+
+		this.lateMoveReduction = lateMoveReduction;
+	}
+
+	/**
+	 * Turns futility pruning on or off.
+	 */
+	public void setFutility(boolean futility) {
+		this.futility = futility;
+	}
+
+	/**
+	 * Sets the greatest depth left at which quiet moves may be pruned as
+	 * futile.
+	 */
+	public void setFutilityDepth(int futilityDepth) {
+		this.futilityDepth = futilityDepth;
+	}
+
+	/**
+	 * Sets the margin, for each ply left, added to the static evaluation in
+	 * futility pruning.
+	 */
+	public void setFutilityMargin(int futilityMargin) {
+		this.futilityMargin = futilityMargin;
+	}
+
+}
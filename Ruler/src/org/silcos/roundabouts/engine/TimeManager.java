@@ -0,0 +1,204 @@
+package org.silcos.roundabouts.engine;
+
+/**
+ * <p>
+ * Decides how long a search may think about a move. A budget is allocated
+ * from the game clock - an even share of the remaining time for the moves
+ * to go, plus most of the increment - and the search is stopped:
+ * <ul>
+ * <li>before a new iteration, once the optimum time is mostly spent (the
+ * iteration would hardly finish), or right after the first iteration if
+ * there is only one legal reply;</li>
+ * <li>during an iteration, once the maximum time is spent.</li>
+ * </ul>
+ * When the root score drops by a margin from the previous iteration (the
+ * best move so far fails low), the optimum time is extended, up to the
+ * maximum, to give the search a chance to find a better move.
+ *
+ * <p>
+ * While pondering, no limit applies until <tt>ponderHit</tt> is called,
+ * which starts the clock from that instant.
+ *
+ * <p>
+ * A search is stopped from another thread through its time manager, with
+ * <tt>stop</tt>; as the time manager is made for one search, the stop can't
+ * be lost, even if it comes before the search starts.
+ *
+ * @author Shukant Pal
+ */
+public final class TimeManager {
+
+	/**
+	 * Number of moves the remaining time is shared by, if unknown.
+	 */
+	private static final int DEFAULT_MOVES_TO_GO = 30;
+
+	/**
+	 * Drop in the root score (from the previous iteration) regarded as a
+	 * fail-low, and the factor by which the optimum time is then extended.
+	 */
+	private static final int FAIL_LOW_MARGIN = 30;
+	private static final double FAIL_LOW_EXTENSION = 1.5;
+
+	/**
+	 * Fraction of the optimum time after which no new iteration is started.
+	 */
+	private static final double ITERATION_FRACTION = 0.6;
+
+	private final long baseOptimum;
+	private final long maximum;
+	private final boolean singleReplyStop;
+
+	private volatile long startNanos;
+	private volatile boolean pondering;
+	private volatile boolean stopped;
+	private long optimum;
+	private int lastScore;
+	private boolean scored;
+
+	private TimeManager(long optimum, long maximum, boolean singleReplyStop) {
+		this.baseOptimum = optimum;
+		this.optimum = optimum;
+		this.maximum = maximum;
+		this.singleReplyStop = singleReplyStop;
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Returns a time manager budgeting a move from a game clock.
+	 *
+	 * @param remainingMillis - time left on the clock of the side to move
+	 * @param incrementMillis - time added to the clock after each move
+	 * @param movesToGo - moves to play before the clock is refilled, or 0
+	 * 				if unknown
+	 */
+	public static TimeManager forClock(long remainingMillis, long incrementMillis,
+			int movesToGo) {
+		int moves = (movesToGo > 0) ? movesToGo : DEFAULT_MOVES_TO_GO;
+		long reserve = Math.max(0, remainingMillis - incrementMillis) / 20;
+		long usable = Math.max(1, remainingMillis - reserve);
+		long optimum = Math.min(usable, usable / moves + incrementMillis * 3 / 4);
+		long maximum = Math.min(usable, Math.max(optimum, Math.min(optimum * 4, usable / 3)));
+
+		return (new TimeManager(optimum, maximum, true));
+	}
+
+	/**
+	 * Returns a time manager allowing the given time for the move, and no
+	 * more or less.
+	 *
+	 * @param millis - time allowed for the move
+	 */
+	public static TimeManager fixed(long millis) {
+		return (new TimeManager(millis, millis, false));
+	}
+
+	/**
+	 * Returns a time manager that never stops the search by itself.
+	 */
+	public static TimeManager infinite() {
+		return (new TimeManager(Long.MAX_VALUE / 4, Long.MAX_VALUE / 4, false));
+	}
+
+	/**
+	 * Restarts the clock of this time manager, e.g. when the search begins.
+	 */
+	public void start() {
+		startNanos = System.nanoTime();
+		optimum = baseOptimum;
+		scored = false;
+	}
+
+	/**
+	 * Sets whether the search is pondering, i.e. thinking on the opponent's
+	 * time, in which case no time limit applies.
+	 */
+	public void setPondering(boolean pondering) {
+		this.pondering = pondering;
+	}
+
+	/**
+	 * Tells that the opponent played the expected move, so that the pondering
+	 * search goes on as a normal search with the clock starting now.
+	 */
+	public void ponderHit() {
+		startNanos = System.nanoTime();
+		pondering = false;
+	}
+
+	/**
+	 * Stops the search using this time manager (after its first iteration),
+	 * whether it is pondering or not, or makes it stop as soon as it starts.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Returns whether <tt>stop</tt> was called.
+	 */
+	public boolean isStopped() {
+		return (stopped);
+	}
+
+	/**
+	 * Returns whether the search is pondering.
+	 */
+	public boolean isPondering() {
+		return (pondering);
+	}
+
+	/**
+	 * Returns the milliseconds passed since the clock was started.
+	 */
+	public long elapsed() {
+		return ((System.nanoTime() - startNanos) / 1000000);
+	}
+
+	/**
+	 * Returns the current optimum time for the move, in milliseconds.
+	 */
+	public long optimum() {
+		return (optimum);
+	}
+
+	/**
+	 * Returns the maximum time for the move, in milliseconds.
+	 */
+	public long maximum() {
+		return (maximum);
+	}
+
+	/**
+	 * Returns whether a search must be stopped now, even in the middle of an
+	 * iteration.
+	 */
+	public boolean mustStop() {
+		return (stopped || (!pondering && elapsed() >= maximum));
+	}
+
+	/**
+	 * Tells that an iteration of the search completed, and returns whether
+	 * another one should be started.
+	 *
+	 * @param score - the root score found by the iteration
+	 * @param moveCount - the number of legal moves at the root
+	 */
+	public boolean iterationDone(int score, int moveCount) {
+		if(scored && score < lastScore - FAIL_LOW_MARGIN)
+			optimum = Math.min(maximum, (long) (optimum * FAIL_LOW_EXTENSION));
+
+		lastScore = score;
+		scored = true;
+
+		if(stopped)
+			return (false);
+		else if(pondering)
+			return (true);
+		else if(singleReplyStop && moveCount <= 1)
+			return (false);
+
+		return (elapsed() < optimum * ITERATION_FRACTION);
+	}
+
+}
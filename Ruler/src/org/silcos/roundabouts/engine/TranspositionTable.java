@@ -0,0 +1,192 @@
+package org.silcos.roundabouts.engine;
+
+import java.util.Arrays;
+
+import org.silcos.roundabouts.Move;
+
+/**
+ * <p>
+ * Remembers the results of searched positions by Zobrist key, so that a
+ * search can reuse them when a position is reached again (through another
+ * order of moves, in a later iteration, or in a later search such as one
+ * started after pondering).
+ *
+ * <p>
+ * Entries are two <tt>long</tt> words - the key, and the packed data
+ * <tt>[move:12][depth:8][bound:2][generation:8][score:16][used:1]</tt>
+ * (from the lowest bit) - in buckets of two. A new entry replaces the entry
+ * with the same key, an empty one, or else the one from an older search or
+ * with less depth. Decisive scores are stored relative to the position, and given
+ * back relative to the root of the probing search.
+ *
+ * <p>
+ * Tables are not thread-safe; a table can be shared by searches running
+ * one after another.
+ *
+ * @author Shukant Pal
+ */
+public final class TranspositionTable {
+
+	public static final int EXACT = 0;
+	public static final int LOWER = 1;
+	public static final int UPPER = 2;
+
+	/**
+	 * Greatest log2 of the number of entries.
+	 */
+	public static final int MAX_SIZE_BITS = 28;
+
+	private static final int BUCKET_SIZE = 2;
+
+	private final long[] entries;
+	private final int mask;
+
+	private int generation;
+
+	/**
+	 * Constructs a table with <tt>2^sizeBits</tt> entries.
+	 *
+	 * @param sizeBits - log2 of the number of entries (1 to <tt>
+	 * 				MAX_SIZE_BITS</tt>)
+	 */
+	public TranspositionTable(int sizeBits) {
+		if(sizeBits < 1 || sizeBits > MAX_SIZE_BITS)
+			throw new IllegalArgumentException("Size bits out of range: " + sizeBits);
+
+		this.entries = new long[2 << sizeBits];
+		this.mask = (1 << sizeBits) - BUCKET_SIZE;
+	}
+
+	/**
+	 * Returns the number of bytes taken by a table with <tt>2^sizeBits</tt>
+	 * entries.
+	 */
+	public static long bytesFor(int sizeBits) {
+		return ((long) (2 * Long.BYTES) << sizeBits);
+	}
+
+	/**
+	 * Removes all the entries.
+	 */
+	public void clear() {
+		Arrays.fill(entries, 0);
+		generation = 0;
+	}
+
+	/**
+	 * Marks the start of a new search, so that entries of earlier searches
+	 * are replaced first.
+	 */
+	public void newSearch() {
+		generation = (generation + 1) & 0xFF;
+	}
+
+	private int bucketOf(long key) {
+		return ((int) (key ^ (key >>> 32)) & mask);
+	}
+
+	/**
+	 * Returns the index of the entry for the given key, or -1 if there is
+	 * none.
+	 *
+	 * @param key - Zobrist key of the position
+	 */
+	public int probe(long key) {
+		int bucket = bucketOf(key);
+
+		for(int entry = bucket; entry < bucket + BUCKET_SIZE; entry++) {
+			if(entries[2 * entry] == key && entries[2 * entry + 1] != 0)
+				return (entry);
+		}
+
+		return (-1);
+	}
+
+	/**
+	 * Returns the best move stored in the given entry.
+	 */
+	public int move(int entry) {
+		return ((int) entries[2 * entry + 1] & 0xFFF);
+	}
+
+	/**
+	 * Returns the depth the given entry was searched to.
+	 */
+	public int depth(int entry) {
+		return ((int) (entries[2 * entry + 1] >>> 12) & 0xFF);
+	}
+
+	/**
+	 * Returns whether the score of the given entry is <tt>EXACT</tt>, or a
+	 * <tt>LOWER</tt> or <tt>UPPER</tt> bound.
+	 */
+	public int bound(int entry) {
+		return ((int) (entries[2 * entry + 1] >>> 20) & 3);
+	}
+
+	/**
+	 * Returns the score of the given entry, for a position at the given ply
+	 * from the root.
+	 */
+	public int score(int entry, int ply) {
+		int score = (short) (entries[2 * entry + 1] >>> 30);
+
+		if(score >= Search.WIN - Search.MAX_PLY)
+			return (score - ply);
+		else if(score <= -Search.WIN + Search.MAX_PLY)
+			return (score + ply);
+
+		return (score);
+	}
+
+	/**
+	 * Stores the result of searching a position.
+	 *
+	 * @param key - Zobrist key of the position
+	 * @param move - the best move found, or <tt>Move.NONE</tt>
+	 * @param score - the score, relative to the root of the search
+	 * @param depth - the depth searched to
+	 * @param bound - <tt>EXACT</tt>, <tt>LOWER</tt> or <tt>UPPER</tt>
+	 * @param ply - distance of the position from the root
+	 */
+	public void store(long key, int move, int score, int depth, int bound, int ply) {
+		int bucket = bucketOf(key);
+		int victim = bucket;
+		int victimWorth = Integer.MAX_VALUE;
+
+		for(int entry = bucket; entry < bucket + BUCKET_SIZE; entry++) {
+			long data = entries[2 * entry + 1];
+
+			if(data == 0 || entries[2 * entry] == key) {
+				victim = entry;
+
+				// Keep the old best move if the new result has none.
+				if(move == Move.NONE && data != 0)
+					move = (int) data & 0xFFF;
+				break;
+			}
+
+			int age = (generation - ((int) (data >>> 22) & 0xFF)) & 0xFF;
+			int worth = ((int) (data >>> 12) & 0xFF) - 8 * age;
+
+			if(worth < victimWorth) {
+				victim = entry;
+				victimWorth = worth;
+			}
+		}
+
+		if(score >= Search.WIN - Search.MAX_PLY)
+			score += ply;
+		else if(score <= -Search.WIN + Search.MAX_PLY)
+			score -= ply;
+
+		entries[2 * victim] = key;
+		entries[2 * victim + 1] = (move & 0xFFF)
+				| ((long) Math.max(0, Math.min(depth, 0xFF)) << 12)
+				| ((long) bound << 20)
+				| ((long) generation << 22)
+				| ((long) (score & 0xFFFF) << 30)
+				| (1L << 46);
+	}
+
+}
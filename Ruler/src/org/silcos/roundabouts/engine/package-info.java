@@ -0,0 +1,8 @@
+/**
+ * Search and evaluation for computer players.
+ */
+/**
+ * @author Shukant Pal
+ *
+ */
+package org.silcos.roundabouts.engine;
\ No newline at end of file
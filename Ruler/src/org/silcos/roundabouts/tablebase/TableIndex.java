@@ -0,0 +1,141 @@
+package org.silcos.roundabouts.tablebase;
+
+import org.silcos.roundabouts.Board;
+
+/**
+ * <p>
+ * Perfect index of the positions with a fixed material - <tt>own</tt>
+ * pebbles of the side to move and <tt>opponent</tt> pebbles of the other
+ * side. The points of the side to move are ranked among all the points, and
+ * those of the opponent among the remaining points, as combinations in
+ * colexicographic order.
+ *
+ * <p>
+ * Positions are indexed relative to the side to move, as the rules treat
+ * both sides alike.
+ *
+ * @author Shukant Pal
+ */
+final class TableIndex {
+
+	private static final long[][] binomials =
+			new long[Board.arealSize + 1][Board.arealSize + 1];
+
+	static {
+		for(int n = 0; n <= Board.arealSize; n++) {
+			binomials[n][0] = 1;
+
+			for(int k = 1; k <= n; k++) {
+				binomials[n][k] = binomials[n - 1][k - 1] + binomials[n - 1][k];
+			}
+		}
+	}
+
+	private final int own;
+	private final int opponent;
+	private final long opponentCombinations;
+	private final long size;
+
+	TableIndex(int own, int opponent) {
+		this.own = own;
+		this.opponent = opponent;
+		this.opponentCombinations = binomials[Board.arealSize - own][opponent];
+		this.size = binomials[Board.arealSize][own] * opponentCombinations;
+	}
+
+	int own() {
+		return (own);
+	}
+
+	int opponent() {
+		return (opponent);
+	}
+
+	/**
+	 * Returns the number of positions with this material.
+	 */
+	long size() {
+		return (size);
+	}
+
+	/**
+	 * Returns the colexicographic rank of the given combination.
+	 */
+	private static long rank(long mask) {
+		long rank = 0;
+		int chosen = 0;
+
+		for(; mask != 0; mask &= mask - 1) {
+			rank += binomials[Long.numberOfTrailingZeros(mask)][++chosen];
+		}
+
+		return (rank);
+	}
+
+	/**
+	 * Returns the combination of <tt>k</tt> elements with the given
+	 * colexicographic rank.
+	 */
+	private static long unrank(long rank, int k) {
+		long mask = 0;
+
+		for(int element = Board.arealSize - 1; k > 0; element--) {
+			if(binomials[element][k] <= rank) {
+				rank -= binomials[element][k];
+				mask |= 1L << element;
+				--k;
+			}
+		}
+
+		return (mask);
+	}
+
+	/**
+	 * Returns the index of the position in which the side to move holds
+	 * <tt>ownMask</tt> and the opponent holds <tt>opponentMask</tt>.
+	 */
+	long indexOf(long ownMask, long opponentMask) {
+		long compressed = 0;
+
+		for(long mask = opponentMask; mask != 0; mask &= mask - 1) {
+			int cell = Long.numberOfTrailingZeros(mask);
+
+			compressed |= 1L << (cell - Long.bitCount(ownMask & ((1L << cell) - 1)));
+		}
+
+		return (rank(ownMask) * opponentCombinations + rank(compressed));
+	}
+
+	/**
+	 * Returns the points held by the side to move in the position with the
+	 * given index.
+	 */
+	long ownMaskAt(long index) {
+		return (unrank(index / opponentCombinations, own));
+	}
+
+	/**
+	 * Returns the points held by the opponent in the position with the
+	 * given index, given the points held by the side to move.
+	 */
+	long opponentMaskAt(long index, long ownMask) {
+		long compressed = unrank(index % opponentCombinations, opponent);
+		long opponentMask = 0;
+		int free = 0;
+
+		for(int cell = 0; cell < Board.arealSize && compressed != 0; cell++) {
+			if((ownMask & (1L << cell)) != 0)
+				continue;
+
+			if((compressed & (1L << free)) != 0) {
+				opponentMask |= 1L << cell;
+				compressed &= ~(1L << free);
+			}
+
+			++(free);
+		}
+
+		return (opponentMask);
+	}
+
+}
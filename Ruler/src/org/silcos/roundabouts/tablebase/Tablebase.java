@@ -0,0 +1,204 @@
+package org.silcos.roundabouts.tablebase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.silcos.roundabouts.Position;
+
+/**
+ * <p>
+ * Probes the endgame tables written by <tt>TablebaseGenerator</tt>. Each
+ * table covers one material (pebbles of the side to move and of its
+ * opponent), and is memory-mapped when the tablebase is opened, so that
+ * probes read straight from the page cache.
+ *
+ * <p>
+ * A probe result packs the outcome for the side to move (<tt>WIN</tt>,
+ * <tt>LOSS</tt> or <tt>DRAW</tt>) in its lowest two bits and the distance
+ * to that outcome, in plies, in the remaining bits. Use <tt>outcome</tt>
+ * and <tt>distance</tt> to unpack it.
+ *
+ * <p>
+ * A table file begins with a <tt>HEADER_SIZE</tt>-byte header - <tt>[int
+ * magic][int own][int opponent][int bitsPerEntry][long entryCount][long
+ * unused]</tt> - followed by the packed results of all its positions (see
+ * <tt>TableIndex</tt>), <tt>bitsPerEntry</tt> bits each, in <tt>long</tt>
+ * words from the lowest bit.
+ *
+ * @author Shukant Pal
+ */
+public final class Tablebase {
+
+	public static final int NOT_FOUND = -1;
+
+	public static final int DRAW = 0;
+	public static final int WIN = 1;
+	public static final int LOSS = 2;
+
+	static final int MAGIC = 0x50524D54;
+	static final int HEADER_SIZE = 32;
+
+	/**
+	 * Greatest number of positions in a table, so that its file fits in one
+	 * mapping even at 16 bits per entry (plus the header and the extra word
+	 * after the results).
+	 */
+	public static final long MAX_ENTRIES =
+			(Integer.MAX_VALUE - HEADER_SIZE - 2 * Long.BYTES) / Long.BYTES * 4;
+
+	private final int maxPebbles;
+	private final TableIndex[][] indices;
+	private final ByteBuffer[][] tables;
+	private final int[][] entryBits;
+
+	private Tablebase(int maxPebbles) {
+		this.maxPebbles = maxPebbles;
+		this.indices = new TableIndex[maxPebbles + 1][maxPebbles + 1];
+		this.tables = new ByteBuffer[maxPebbles + 1][maxPebbles + 1];
+		this.entryBits = new int[maxPebbles + 1][maxPebbles + 1];
+	}
+
+	/**
+	 * Returns the name of the file holding the table for the given material.
+	 */
+	static String fileName(int own, int opponent) {
+		return ("surakarta-" + own + "v" + opponent + ".tb");
+	}
+
+	/**
+	 * Packs the given outcome and distance into a probe result.
+	 */
+	static int result(int outcome, int distance) {
+		return ((distance << 2) | outcome);
+	}
+
+	/**
+	 * Opens all the tables for up to <tt>maxPebbles</tt> pebbles found in
+	 * the given directory. Positions with a material whose table is missing
+	 * are not found.
+	 *
+	 * @param directory - the directory holding the table files
+	 * @param maxPebbles - the maximum total number of pebbles to look for
+	 * @throws IOException - if a table file is corrupt or cannot be mapped
+	 */
+	public static Tablebase open(Path directory, int maxPebbles)
+			throws IOException {
+		Tablebase tablebase = new Tablebase(maxPebbles);
+
+		for(int own = 1; own < maxPebbles; own++) {
+			for(int opponent = 1; own + opponent <= maxPebbles; opponent++) {
+				Path path = directory.resolve(fileName(own, opponent));
+
+				if(!Files.exists(path))
+					continue;
+
+				try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+					if(channel.size() > Integer.MAX_VALUE)
+						throw new IOException("Table file too large: " + path);
+
+					ByteBuffer table = channel.map(MapMode.READ_ONLY, 0, channel.size());
+					TableIndex index = new TableIndex(own, opponent);
+
+					if(table.getInt(0) != MAGIC || table.getInt(4) != own ||
+							table.getInt(8) != opponent || table.getLong(16) != index.size())
+						throw new IOException("Corrupt table file: " + path);
+
+					tablebase.indices[own][opponent] = index;
+					tablebase.tables[own][opponent] = table;
+					tablebase.entryBits[own][opponent] = table.getInt(12);
+				}
+			}
+		}
+
+		return (tablebase);
+	}
+
+	/**
+	 * Returns the outcome (<tt>WIN</tt>, <tt>LOSS</tt> or <tt>DRAW</tt>) for
+	 * the side to move packed in the given probe result.
+	 *
+	 * @param result - a result returned by <tt>probe</tt>
+	 */
+	public static int outcome(int result) {
+		return (result & 3);
+	}
+
+	/**
+	 * Returns the number of plies to the outcome packed in the given probe
+	 * result, assuming best play by both sides (0 for draws).
+	 *
+	 * @param result - a result returned by <tt>probe</tt>
+	 */
+	public static int distance(int result) {
+		return (result >>> 2);
+	}
+
+	/**
+	 * Returns the maximum total number of pebbles this tablebase was opened
+	 * for.
+	 */
+	public int maxPebbles() {
+		return (maxPebbles);
+	}
+
+	/**
+	 * Returns whether the table for the given material is available.
+	 *
+	 * @param own - number of pebbles of the side to move
+	 * @param opponent - number of pebbles of its opponent
+	 */
+	public boolean covers(int own, int opponent) {
+		return (own == 0 || opponent == 0 || (own + opponent <= maxPebbles
+				&& tables[own][opponent] != null));
+	}
+
+	/**
+	 * Returns the packed outcome and distance for the side to move in the
+	 * given position, or <tt>NOT_FOUND</tt> if it isn't covered.
+	 *
+	 * @param position - the position to probe
+	 */
+	public int probe(Position position) {
+		int side = position.sideToMove();
+
+		return (probe(position.pebbles(side), position.pebbles(side ^ 1)));
+	}
+
+	/**
+	 * Returns the packed outcome and distance for the side to move, given the
+	 * points held by it and by its opponent, or <tt>NOT_FOUND</tt> if the
+	 * position isn't covered.
+	 *
+	 * @param ownMask - points held by the side to move
+	 * @param opponentMask - points held by its opponent
+	 */
+	public int probe(long ownMask, long opponentMask) {
+		int own = Long.bitCount(ownMask), opponent = Long.bitCount(opponentMask);
+
+		if(own == 0) {
+			return (result(LOSS, 0));
+		} else if(opponent == 0) {
+			return (result(WIN, 0));
+		} else if(!covers(own, opponent)) {
+			return (NOT_FOUND);
+		}
+
+		ByteBuffer table = tables[own][opponent];
+		int bits = entryBits[own][opponent];
+		long bitOffset = indices[own][opponent].indexOf(ownMask, opponentMask) * bits;
+		int wordOffset = HEADER_SIZE + (int) (bitOffset >>> 6) * Long.BYTES;
+		int shift = (int) (bitOffset & 63);
+		long value = table.getLong(wordOffset) >>> shift;
+
+		if(shift + bits > 64)
+			value |= table.getLong(wordOffset + Long.BYTES) << (64 - shift);
+
+		return ((int) (value & ((1L << bits) - 1)));
+	}
+
+}
@@ -0,0 +1,245 @@
+package org.silcos.roundabouts.tablebase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import org.silcos.roundabouts.Position;
+
+/**
+ * <p>
+ * Solves every position with up to a given number of pebbles (at least one
+ * on each side) by retrograde analysis, and writes the results as bit-packed
+ * table files that <tt>Tablebase</tt> can map and probe.
+ *
+ * <p>
+ * Materials are solved in increasing order of pebbles, so that captures
+ * always lead into solved tables. A material and its mirror (with the sides
+ * swapped) are solved together in rounds: in round <tt>k</tt>, a position
+ * is won in <tt>k</tt> plies if a move leads to a position lost in fewer
+ * than <tt>k</tt> plies, and lost in <tt>k</tt> plies if every move leads to
+ * a position won in fewer than <tt>k</tt> plies. Positions still unresolved
+ * when the rounds stop changing anything are draws (e.g. pebbles chasing
+ * each other around the circuits forever). Since a round only reads the
+ * results of earlier rounds, each round is scanned with a parallel stream.
+ *
+ * @author Shukant Pal
+ */
+public final class TablebaseGenerator {
+
+	/**
+	 * In-memory results of the solved materials, packed the same way as the
+	 * probe results (0 is a draw, or "unresolved" during a solve).
+	 */
+	private final short[][][] results;
+	private final TableIndex[][] indices;
+
+	private int maxDistance;
+
+	private final ThreadLocal<Position> scratchPositions =
+			ThreadLocal.withInitial(Position::new);
+	private final ThreadLocal<int[]> scratchMoves =
+			ThreadLocal.withInitial(() -> new int[Position.MAX_MOVES]);
+
+	private TablebaseGenerator(int maxPebbles) {
+		this.results = new short[maxPebbles + 1][maxPebbles + 1][];
+		this.indices = new TableIndex[maxPebbles + 1][maxPebbles + 1];
+	}
+
+	/**
+	 * Generates the tables for all the materials with up to <tt>maxPebbles
+	 * </tt> pebbles in total, and writes them to the given directory.
+	 *
+	 * @param directory - the directory to write the table files to
+	 * @param maxPebbles - the maximum total number of pebbles
+	 * @throws IOException - if a table file cannot be written
+	 */
+	public static void generate(Path directory, int maxPebbles)
+			throws IOException {
+		TablebaseGenerator generator = new TablebaseGenerator(maxPebbles);
+
+		Files.createDirectories(directory);
+
+		for(int total = 2; total <= maxPebbles; total++) {
+			for(int own = 1; own <= total / 2; own++) {
+				generator.solve(own, total - own);
+				generator.write(directory, own, total - own);
+
+				if(own != total - own)
+					generator.write(directory, total - own, own);
+			}
+		}
+	}
+
+	/**
+	 * Returns the in-memory result for the side to move in the given
+	 * position, whose material must have been solved (or be in solving).
+	 */
+	private int resultOf(long ownMask, long opponentMask) {
+		int own = Long.bitCount(ownMask);
+
+		if(own == 0)
+			return (Tablebase.result(Tablebase.LOSS, 0));
+
+		int opponent = Long.bitCount(opponentMask);
+
+		return (results[own][opponent][(int) indices[own][opponent]
+				.indexOf(ownMask, opponentMask)]);
+	}
+
+	/**
+	 * Tries to resolve the position with the given index in round <tt>round
+	 * </tt>, and returns its result (0 if still unresolved).
+	 */
+	private int evaluate(TableIndex index, int positionIdx, int round) {
+		Position position = scratchPositions.get();
+		int[] moves = scratchMoves.get();
+		long ownMask = index.ownMaskAt(positionIdx);
+
+		position.set(ownMask, index.opponentMaskAt(positionIdx, ownMask),
+				Position.STARTER);
+
+		int count = position.generateMoves(moves);
+		boolean allWon = count > 0;
+
+		for(int moveIdx = 0; moveIdx < count; moveIdx++) {
+			position.makeMove(moves[moveIdx]);
+
+			int child = resultOf(position.pebbles(Position.OTHER),
+					position.pebbles(Position.STARTER));
+
+			position.unmakeMove(moves[moveIdx]);
+
+			if(child == 0 || Tablebase.distance(child) >= round) {
+				allWon = false;
+			} else if(Tablebase.outcome(child) == Tablebase.LOSS) {
+				return (Tablebase.result(Tablebase.WIN, round));
+			} else if(Tablebase.outcome(child) != Tablebase.WIN) {
+				allWon = false;
+			}
+		}
+
+		return (allWon ? Tablebase.result(Tablebase.LOSS, round) : 0);
+	}
+
+	/**
+	 * Solves the given material together with its mirror.
+	 */
+	private void solve(int own, int opponent) {
+		int[][] materials = (own == opponent) ? new int[][] { { own, opponent } }
+				: new int[][] { { own, opponent }, { opponent, own } };
+		int lowerMaxDistance = maxDistance;
+
+		for(int[] material : materials) {
+			TableIndex index = new TableIndex(material[0], material[1]);
+
+			if(index.size() > Tablebase.MAX_ENTRIES)
+				throw new IllegalArgumentException("Table too large: "
+						+ material[0] + "v" + material[1]);
+
+			indices[material[0]][material[1]] = index;
+			results[material[0]][material[1]] = new short[(int) index.size()];
+		}
+
+		for(int round = 1;; round++) {
+			AtomicBoolean changed = new AtomicBoolean();
+			final int currentRound = round;
+
+			for(int[] material : materials) {
+				TableIndex index = indices[material[0]][material[1]];
+				short[] table = results[material[0]][material[1]];
+
+				IntStream.range(0, table.length).parallel().forEach((int positionIdx) -> {
+					if(table[positionIdx] == 0) {
+						int result = evaluate(index, positionIdx, currentRound);
+
+						if(result != 0) {
+							table[positionIdx] = (short) result;
+							changed.lazySet(true);
+						}
+					}
+				});
+			}
+
+			if(changed.get()) {
+				maxDistance = Math.max(maxDistance, round);
+			} else if(round > lowerMaxDistance + 1) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Appends one word to the given buffer, writing the buffer out to the
+	 * channel first if it is full.
+	 */
+	private static void putWord(FileChannel channel, ByteBuffer buffer,
+			long word) throws IOException {
+		if(buffer.remaining() < Long.BYTES) {
+			buffer.flip();
+
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+
+			buffer.clear();
+		}
+
+		buffer.putLong(word);
+	}
+
+	/**
+	 * Writes the table of the given (solved) material to the given directory.
+	 * One zero word is added after the results, so that probes can always
+	 * read two words.
+	 */
+	private void write(Path directory, int own, int opponent)
+			throws IOException {
+		short[] table = results[own][opponent];
+		int largest = 0;
+
+		for(short result : table) {
+			largest = Math.max(largest, result);
+		}
+
+		int bits = Math.max(2, 32 - Integer.numberOfLeadingZeros(largest));
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		Path path = directory.resolve(Tablebase.fileName(own, opponent));
+
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			buffer.putInt(Tablebase.MAGIC).putInt(own).putInt(opponent).putInt(bits)
+					.putLong(table.length).putLong(0);
+
+			long word = 0;
+			int filled = 0;
+
+			for(short result : table) {
+				word |= (long) result << filled;
+				filled += bits;
+
+				if(filled >= 64) {
+					putWord(channel, buffer, word);
+					filled -= 64;
+					word = (filled == 0) ? 0 : (long) result >>> (bits - filled);
+				}
+			}
+
+			if(filled > 0)
+				putWord(channel, buffer, word);
+
+			putWord(channel, buffer, 0);
+			buffer.flip();
+
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,8 @@
+/**
+ * Endgame tables for positions with few pebbles.
+ */
+/**
+ * @author Shukant Pal
+ *
+ */
+package org.silcos.roundabouts.tablebase;